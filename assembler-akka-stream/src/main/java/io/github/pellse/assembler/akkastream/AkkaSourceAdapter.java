@@ -16,11 +16,15 @@
 
 package io.github.pellse.assembler.akkastream;
 
+import akka.NotUsed;
 import akka.stream.javadsl.Source;
 import io.github.pellse.assembler.AssemblerAdapter;
+import io.github.pellse.util.query.Deadline;
+import io.github.pellse.util.query.MapperContext;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
@@ -28,6 +32,11 @@ import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
 import static akka.stream.javadsl.Source.*;
+import static io.github.pellse.util.concurrent.DelayedSupplier.delayNanos;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static java.time.Duration.ofNanos;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.stream.Collectors.toList;
 
 public final class AkkaSourceAdapter<T, ID, R> implements AssemblerAdapter<T, ID, R, Source<R, ?>> {
@@ -42,16 +51,57 @@ public final class AkkaSourceAdapter<T, ID, R> implements AssemblerAdapter<T, ID
     public Source<R, ?> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
                                              Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
                                              BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder) {
-        return lazily(() -> single(topLevelEntitiesProvider.get()))
+        return convertMapperSources(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder, mapperContext());
+    }
+
+    @Override
+    public Source<R, ?> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                             Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
+                                             BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder,
+                                             MapperContext mapperContext) {
+        Deadline deadline = mapperContext.deadline();
+
+        return withDeadline(lazily(() -> single(topLevelEntitiesProvider.get())), deadline, emptyList())
                 .flatMapConcat(entities -> zipN(mapperSourcesBuilder.apply(entities)
-                        .map(this::createAkkaSource)
+                        .map(mapperSource -> withDeadline(createAkkaSource(mapperSource), deadline, emptyMap()))
                         .collect(toList()))
                         .map(mapperResults -> aggregateStreamBuilder.apply(entities, mapperResults)))
                 .flatMapConcat(s -> from(s::iterator));
     }
 
+    @Override
+    public boolean isNonBlocking() {
+        return true;
+    }
+
+    @Override
+    public Source<R, ?> doFinally(Source<R, ?> result, Runnable onTerminate) {
+        return watchTermination(result, onTerminate);
+    }
+
+    private static <R, M> Source<R, M> watchTermination(Source<R, M> source, Runnable onTerminate) {
+        return source.watchTermination((materializedValue, termination) -> {
+            termination.whenComplete((done, e) -> onTerminate.run());
+            return materializedValue;
+        });
+    }
+
     private Source<Map<ID, ?>, ?> createAkkaSource(Supplier<Map<ID, ?>> mappingSupplier) {
-        return sourceTransformer.apply(lazily(() -> single(mappingSupplier.get())));
+        // e.g. waiting for a rate limiter permit, we delay the source instead of parking a thread,
+        // the delay is only read when the source is materialized as reading it reserves the permit
+        return sourceTransformer.apply(lazily(() -> {
+            long delayNanos = delayNanos(mappingSupplier);
+            Source<Map<ID, ?>, CompletionStage<NotUsed>> source = lazily(() -> single(mappingSupplier.get()));
+            return delayNanos > 0 ? source.initialDelay(ofNanos(delayNanos)) : source;
+        }));
+    }
+
+    /**
+     * Completes {@code source} with {@code fallbackValue} if it has not emitted before the deadline expires,
+     * the remaining time is only evaluated when the stream is materialized, not when the graph is built
+     */
+    private static <U, M> Source<U, ?> withDeadline(Source<U, M> source, Deadline deadline, U fallbackValue) {
+        return deadline.isBounded() ? lazily(() -> source.takeWithin(deadline.remaining()).orElse(single(fallbackValue))) : source;
     }
 
     public static <T, ID, R> AkkaSourceAdapter<T, ID, R> akkaSourceAdapter() {
@@ -16,9 +16,17 @@
 
 package io.github.pellse.assembler;
 
+import io.github.pellse.util.collection.Equivalence;
+import io.github.pellse.util.collection.IdList;
+import io.github.pellse.util.concurrent.DelayedSupplier;
 import io.github.pellse.util.function.checked.CheckedSupplier;
+import io.github.pellse.util.query.Deadline;
 import io.github.pellse.util.query.Mapper;
+import io.github.pellse.util.query.MapperContext;
+import io.github.pellse.util.query.PositionalResult;
+import io.github.pellse.util.query.RateLimitedMapper;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -28,8 +36,13 @@ import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static io.github.pellse.util.collection.CollectionUtil.toStream;
+import static io.github.pellse.util.collection.IdList.toIdList;
+import static io.github.pellse.util.concurrent.DelayedSupplier.reserving;
 import static io.github.pellse.util.function.checked.Unchecked.unchecked;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static java.util.Collections.emptyMap;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.IntStream.range;
 
 /**
  * @param <T>  Type for Top Level Entity e.g. {@code Customer}
@@ -41,7 +54,52 @@ public interface Assembler<T, RC> {
         return assembleFromSupplier(() -> topLevelEntities);
     }
 
-    RC assembleFromSupplier(CheckedSupplier<Iterable<T>, Throwable> topLevelEntitiesProvider);
+    /**
+     * Best effort assembly within a single time budget, when {@code deadline} expires any sub query result
+     * not yet available is replaced by the default result of its {@link Mapper} instead of failing the assembly
+     */
+    default RC assemble(Iterable<T> topLevelEntities, Deadline deadline) {
+        return assembleFromSupplier(() -> topLevelEntities, deadline);
+    }
+
+    default RC assemble(Iterable<T> topLevelEntities, MapperContext mapperContext) {
+        return assembleFromSupplier(() -> topLevelEntities, mapperContext);
+    }
+
+    default RC assembleFromSupplier(CheckedSupplier<Iterable<T>, Throwable> topLevelEntitiesProvider) {
+        return assembleFromSupplier(topLevelEntitiesProvider, mapperContext());
+    }
+
+    default RC assembleFromSupplier(CheckedSupplier<Iterable<T>, Throwable> topLevelEntitiesProvider, Deadline deadline) {
+        return assembleFromSupplier(topLevelEntitiesProvider, mapperContext(deadline));
+    }
+
+    RC assembleFromSupplier(CheckedSupplier<Iterable<T>, Throwable> topLevelEntitiesProvider, MapperContext mapperContext);
+
+    static <T, ID, R, RC>
+    RC assembleFromSupplier(CheckedSupplier<Iterable<T>, Throwable> topLevelEntitiesProvider,
+                            Function<T, ID> idExtractor,
+                            List<Mapper<ID, ?, ?>> subQueryMappers,
+                            BiFunction<T, Object[], R> aggregationFunction,
+                            AssemblerAdapter<T, ID, R, RC> assemblerAdapter,
+                            Function<Throwable, RuntimeException> errorConverter) {
+
+        return assembleFromSupplier(topLevelEntitiesProvider, idExtractor, subQueryMappers, aggregationFunction,
+                assemblerAdapter, errorConverter, mapperContext());
+    }
+
+    static <T, ID, R, RC>
+    RC assembleFromSupplier(CheckedSupplier<Iterable<T>, Throwable> topLevelEntitiesProvider,
+                            Function<T, ID> idExtractor,
+                            List<Mapper<ID, ?, ?>> subQueryMappers,
+                            BiFunction<T, Object[], R> aggregationFunction,
+                            AssemblerAdapter<T, ID, R, RC> assemblerAdapter,
+                            Function<Throwable, RuntimeException> errorConverter,
+                            MapperContext mapperContext) {
+
+        return assembleFromSupplier(topLevelEntitiesProvider, idExtractor, subQueryMappers, aggregationFunction,
+                assemblerAdapter, errorConverter, mapperContext, null);
+    }
 
     /**
      * @param topLevelEntitiesProvider e.g. {@code () -> List<Customer>}
@@ -50,6 +108,8 @@ public interface Assembler<T, RC> {
      * @param aggregationFunction      e.g. {@code buildTransaction(customer, [ billingInfo, orderItemList ])}
      * @param assemblerAdapter         Pluggable execution engine for invoking top and sub queries (e.g. Project Reactor, RxJava)
      * @param errorConverter           Converts any exception thrown into a user defined {@link RuntimeException}
+     * @param mapperContext            Context of this assembly (e.g. {@link Deadline}) passed to each mapper
+     * @param idEquivalence            Hashing and equivalence of the IDs, {@code null} for {@link Object#equals(Object)}
      * @param <T>                      e.g. {@code <Customer>}
      * @param <ID>                     e.g. {@code <Long>}
      * @param <R>                      e.g. {@code <Transaction>}
@@ -63,7 +123,9 @@ public interface Assembler<T, RC> {
                             List<Mapper<ID, ?, ?>> subQueryMappers,
                             BiFunction<T, Object[], R> aggregationFunction,
                             AssemblerAdapter<T, ID, R, RC> assemblerAdapter,
-                            Function<Throwable, RuntimeException> errorConverter) {
+                            Function<Throwable, RuntimeException> errorConverter,
+                            MapperContext mapperContext,
+                            Equivalence<? super ID> idEquivalence) {
 
         Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder = topLevelEntities -> {
 
@@ -76,14 +138,18 @@ public interface Assembler<T, RC> {
             //
             // To summarize, we transform 1 argument functions into 0 argument functions
 
-            // We extract the IDs from the collection of top level entities e.g. from List<Customer> to List<Long>
-            List<ID> entityIDs = toStream(topLevelEntities)
+            // We extract the IDs from the collection of top level entities e.g. from List<Customer> to List<Long>,
+            // the IDs are deduplicated once into an immutable IdList shared by all mappers, so that query functions
+            // accepting a List or a Set receive that same instance (or a Set view of it) instead of a copy each
+            IdList<ID> entityIDs = toStream(topLevelEntities)
                     .filter(Objects::nonNull)
                     .map(idExtractor)
-                    .collect(toList());
+                    .collect(toIdList(idEquivalence));
 
+            // A sub query not yet started when the deadline expires is skipped,
+            // the join below will then fall back to the mapper's default results
             return subQueryMappers.stream()
-                    .map(mapper -> unchecked(() -> mapper.apply(entityIDs), errorConverter));
+                    .map(mapper -> toMapperSource(mapper, entityIDs, mapperContext, errorConverter));
         };
 
         // We create a function that takes 2 arguments:
@@ -93,26 +159,120 @@ public interface Assembler<T, RC> {
         //    e.g. [ Map<Long, BillingInfo>, Map<Long, List<OrderItem>> ]
         //
         // and return e.g. an instance of Transaction
+        //
+        // A mapper result with no entry for an ID (e.g. the deadline expired before that
+        // sub query completed) is replaced by the default result of the corresponding mapper
         BiFunction<T, List<Map<ID, ?>>, R> joinMapperResultsFunction =
-                (topLevelEntity, listOfMapperResults) -> aggregationFunction.apply(topLevelEntity,
-                        listOfMapperResults.stream()
-                                .map(mapperResult -> mapperResult.get(idExtractor.apply(topLevelEntity)))
-                                .toArray());
+                (topLevelEntity, listOfMapperResults) -> {
+                    ID id = idExtractor.apply(topLevelEntity);
+
+                    return aggregationFunction.apply(topLevelEntity,
+                            range(0, listOfMapperResults.size())
+                                    .mapToObj(i -> joinMapperResult(listOfMapperResults.get(i), subQueryMappers.get(i), id))
+                                    .toArray());
+                };
 
         // We create another function that takes a list of Map returned from our sub queries
         // e.g. [ Map<Long, BillingInfo>, Map<Long, List<OrderItem>> ]
         // and return a stream of aggregated objects e.g. Stream<Transaction>,
         // the function iterate over the list of topLevelEntities e.g. List<Customer>
         // for each topLevelEntity apply the joinMapperResultsFunction defined above
+        //
+        // When mappers return a PositionalResult (e.g. a PositionalMapper), the slot of each topLevelEntity
+        // in the IdList of distinct IDs is resolved once, and the results of those mappers are then read
+        // from their arrays at that slot, an array walk instead of a hash lookup per mapper and per entity
         BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder =
-                (topLevelEntities, mapperResults) -> toStream(topLevelEntities)
-                        .filter(Objects::nonNull)
-                        .map(topLevelEntity -> joinMapperResultsFunction.apply(topLevelEntity, mapperResults));
+                (topLevelEntities, mapperResults) -> {
+                    IdList<ID> positionalIds = positionalIdsOf(mapperResults);
+                    if (positionalIds == null) {
+                        return toStream(topLevelEntities)
+                                .filter(Objects::nonNull)
+                                .map(topLevelEntity -> joinMapperResultsFunction.apply(topLevelEntity, mapperResults));
+                    }
+
+                    List<T> entities = toStream(topLevelEntities)
+                            .filter(Objects::nonNull)
+                            .collect(toList());
+
+                    int[] slots = slotsOf(entities, idExtractor, positionalIds);
+
+                    return range(0, entities.size())
+                            .mapToObj(i -> aggregationFunction.apply(entities.get(i),
+                                    joinPositionalResults(entities.get(i), slots[i], positionalIds, idExtractor, mapperResults, subQueryMappers)));
+                };
 
 
         // Notice the signature of mapperSourceSuppliers above, it is a supplier of Map<ID, ?>
         // aggregateStreamBuilder takes a list of Map<ID, ?>, so we are injecting the join algorithm
         // into our adapter and the data to pass to the join algorithm
-        return assemblerAdapter.convertMapperSources(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder);
+        return assemblerAdapter.convertMapperSources(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder, mapperContext);
+    }
+
+    /**
+     * What the mapper needs is {@link Mapper#reserve(MapperContext) reserved} when the returned source is first executed
+     * or its delay first read, i.e. on subscription, e.g. the permit of a {@link RateLimitedMapper} even when decorated,
+     * the returned source being a {@link DelayedSupplier} so that asynchronous adapters can delay its execution instead
+     * of parking a thread
+     */
+    private static <ID> Supplier<Map<ID, ?>> toMapperSource(Mapper<ID, ?, ?> mapper,
+                                                            List<ID> entityIDs,
+                                                            MapperContext mapperContext,
+                                                            Function<Throwable, RuntimeException> errorConverter) {
+        return reserving(() -> mapper.reserve(mapperContext),
+                unchecked(() -> applyReserved(mapper, entityIDs, mapperContext), errorConverter),
+                Collections::emptyMap);
+    }
+
+    private static <ID, EX extends Throwable> Map<ID, ?> applyReserved(Mapper<ID, ?, EX> mapper, List<ID> entityIDs, MapperContext mapperContext) throws EX {
+        return mapperContext.deadline().isExpired() ? emptyMap() : mapper.applyReserved(entityIDs, mapperContext);
+    }
+
+    private static <ID> IdList<ID> positionalIdsOf(List<Map<ID, ?>> mapperResults) {
+        return mapperResults.stream()
+                .filter(mapperResult -> mapperResult instanceof PositionalResult)
+                .map(mapperResult -> ((PositionalResult<ID, ?>) mapperResult).ids())
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * @return The slot of the ID of each entity in {@code positionalIds}, {@code -1} if absent
+     */
+    private static <T, ID> int[] slotsOf(List<T> entities, Function<T, ID> idExtractor, IdList<ID> positionalIds) {
+        int[] slots = new int[entities.size()];
+
+        int nextSlot = 0;
+        for (int i = 0; i < slots.length; i++) {
+            ID id = idExtractor.apply(entities.get(i));
+
+            // The distinct IDs were collected in the same order as the entities,
+            // so only an ID seen earlier (a duplicate) requires a lookup
+            int slot = positionalIds.indexOf(id, nextSlot);
+            slots[i] = slot == nextSlot ? nextSlot++ : slot;
+        }
+        return slots;
+    }
+
+    private static <T, ID> Object[] joinPositionalResults(T topLevelEntity,
+                                                          int slot,
+                                                          IdList<ID> positionalIds,
+                                                          Function<T, ID> idExtractor,
+                                                          List<Map<ID, ?>> mapperResults,
+                                                          List<Mapper<ID, ?, ?>> subQueryMappers) {
+        Object[] joinedResults = new Object[mapperResults.size()];
+
+        for (int i = 0; i < joinedResults.length; i++) {
+            Map<ID, ?> mapperResult = mapperResults.get(i);
+
+            joinedResults[i] = slot >= 0 && mapperResult instanceof PositionalResult && ((PositionalResult<ID, ?>) mapperResult).ids() == positionalIds
+                    ? ((PositionalResult<ID, ?>) mapperResult).resultAt(slot)
+                    : joinMapperResult(mapperResult, subQueryMappers.get(i), idExtractor.apply(topLevelEntity));
+        }
+        return joinedResults;
+    }
+
+    private static <ID> Object joinMapperResult(Map<ID, ?> mapperResult, Mapper<ID, ?, ?> mapper, ID id) {
+        Object result = mapperResult.get(id);
+        return result != null || mapperResult.containsKey(id) ? result : mapper.defaultResult(id);
     }
 }
@@ -16,6 +16,8 @@
 
 package io.github.pellse.assembler;
 
+import io.github.pellse.util.query.MapperContext;
+
 import java.util.List;
 import java.util.Map;
 import java.util.function.BiFunction;
@@ -29,4 +31,35 @@ public interface AssemblerAdapter<T, ID, R, RC> {
     RC convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
                             Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
                             BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder);
+
+    /**
+     * Adapters able to enforce the {@link io.github.pellse.util.query.Deadline} of {@code mapperContext} should override
+     * this method so that the top level and mapper sources still pending when the deadline expires are replaced by
+     * an empty result instead of failing the whole assembly, the default implementation ignores the deadline
+     * once a source has been started.
+     */
+    default RC convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                    Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
+                                    BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder,
+                                    MapperContext mapperContext) {
+        return convertMapperSources(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder);
+    }
+
+    /**
+     * @return {@code true} if the functions passed to {@code convertMapperSources()} can be invoked on threads that must
+     * never block, e.g. the scheduler threads of a reactive library, the decorators of this adapter then never wait
+     */
+    default boolean isNonBlocking() {
+        return false;
+    }
+
+    /**
+     * @param result      A result returned by {@code convertMapperSources()}
+     * @param onTerminate Invoked once {@code result} completes, fails or is cancelled, e.g. to release what is held
+     *                    for the assembly
+     * @return {@code result} invoking {@code onTerminate}, the default implementation never invokes it
+     */
+    default RC doFinally(RC result, Runnable onTerminate) {
+        return result;
+    }
 }
@@ -16,15 +16,26 @@
 
 package io.github.pellse.assembler;
 
+import io.github.pellse.util.cache.Cache;
+import io.github.pellse.util.cache.Weigher;
+import io.github.pellse.util.collection.Equivalence;
+import io.github.pellse.util.concurrent.MemoryBudget;
+import io.github.pellse.util.concurrent.MemoryBudgetExceededException;
 import io.github.pellse.util.function.*;
 import io.github.pellse.util.function.checked.CheckedSupplier;
 import io.github.pellse.util.function.checked.UncheckedException;
 import io.github.pellse.util.query.Mapper;
+import io.github.pellse.util.query.MapperContext;
+import io.github.pellse.util.query.Priority;
 
+import java.time.Duration;
 import java.util.List;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 
+import static java.time.Duration.ZERO;
+import static java.util.Objects.requireNonNull;
+
 public interface AssemblerBuilder {
 
     static <R> WithIdExtractorBuilder<R> assemblerOf(Class<R> outputClass) {
@@ -215,6 +226,49 @@ public interface AssemblerBuilder {
 
         AssembleUsingBuilder<T, ID, R> withErrorConverter(Function<Throwable, RuntimeException> errorConverter);
 
+        /**
+         * Tags every assembly of the resulting {@link Assembler} with {@code priority}, so that its top level and
+         * sub queries are dispatched before those of lower priority assemblies on a shared {@code PriorityExecutor}
+         */
+        AssembleUsingBuilder<T, ID, R> withPriority(Priority priority);
+
+        /**
+         * Correlates the IDs of the top level entities using {@code idEquivalence} instead of {@link Object#equals(Object)}
+         * and {@link Object#hashCode()}, e.g. {@link Equivalence#byteArrayEquivalence()} for {@code byte[]} IDs, mappers
+         * should then use a {@code MapFactory} built with the same equivalence
+         */
+        AssembleUsingBuilder<T, ID, R> withIdEquivalence(Equivalence<? super ID> idEquivalence);
+
+        /**
+         * Rejects an assembly right away when its estimated size doesn't fit in {@code budget}, see {@link #withMemoryBudget(MemoryBudget, Weigher, Duration)}
+         */
+        default AssembleUsingBuilder<T, ID, R> withMemoryBudget(MemoryBudget budget, Weigher<? super T> weigher) {
+            return withMemoryBudget(budget, weigher, ZERO);
+        }
+
+        /**
+         * Admits each assembly only once its estimated size is acquired from {@code budget}, evicting from the caches
+         * sharing the budget if needed, the bytes being released once the assembled results are materialized
+         *
+         * @param budget  Shared by all the caches and assemblers of the application
+         * @param weigher Estimates the number of bytes materialized for a top level entity, i.e. its sub-entities
+         *                and the assembled result, e.g. {@code customer -> 2048}
+         * @param maxWait Maximum time to wait for in-flight assemblies to release enough bytes, bounded by the deadline
+         *                of the assembly, after which the assembly fails with a {@link MemoryBudgetExceededException},
+         *                ignored by {@link AssemblerAdapter#isNonBlocking() non blocking} adapters which never wait
+         */
+        AssembleUsingBuilder<T, ID, R> withMemoryBudget(MemoryBudget budget, Weigher<? super T> weigher, Duration maxWait);
+
+        /**
+         * Caches the assembled results per top level ID, e.g. {@code Transaction} per customer ID, so that the cached
+         * entities of an assembly skip both the mappers and the join, only the other entities going through them.
+         * The results of an assembly whose deadline expired are not cached.
+         *
+         * @param resultCache e.g. {@code lruCache(10_000)}, entries can be removed from it when a top level entity
+         *                    or one of its sub-entities changes
+         */
+        AssembleUsingBuilder<T, ID, R> withResultCache(Cache<ID, R> resultCache);
+
         <RC> Assembler<T, RC> using(AssemblerAdapter<T, ID, R, RC> adapter);
     }
 
@@ -252,6 +306,12 @@ public interface AssemblerBuilder {
         private final List<Mapper<ID, ?, ?>> mappers;
 
         private Function<Throwable, RuntimeException> errorConverter = UncheckedException::new;
+        private Priority priority;
+        private Equivalence<? super ID> idEquivalence;
+        private MemoryBudget memoryBudget;
+        private Weigher<? super T> weigher;
+        private Duration maxWait;
+        private Cache<ID, R> resultCache;
 
         private AssembleUsingBuilderImpl(Function<T, ID> idExtractor,
                                          List<Mapper<ID, ?, ?>> mappers,
@@ -269,10 +329,49 @@ public interface AssemblerBuilder {
             return this;
         }
 
+        @Override
+        public AssembleUsingBuilder<T, ID, R> withPriority(Priority priority) {
+            this.priority = priority;
+            return this;
+        }
+
+        @Override
+        public AssembleUsingBuilder<T, ID, R> withIdEquivalence(Equivalence<? super ID> idEquivalence) {
+            this.idEquivalence = idEquivalence;
+            return this;
+        }
+
+        @Override
+        public AssembleUsingBuilder<T, ID, R> withMemoryBudget(MemoryBudget budget, Weigher<? super T> weigher, Duration maxWait) {
+            this.memoryBudget = requireNonNull(budget, "budget cannot be null");
+            this.weigher = requireNonNull(weigher, "weigher cannot be null");
+            this.maxWait = requireNonNull(maxWait, "maxWait cannot be null");
+            return this;
+        }
+
+        @Override
+        public AssembleUsingBuilder<T, ID, R> withResultCache(Cache<ID, R> resultCache) {
+            this.resultCache = requireNonNull(resultCache, "resultCache cannot be null");
+            return this;
+        }
+
         @Override
         public <RC> Assembler<T, RC> using(AssemblerAdapter<T, ID, R, RC> assemblerAdapter) {
 
-            return new AssemblerImpl<>(idExtractor, mappers, aggregationFunction, errorConverter, assemblerAdapter);
+            AssemblerAdapter<T, ID, R, RC> adapter = assemblerAdapter;
+            if (resultCache != null) {
+                adapter = new ResultCacheAdapter<>(adapter, idExtractor, resultCache, mappers.size());
+            }
+            if (memoryBudget != null) {
+                // Outermost, so that only the entities not in the result cache are weighed
+                adapter = new MemoryBudgetAdapter<>(adapter, memoryBudget, weigher, maxWaitNanos(maxWait));
+            }
+
+            return new AssemblerImpl<>(idExtractor, mappers, aggregationFunction, errorConverter, priority, idEquivalence, adapter);
+        }
+
+        private static long maxWaitNanos(Duration maxWait) {
+            return maxWait.compareTo(Duration.ofNanos(Long.MAX_VALUE)) < 0 ? maxWait.toNanos() : Long.MAX_VALUE;
         }
     }
 
@@ -283,23 +382,30 @@ public interface AssemblerBuilder {
         private final BiFunction<T, Object[], R> aggregationFunction;
 
         private final Function<Throwable, RuntimeException> errorConverter;
+        private final Priority priority;
+        private final Equivalence<? super ID> idEquivalence;
         private final AssemblerAdapter<T, ID, R, RC> assemblerAdapter;
 
         private AssemblerImpl(Function<T, ID> idExtractor,
                               List<Mapper<ID, ?, ?>> mappers,
                               BiFunction<T, Object[], R> aggregationFunction,
                               Function<Throwable, RuntimeException> errorConverter,
+                              Priority priority,
+                              Equivalence<? super ID> idEquivalence,
                               AssemblerAdapter<T, ID, R, RC> assemblerAdapter) {
             this.idExtractor = idExtractor;
             this.aggregationFunction = aggregationFunction;
             this.mappers = mappers;
             this.errorConverter = errorConverter;
+            this.priority = priority;
+            this.idEquivalence = idEquivalence;
             this.assemblerAdapter = assemblerAdapter;
         }
 
         @Override
-        public RC assembleFromSupplier(CheckedSupplier<Iterable<T>, Throwable> topLevelEntitiesProvider) {
-            return Assembler.assembleFromSupplier(topLevelEntitiesProvider, idExtractor, mappers, aggregationFunction, assemblerAdapter, errorConverter);
+        public RC assembleFromSupplier(CheckedSupplier<Iterable<T>, Throwable> topLevelEntitiesProvider, MapperContext mapperContext) {
+            return Assembler.assembleFromSupplier(topLevelEntitiesProvider, idExtractor, mappers, aggregationFunction, assemblerAdapter, errorConverter,
+                    priority != null ? mapperContext.withPriority(priority) : mapperContext, idEquivalence);
         }
     }
 }
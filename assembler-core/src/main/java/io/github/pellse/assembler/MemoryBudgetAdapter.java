@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.assembler;
+
+import io.github.pellse.util.cache.Weigher;
+import io.github.pellse.util.concurrent.MemoryBudget;
+import io.github.pellse.util.concurrent.MemoryBudget.Reservation;
+import io.github.pellse.util.concurrent.MemoryBudgetExceededException;
+import io.github.pellse.util.query.MapperContext;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static io.github.pellse.util.collection.CollectionUtil.toStream;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static java.lang.Math.min;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * {@link AssemblerAdapter} decorator admitting an assembly only once the estimated size of its top level entities
+ * with all their sub-entities is acquired from a {@link MemoryBudget}, evicting from the caches sharing the budget
+ * if needed. The assembly waits for in-flight assemblies to release enough bytes, at most {@code maxWaitNanos}
+ * and never past its deadline, and is otherwise rejected with a {@link MemoryBudgetExceededException}.
+ * When the decorated adapter {@link AssemblerAdapter#isNonBlocking() is non blocking} the bytes are acquired on one of
+ * its scheduler threads, so the assembly never waits and is rejected right away if the bytes are not available.
+ * <p>
+ * The bytes are acquired once the top level entities are known, before any sub query is executed, and released
+ * once the assembled results are materialized (so the aggregated stream is no longer lazy), or as soon as the result
+ * of the decorated adapter fails or is cancelled, see {@link AssemblerAdapter#doFinally(Object, Runnable)}. Only the
+ * bytes of a result that never terminates are left to the garbage collector, see {@link Reservation}.
+ */
+final class MemoryBudgetAdapter<T, ID, R, RC> implements AssemblerAdapter<T, ID, R, RC> {
+
+    private final AssemblerAdapter<T, ID, R, RC> delegate;
+    private final MemoryBudget budget;
+    private final Weigher<? super T> weigher;
+    private final long maxWaitNanos;
+
+    MemoryBudgetAdapter(AssemblerAdapter<T, ID, R, RC> delegate, MemoryBudget budget, Weigher<? super T> weigher, long maxWaitNanos) {
+        this.delegate = delegate;
+        this.budget = budget;
+        this.weigher = weigher;
+        this.maxWaitNanos = delegate.isNonBlocking() ? 0 : maxWaitNanos;
+    }
+
+    @Override
+    public RC convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                   Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
+                                   BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder) {
+        return convertMapperSources(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder, mapperContext());
+    }
+
+    @Override
+    public RC convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                   Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
+                                   BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder,
+                                   MapperContext mapperContext) {
+
+        Reservation reservation = budget.reservation();
+
+        try {
+            RC result = delegate.convertMapperSources(topLevelEntitiesProvider,
+                    entities -> {
+                        acquire(reservation, weigh(entities), mapperContext);
+                        return mapperSourcesBuilder.apply(entities);
+                    },
+                    (entities, mapperResults) -> {
+                        try {
+                            return aggregateStreamBuilder.apply(entities, mapperResults).collect(toList()).stream();
+                        } finally {
+                            reservation.release();
+                        }
+                    },
+                    mapperContext);
+
+            return delegate.doFinally(result, reservation::close);
+        } catch (RuntimeException | Error e) {
+            reservation.close(); // Synchronous adapter
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isNonBlocking() {
+        return delegate.isNonBlocking();
+    }
+
+    @Override
+    public RC doFinally(RC result, Runnable onTerminate) {
+        return delegate.doFinally(result, onTerminate);
+    }
+
+    private long weigh(Iterable<T> entities) {
+        return toStream(entities)
+                .filter(Objects::nonNull)
+                .mapToLong(weigher::weigh)
+                .sum();
+    }
+
+    private void acquire(Reservation reservation, long bytes, MapperContext mapperContext) {
+        long timeoutNanos = min(maxWaitNanos, mapperContext.deadline().remainingNanos());
+        try {
+            if (!reservation.tryAcquire(bytes, timeoutNanos, NANOSECONDS)) {
+                throw new MemoryBudgetExceededException("Could not acquire " + bytes + " bytes from " + budget);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MemoryBudgetExceededException("Interrupted while acquiring " + bytes + " bytes from " + budget);
+        }
+    }
+}
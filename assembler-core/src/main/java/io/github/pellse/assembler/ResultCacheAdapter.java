@@ -0,0 +1,166 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.assembler;
+
+import io.github.pellse.util.cache.Cache;
+import io.github.pellse.util.query.MapperContext;
+
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static io.github.pellse.util.collection.CollectionUtil.toStream;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * {@link AssemblerAdapter} decorator caching the assembled results per top level ID: the cached results are looked up
+ * as soon as the top level entities are fetched, only the entities not in the cache then go through the mappers and
+ * the join, and their assembled results are added to the cache. The results of an assembly whose deadline expired
+ * are not cached, as they may contain the default results of mappers that didn't complete in time.
+ * <p>
+ * The cached and assembled results are merged back in the order of the top level entities, the aggregated
+ * stream is therefore materialized.
+ */
+final class ResultCacheAdapter<T, ID, R, RC> implements AssemblerAdapter<T, ID, R, RC> {
+
+    private final AssemblerAdapter<T, ID, R, RC> delegate;
+    private final Function<T, ID> idExtractor;
+    private final Cache<ID, R> resultCache;
+    private final int mapperCount;
+
+    ResultCacheAdapter(AssemblerAdapter<T, ID, R, RC> delegate, Function<T, ID> idExtractor, Cache<ID, R> resultCache, int mapperCount) {
+        this.delegate = delegate;
+        this.idExtractor = idExtractor;
+        this.resultCache = resultCache;
+        this.mapperCount = mapperCount;
+    }
+
+    @Override
+    public RC convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                   Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
+                                   BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder) {
+        return convertMapperSources(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder, mapperContext());
+    }
+
+    /**
+     * The adapters pass the entities returned by the top level entities provider to both the mapper sources builder
+     * and the aggregate stream builder, the cache hits of an assembly are therefore carried by that {@link Iterable}
+     * instead of being shared state of this adapter. Any other {@link Iterable}, e.g. the empty list replacing
+     * the top level entities after a timeout, goes through the pipeline unchanged.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public RC convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                   Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
+                                   BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder,
+                                   MapperContext mapperContext) {
+
+        return delegate.convertMapperSources(
+                () -> lookup(topLevelEntitiesProvider.get()),
+                entities -> entities instanceof CachedEntities
+                        ? mapperSources((CachedEntities<T, ID, R>) entities, mapperSourcesBuilder)
+                        : mapperSourcesBuilder.apply(entities),
+                (entities, mapperResults) -> entities instanceof CachedEntities
+                        ? aggregate((CachedEntities<T, ID, R>) entities, mapperResults, aggregateStreamBuilder, mapperContext)
+                        : aggregateStreamBuilder.apply(entities, mapperResults),
+                mapperContext);
+    }
+
+    @Override
+    public boolean isNonBlocking() {
+        return delegate.isNonBlocking();
+    }
+
+    @Override
+    public RC doFinally(RC result, Runnable onTerminate) {
+        return delegate.doFinally(result, onTerminate);
+    }
+
+    private CachedEntities<T, ID, R> lookup(Iterable<T> topLevelEntities) {
+        List<T> entities = toStream(topLevelEntities)
+                .filter(Objects::nonNull)
+                .collect(toList());
+
+        Map<ID, R> hits = resultCache.getAll(entities.stream().map(idExtractor).collect(toList()));
+
+        List<T> misses = hits.isEmpty() ? entities : entities.stream()
+                .filter(entity -> !hits.containsKey(idExtractor.apply(entity)))
+                .collect(toList());
+
+        return new CachedEntities<>(entities, misses, hits);
+    }
+
+    /**
+     * No mapper is invoked when all the entities are cache hits, each mapper source then returns an empty result
+     */
+    private Stream<Supplier<Map<ID, ?>>> mapperSources(CachedEntities<T, ID, R> entities,
+                                                       Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder) {
+        return !entities.misses.isEmpty()
+                ? mapperSourcesBuilder.apply(entities.misses)
+                : Stream.<Supplier<Map<ID, ?>>>generate(() -> Collections::emptyMap).limit(mapperCount);
+    }
+
+    private Stream<R> aggregate(CachedEntities<T, ID, R> entities,
+                                List<Map<ID, ?>> mapperResults,
+                                BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder,
+                                MapperContext mapperContext) {
+
+        List<R> assembledResults = !entities.misses.isEmpty()
+                ? aggregateStreamBuilder.apply(entities.misses, mapperResults).collect(toList())
+                : List.of();
+
+        if (!assembledResults.isEmpty() && !mapperContext.deadline().isExpired()) {
+            Map<ID, R> newResults = new HashMap<>(assembledResults.size() * 4 / 3 + 1);
+            for (int i = 0; i < assembledResults.size(); i++) {
+                newResults.put(idExtractor.apply(entities.misses.get(i)), assembledResults.get(i));
+            }
+            resultCache.putAll(newResults);
+        }
+
+        if (entities.hits.isEmpty()) {
+            return assembledResults.stream();
+        }
+
+        List<R> results = new ArrayList<>(entities.all.size());
+        Iterator<R> assembledResultsIterator = assembledResults.iterator();
+        for (T entity : entities.all) {
+            ID id = idExtractor.apply(entity);
+            results.add(entities.hits.containsKey(id) ? entities.hits.get(id) : assembledResultsIterator.next());
+        }
+        return results.stream();
+    }
+
+    private static final class CachedEntities<T, ID, R> implements Iterable<T> {
+        private final List<T> all;
+        private final List<T> misses;
+        private final Map<ID, R> hits;
+
+        private CachedEntities(List<T> all, List<T> misses, Map<ID, R> hits) {
+            this.all = all;
+            this.misses = misses;
+            this.hits = hits;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return all.iterator();
+        }
+    }
+}
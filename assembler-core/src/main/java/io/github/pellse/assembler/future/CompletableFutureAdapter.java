@@ -17,21 +17,31 @@
 package io.github.pellse.assembler.future;
 
 import io.github.pellse.assembler.AssemblerAdapter;
+import io.github.pellse.util.query.Deadline;
+import io.github.pellse.util.query.MapperContext;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+import static io.github.pellse.util.concurrent.ContextualExecutor.executorFor;
+import static io.github.pellse.util.concurrent.DelayedSupplier.delayNanos;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.CompletableFuture.allOf;
-import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.CompletableFuture.delayedExecutor;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
 
@@ -49,10 +59,21 @@ public final class CompletableFutureAdapter<T, ID, R, CR extends Collection<R>>
     public CompletableFuture<CR> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
                                                       Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
                                                       BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder) {
-        return supplyAsync(topLevelEntitiesProvider)
+        return convertMapperSources(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder, mapperContext());
+    }
+
+    @Override
+    public CompletableFuture<CR> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                                      Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
+                                                      BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder,
+                                                      MapperContext mapperContext) {
+        Deadline deadline = mapperContext.deadline();
+        Executor executor = executorFor(this.executor, mapperContext);
+
+        return toCompletableFuture(topLevelEntitiesProvider, executor, deadline, emptyList())
                 .thenCompose(entities -> {
                     List<CompletableFuture<Map<ID, ?>>> mappingFutures = mapperSourcesBuilder.apply(entities)
-                            .map(this::toCompletableFuture)
+                            .map(mapperSource -> toCompletableFuture(mapperSource, executor, deadline, emptyMap()))
                             .collect(toList());
 
                     return allOf(mappingFutures.toArray(new CompletableFuture[0]))
@@ -64,8 +85,47 @@ public final class CompletableFutureAdapter<T, ID, R, CR extends Collection<R>>
                 });
     }
 
-    private <U> CompletableFuture<U> toCompletableFuture(Supplier<U> mapperSource) {
-        return executor != null ? supplyAsync(mapperSource, executor) : supplyAsync(mapperSource);
+    @Override
+    public CompletableFuture<CR> doFinally(CompletableFuture<CR> result, Runnable onTerminate) {
+        result.whenComplete((results, e) -> onTerminate.run());
+        return result;
+    }
+
+    /**
+     * When {@code deadline} expires, the returned future is completed with {@code fallbackValue} and the execution
+     * of {@code source} is cancelled, a queued execution is then skipped and a running one is interrupted,
+     * so that timed out sub queries don't keep holding executor threads and e.g. database connections
+     */
+    private static <U> CompletableFuture<U> toCompletableFuture(Supplier<U> source, Executor executor, Deadline deadline, U fallbackValue) {
+        CompletableFuture<U> future = new CompletableFuture<>();
+
+        FutureTask<U> task = new FutureTask<>(source::get) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    future.complete(get());
+                } catch (ExecutionException e) {
+                    future.completeExceptionally(e.getCause());
+                } catch (InterruptedException e) {
+                    future.completeExceptionally(e);
+                }
+            }
+        };
+
+        Executor targetExecutor = executor != null ? executor : future.defaultExecutor();
+
+        // e.g. waiting for a rate limiter permit, we schedule the execution instead of parking an executor thread
+        long delayNanos = delayNanos(source);
+        (delayNanos > 0 ? delayedExecutor(delayNanos, NANOSECONDS, targetExecutor) : targetExecutor).execute(task);
+
+        if (deadline.isBounded()) {
+            future.completeOnTimeout(fallbackValue, deadline.remainingNanos(), NANOSECONDS);
+            future.whenComplete((result, e) -> task.cancel(true));
+        }
+        return future;
     }
 
     public static <T, ID, R> CompletableFutureAdapter<T, ID, R, List<R>> completableFutureAdapter() {
@@ -17,7 +17,10 @@
 package io.github.pellse.assembler.stream;
 
 import io.github.pellse.assembler.AssemblerAdapter;
+import io.github.pellse.util.query.Deadline;
+import io.github.pellse.util.query.MapperContext;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.function.BiFunction;
@@ -25,6 +28,7 @@ import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+import static io.github.pellse.util.query.MapperContext.mapperContext;
 import static java.util.stream.Collectors.toList;
 
 public final class StreamAdapter<T, ID, R> implements AssemblerAdapter<T, ID, R, Stream<R>> {
@@ -39,15 +43,38 @@ public final class StreamAdapter<T, ID, R> implements AssemblerAdapter<T, ID, R,
     public Stream<R> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
                                           Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
                                           BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder) {
+        return convertMapperSources(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder, mapperContext());
+    }
+
+    /**
+     * Sources are executed on the calling thread(s) and cannot be interrupted, a mapper source not yet started when
+     * the {@link Deadline} of {@code mapperContext} expires is replaced by an empty result instead, e.g. the sub queries
+     * following a slow one in a sequential stream, the join then falls back to the default results of their mappers
+     */
+    @Override
+    public Stream<R> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                          Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
+                                          BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder,
+                                          MapperContext mapperContext) {
+        Deadline deadline = mapperContext.deadline();
 
         Iterable<T> entities = topLevelEntitiesProvider.get();
         List<Map<ID, ?>> mappers = convertSources(mapperSourcesBuilder.apply(entities))
-                .map(Supplier::get)
+                .map(mapperSource -> deadline.isExpired() ? Collections.<ID, Object>emptyMap() : mapperSource.get())
                 .collect(toList());
 
         return aggregateStreamBuilder.apply(entities, mappers);
     }
 
+    /**
+     * The sources are executed by {@code convertMapperSources()}, {@code onTerminate} is invoked when the returned
+     * stream is closed
+     */
+    @Override
+    public Stream<R> doFinally(Stream<R> result, Runnable onTerminate) {
+        return result.onClose(onTerminate);
+    }
+
     private <U> Stream<Supplier<U>> convertSources(Stream<Supplier<U>> sources) {
         return parallel ? sources.collect(toList()).parallelStream() : sources;
     }
@@ -17,22 +17,49 @@
 package io.github.pellse.assembler.future;
 
 import io.github.pellse.assembler.*;
+import io.github.pellse.util.concurrent.FairShareExecutor;
+import io.github.pellse.util.concurrent.MemoryBudget;
+import io.github.pellse.util.concurrent.PriorityExecutor;
+import io.github.pellse.util.concurrent.RateLimiter;
 import io.github.pellse.util.function.checked.UncheckedException;
+import io.github.pellse.util.query.Priority;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 
 import static io.github.pellse.assembler.AssemblerBuilder.assemblerOf;
 import static io.github.pellse.assembler.AssemblerTestUtils.*;
 import static io.github.pellse.assembler.future.CompletableFutureAdapter.completableFutureAdapter;
+import static io.github.pellse.util.cache.Cache.lruCache;
+import static io.github.pellse.util.cache.Weigher.constantWeigher;
+import static io.github.pellse.util.concurrent.FairShareExecutor.fairShareExecutor;
+import static io.github.pellse.util.concurrent.MemoryBudget.memoryBudget;
+import static io.github.pellse.util.concurrent.PriorityExecutor.priorityExecutor;
+import static io.github.pellse.util.concurrent.RateLimiter.rateLimiter;
+import static io.github.pellse.util.concurrent.TenantQuota.tenantQuota;
+import static io.github.pellse.util.query.Deadline.after;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static io.github.pellse.util.query.MapperUtils.cached;
 import static io.github.pellse.util.query.MapperUtils.oneToManyAsList;
 import static io.github.pellse.util.query.MapperUtils.oneToOne;
+import static io.github.pellse.util.query.MapperUtils.rateLimited;
+import static io.github.pellse.util.query.Priority.HIGH;
+import static io.github.pellse.util.query.Priority.LOW;
+import static java.lang.System.nanoTime;
+import static java.time.Duration.ofMillis;
 import static java.util.Arrays.asList;
+import static java.util.Collections.synchronizedList;
 import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -110,4 +137,202 @@ public class CompletableFutureAssemblerTest {
 
         assertThat(transactions.get(), equalTo(Set.of(transaction1, transaction2, transaction3)));
     }
+
+    @Test
+    public void testAssembleBuilderWithDeadline() throws InterruptedException, ExecutionException {
+
+        CompletableFuture<List<Transaction>> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, BillingInfo::new),
+                        oneToManyAsList(customerIds -> {
+                            Thread.sleep(2000);
+                            return getAllOrders(customerIds);
+                        }, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(completableFutureAdapter())
+                .assemble(getCustomers(), after(ofMillis(200)));
+
+        assertThat(transactions.get(), equalTo(List.of(
+                new Transaction(customer1, billingInfo1, List.of()),
+                new Transaction(customer2, billingInfo2Unknown, List.of()),
+                new Transaction(customer3, billingInfo3, List.of()))));
+    }
+
+    @Test
+    public void testAssembleBuilderWithDeadlineCancelsTimedOutSubQueries() throws InterruptedException, ExecutionException {
+
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        CompletableFuture<List<Transaction>> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, BillingInfo::new),
+                        oneToManyAsList(customerIds -> {
+                            try {
+                                Thread.sleep(10_000);
+                            } catch (InterruptedException e) {
+                                interrupted.countDown();
+                                throw e;
+                            }
+                            return getAllOrders(customerIds);
+                        }, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(completableFutureAdapter())
+                .assemble(getCustomers(), after(ofMillis(200)));
+
+        assertThat(transactions.get().size(), equalTo(3));
+        assertThat(interrupted.await(5, SECONDS), equalTo(true));
+    }
+
+    @Test
+    public void testAssembleBuilderWithSharedRateLimiter() throws InterruptedException, ExecutionException {
+
+        RateLimiter rateLimiter = rateLimiter(5);
+
+        long start = nanoTime();
+        CompletableFuture<List<Transaction>> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        rateLimited(oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, BillingInfo::new), rateLimiter),
+                        rateLimited(oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId), rateLimiter),
+                        Transaction::new)
+                .using(completableFutureAdapter())
+                .assembleFromSupplier(this::getCustomers);
+
+        assertThat(transactions.get(), equalTo(List.of(transaction1, transaction2, transaction3)));
+        assertThat(NANOSECONDS.toMillis(nanoTime() - start) >= 150, equalTo(true)); // 2nd sub query delayed by 200ms
+    }
+
+    @Test
+    public void testAssembleBuilderWithDecoratedRateLimitedMapperDelaysInsteadOfParking() throws InterruptedException, ExecutionException {
+
+        RateLimiter rateLimiter = rateLimiter(2);
+        rateLimiter.reserve(); // Next permit only available in 500ms
+
+        // Tasks executed on the calling thread, which would be parked if the sub query waited for its permit
+        long start = nanoTime();
+        CompletableFuture<List<Transaction>> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        cached(rateLimited(oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, BillingInfo::new), rateLimiter), lruCache(10)),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(completableFutureAdapter(Runnable::run))
+                .assembleFromSupplier(this::getCustomers);
+
+        assertThat(NANOSECONDS.toMillis(nanoTime() - start) < 250, equalTo(true));
+        assertThat(transactions.isDone(), equalTo(false));
+
+        assertThat(transactions.get(), equalTo(List.of(transaction1, transaction2, transaction3)));
+        assertThat(NANOSECONDS.toMillis(nanoTime() - start) >= 400, equalTo(true));
+    }
+
+    @Test
+    public void testAssembleBuilderWithMemoryBudgetReleasedWhenAssemblyFailsOrIsCancelled() throws InterruptedException {
+
+        MemoryBudget budget = memoryBudget(1_000);
+        CountDownLatch billingInfosQueried = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+
+        CompletableFuture<List<Transaction>> failedTransactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne(AssemblerTestUtils::throwSQLException, BillingInfo::getCustomerId, BillingInfo::new),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .withMemoryBudget(budget, constantWeigher(100))
+                .using(completableFutureAdapter())
+                .assembleFromSupplier(this::getCustomers);
+
+        assertThrows(ExecutionException.class, failedTransactions::get);
+        assertThat(budget.usedBytes(), equalTo(0L));
+
+        CompletableFuture<List<Transaction>> cancelledTransactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne(customerIds -> {
+                            billingInfosQueried.countDown();
+                            cancelled.await();
+                            return AssemblerTestUtils.getBillingInfos(customerIds);
+                        }, BillingInfo::getCustomerId, BillingInfo::new),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .withMemoryBudget(budget, constantWeigher(100))
+                .using(completableFutureAdapter())
+                .assembleFromSupplier(this::getCustomers);
+
+        assertThat(billingInfosQueried.await(5, SECONDS), equalTo(true));
+        assertThat(budget.usedBytes(), equalTo(300L));
+
+        cancelledTransactions.cancel(true);
+        assertThat(budget.usedBytes(), equalTo(0L));
+        cancelled.countDown();
+    }
+
+    @Test
+    public void testAssembleBuilderWithFairShareExecutor() throws InterruptedException, ExecutionException {
+
+        FairShareExecutor executor = fairShareExecutor(newFixedThreadPool(2), 2,
+                tenant -> tenant.equals("bulk-export") ? tenantQuota(1, 1) : tenantQuota(4));
+
+        Assembler<Customer, CompletableFuture<List<Transaction>>> assembler = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, BillingInfo::new),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(completableFutureAdapter(executor));
+
+        CompletableFuture<List<Transaction>> bulkTransactions = assembler.assemble(getCustomers(), mapperContext().withTenant("bulk-export"));
+        CompletableFuture<List<Transaction>> interactiveTransactions = assembler.assemble(getCustomers(), mapperContext().withTenant("interactive"));
+
+        assertThat(bulkTransactions.get(), equalTo(List.of(transaction1, transaction2, transaction3)));
+        assertThat(interactiveTransactions.get(), equalTo(List.of(transaction1, transaction2, transaction3)));
+    }
+
+    @Test
+    public void testAssembleBuilderWithPriorityExecutor() throws InterruptedException, ExecutionException {
+
+        PriorityExecutor executor = priorityExecutor(newSingleThreadExecutor(), 1);
+        List<Priority> executionOrder = synchronizedList(new ArrayList<>());
+
+        CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        CompletableFuture<List<Transaction>> lowPriorityTransactions = transactionAssembler(executor, LOW)
+                .assembleFromSupplier(() -> {
+                    executionOrder.add(LOW);
+                    return getCustomers();
+                });
+
+        CompletableFuture<List<Transaction>> highPriorityTransactions = transactionAssembler(executor, HIGH)
+                .assembleFromSupplier(() -> {
+                    executionOrder.add(HIGH);
+                    return getCustomers();
+                });
+
+        latch.countDown();
+
+        assertThat(lowPriorityTransactions.get(), equalTo(List.of(transaction1, transaction2, transaction3)));
+        assertThat(highPriorityTransactions.get(), equalTo(List.of(transaction1, transaction2, transaction3)));
+        assertThat(executionOrder, equalTo(List.of(HIGH, LOW)));
+    }
+
+    private static Assembler<Customer, CompletableFuture<List<Transaction>>> transactionAssembler(Executor executor, Priority priority) {
+        return assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, BillingInfo::new),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .withPriority(priority)
+                .using(completableFutureAdapter(executor));
+    }
 }
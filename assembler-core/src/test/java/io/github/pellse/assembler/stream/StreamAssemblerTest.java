@@ -17,20 +17,62 @@
 package io.github.pellse.assembler.stream;
 
 import io.github.pellse.assembler.*;
+import io.github.pellse.util.cache.Cache;
+import io.github.pellse.util.cache.MappedFileCache;
+import io.github.pellse.util.cache.Serializer;
+import io.github.pellse.util.collection.LongIdSet;
+import io.github.pellse.util.concurrent.MemoryBudget;
+import io.github.pellse.util.concurrent.MemoryBudgetExceededException;
+import io.github.pellse.util.concurrent.RateLimiter;
 import io.github.pellse.util.function.checked.UncheckedException;
+import io.github.pellse.util.query.BatchBisectingMapper;
+import io.github.pellse.util.query.CachingMapper;
+import io.github.pellse.util.query.Deadline;
 import io.github.pellse.util.query.Mapper;
+import io.github.pellse.util.query.ReferenceDataMapper;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.DoubleStream;
 import java.util.stream.Stream;
 
 import static io.github.pellse.assembler.AssemblerBuilder.assemblerOf;
 import static io.github.pellse.assembler.AssemblerTestUtils.*;
 import static io.github.pellse.assembler.stream.StreamAdapter.streamAdapter;
+import static io.github.pellse.util.cache.Cache.compressedCache;
+import static io.github.pellse.util.cache.Cache.lruCache;
+import static io.github.pellse.util.cache.Codec.deflateCodec;
+import static io.github.pellse.util.cache.Cache.tieredCache;
+import static io.github.pellse.util.cache.MappedFileCache.mappedFileCache;
+import static io.github.pellse.util.cache.NegativeCache.negativeCache;
+import static io.github.pellse.util.cache.OffHeapCache.offHeapCache;
+import static io.github.pellse.util.cache.Serializer.longSerializer;
+import static io.github.pellse.util.cache.Serializer.serializer;
+import static io.github.pellse.util.cache.Weigher.constantWeigher;
+import static io.github.pellse.util.collection.Equivalence.byteArrayEquivalence;
+import static io.github.pellse.util.concurrent.MemoryBudget.memoryBudget;
+import static io.github.pellse.util.concurrent.RateLimiter.rateLimiter;
+import static io.github.pellse.util.query.Deadline.after;
+import static io.github.pellse.util.query.MapFactory.compactListMapFactory;
 import static io.github.pellse.util.query.MapFactory.defaultMapFactory;
+import static io.github.pellse.util.query.MapFactory.openAddressingMapFactory;
 import static io.github.pellse.util.query.MapperUtils.*;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.time.Duration.ZERO;
+import static java.time.Duration.ofMillis;
+import static java.time.Duration.ofMinutes;
 import static java.util.Arrays.asList;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.util.zip.Deflater.BEST_COMPRESSION;
+import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -45,6 +87,38 @@ public class StreamAssemblerTest {
         return asList(customer1, customer2, customer3);
     }
 
+    private static byte[] toBytes(Long id) {
+        return ByteBuffer.allocate(Long.BYTES).putLong(id).array();
+    }
+
+    private static Serializer<BillingInfo> billingInfoSerializer() {
+        return serializer(
+                billingInfo -> (billingInfo.getCustomerId() + ":" + billingInfo.getCreditCardNumber()).getBytes(UTF_8),
+                buffer -> {
+                    String[] fields = UTF_8.decode(buffer).toString().split(":");
+                    return new BillingInfo(Long.valueOf(fields[0]), fields[1]);
+                });
+    }
+
+    private static Serializer<List<OrderItem>> orderItemsSerializer() {
+        return serializer(
+                orderItems -> orderItems.stream()
+                        .map(orderItem -> orderItem.getCustomerId() + ":" + orderItem.getOrderDescription() + ":" + orderItem.getPrice())
+                        .collect(joining("\n"))
+                        .getBytes(UTF_8),
+                buffer -> Stream.of(UTF_8.decode(buffer).toString().split("\n"))
+                        .filter(line -> !line.isEmpty())
+                        .map(line -> line.split(":"))
+                        .map(fields -> new OrderItem(Long.valueOf(fields[0]), fields[1], Double.valueOf(fields[2])))
+                        .collect(toList()));
+    }
+
+    private static List<Long> fromBytes(List<byte[]> ids) {
+        return ids.stream()
+                .map(id -> ByteBuffer.wrap(id).getLong())
+                .collect(toList());
+    }
+
     @Test
     public void testAssembleBuilder() {
 
@@ -77,6 +151,38 @@ public class StreamAssemblerTest {
         assertThat(transactions, equalTo(List.of(transaction1, transaction2, transaction3)));
     }
 
+    @Test
+    public void testAssembleBuilderWithOpenAddressingMapFactory() {
+
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, BillingInfo::new, openAddressingMapFactory()),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId, openAddressingMapFactory(0.5f)),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2, transaction3)));
+    }
+
+    @Test
+    public void testAssembleBuilderWithCompactListMapFactory() {
+
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, BillingInfo::new),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId, compactListMapFactory()),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2, transaction3)));
+    }
+
     @Test
     public void testAssembleBuilderWithNullTopLevelEntityList() {
 
@@ -175,6 +281,170 @@ public class StreamAssemblerTest {
         assertThat(transactions, equalTo(List.of(transactionSet1, transactionSet2, transactionSet3)));
     }
 
+    @Test
+    public void testAssembleBuilderWithLongIdSetIds() {
+
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne(AssemblerTestUtils::getBillingInfosWithSetIds, BillingInfo::getCustomerId, BillingInfo::new, LongIdSet::longIdSet),
+                        oneToManyAsList((LongIdSet ids) -> getAllOrders(ids.asList()), OrderItem::getCustomerId, LongIdSet::longIdSet),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2, transaction3)));
+    }
+
+    @Test
+    public void testAssembleBuilderWithSharedDistinctIds() {
+
+        List<Collection<Long>> queriedIds = new ArrayList<>();
+
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne((List<Long> customerIds) -> {
+                            queriedIds.add(customerIds);
+                            return getBillingInfos(customerIds);
+                        }, BillingInfo::getCustomerId, BillingInfo::new),
+                        oneToManyAsList((List<Long> customerIds) -> {
+                            queriedIds.add(customerIds);
+                            return getAllOrders(customerIds);
+                        }, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assemble(asList(customer1, customer2, customer1, customer3))
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2, transaction1, transaction3)));
+        assertThat(queriedIds.get(0), equalTo(List.of(1L, 2L, 3L)));
+        assertThat(queriedIds.get(0) == queriedIds.get(1), equalTo(true)); // Same IDs passed to both query functions, no copy
+    }
+
+    @Test
+    public void testAssembleBuilderWithPositionalMappers() {
+
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        positionalOneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, BillingInfo::new),
+                        positionalOneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assemble(asList(customer1, customer2, customer1, customer3))
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2, transaction1, transaction3)));
+    }
+
+    @Test
+    public void testAssembleBuilderWithPositionalAndMapMappers() {
+
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, BillingInfo::new),
+                        positionalOneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2, transaction3)));
+    }
+
+    @Test
+    public void testAssembleBuilderWithSortMergeMappers() {
+
+        List<List<Long>> queriedIds = new ArrayList<>();
+
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        sortMergeOneToOne((List<Long> customerIds) -> {
+                            queriedIds.add(customerIds);
+                            return getBillingInfos(customerIds);
+                        }, BillingInfo::getCustomerId, Comparator.<Long>naturalOrder(), BillingInfo::new),
+                        sortMergeOneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId, Comparator.<Long>naturalOrder()),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assemble(asList(customer3, customer1, customer2, customer1))
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction3, transaction1, transaction2, transaction1)));
+        assertThat(queriedIds, equalTo(List.of(List.of(1L, 2L, 3L))));
+    }
+
+    @Test
+    public void testAssembleBuilderWithUnorderedSortMergeResults() {
+
+        assertThrows(UncheckedException.class, () -> assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        sortMergeOneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, Comparator.<Long>reverseOrder()),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList()));
+    }
+
+    @Test
+    public void testAssembleBuilderWithPrimitiveArrayMapper() {
+
+        List<Double> orderTotals = assemblerOf(Double.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToManyAsDoubleArray(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId, OrderItem::getPrice),
+                        (customer, prices) -> DoubleStream.of(prices).sum())
+                .using(streamAdapter())
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList());
+
+        assertThat(orderTotals, equalTo(List.of(19.99 + 39.99 + 9.99, 79.99 + 99.99, 0.0)));
+    }
+
+    @Test
+    public void testAssembleBuilderWithByteArrayIds() {
+
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor((Customer customer) -> toBytes(customer.getCustomerId()))
+                .withAssemblerRules(
+                        oneToOne(ids -> getBillingInfos(fromBytes(ids)), billingInfo -> toBytes(billingInfo.getCustomerId()),
+                                customerId -> null, openAddressingMapFactory(byteArrayEquivalence())),
+                        oneToManyAsList(ids -> getAllOrders(fromBytes(ids)), orderItem -> toBytes(orderItem.getCustomerId()),
+                                openAddressingMapFactory(byteArrayEquivalence())),
+                        Transaction::new)
+                .withIdEquivalence(byteArrayEquivalence())
+                .using(streamAdapter())
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2WithNullBillingInfo, transaction3)));
+    }
+
+    @Test
+    public void testAssembleBuilderWithByteArrayIdsCopiedByIdCollectionFactory() {
+
+        // The IDs passed to the query functions are copies, no longer the IdList correlating them with the equivalence
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor((Customer customer) -> toBytes(customer.getCustomerId()))
+                .withAssemblerRules(
+                        oneToOne((ArrayList<byte[]> ids) -> getBillingInfos(fromBytes(ids)), billingInfo -> toBytes(billingInfo.getCustomerId()),
+                                customerId -> null, ArrayList::new, openAddressingMapFactory(byteArrayEquivalence())),
+                        oneToManyAsList((ArrayList<byte[]> ids) -> getAllOrders(fromBytes(ids)), orderItem -> toBytes(orderItem.getCustomerId()),
+                                ArrayList::new, compactListMapFactory(byteArrayEquivalence())),
+                        Transaction::new)
+                .withIdEquivalence(byteArrayEquivalence())
+                .using(streamAdapter())
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2WithNullBillingInfo, transaction3)));
+    }
+
     @Test
     public void testAssembleBuilderWithNullBillingInfo() {
 
@@ -212,4 +482,548 @@ public class StreamAssemblerTest {
 
         assertThat(transactionList2, equalTo(List.of(transaction1, transaction2WithNullBillingInfo, transaction3)));
     }
+
+    @Test
+    public void testAssembleBuilderWithFrozenCachedMappers() {
+
+        Map<Iterable<Long>, Map<Long, List<OrderItem>>> allOrdersCache = new HashMap<>();
+
+        Assembler<Customer, Stream<Transaction>> transactionAssembler = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        cached(frozen(oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId))),
+                        cached(frozen(oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId)), allOrdersCache),
+                        Transaction::new)
+                .using(streamAdapter());
+
+        transactionAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+
+        List<Transaction> transactions = transactionAssembler
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2WithNullBillingInfo, transaction3)));
+        assertThrows(UnsupportedOperationException.class, () -> allOrdersCache.values().iterator().next().get(1L).add(orderItem11));
+    }
+
+    @Test
+    public void testAssembleBuilderWithTieredOffHeapCache() {
+
+        AtomicInteger billingInfoQueryCount = new AtomicInteger();
+
+        Mapper<Long, BillingInfo, SQLException> billingInfoMapper = cached(
+                oneToOne(customerIds -> {
+                    billingInfoQueryCount.incrementAndGet();
+                    return getBillingInfos(customerIds);
+                }, BillingInfo::getCustomerId),
+                tieredCache(lruCache(1), offHeapCache(1024, 256, billingInfoSerializer())));
+
+        Assembler<Customer, Stream<Transaction>> transactionAssembler = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(billingInfoMapper, oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId), Transaction::new)
+                .using(streamAdapter());
+
+        transactionAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+
+        List<Transaction> transactions = transactionAssembler
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2WithNullBillingInfo, transaction3)));
+        assertThat(billingInfoQueryCount.get(), equalTo(1));
+    }
+
+    @Test
+    public void testAssembleBuilderWithCompressedCache() {
+
+        AtomicInteger orderItemQueryCount = new AtomicInteger();
+
+        Mapper<Long, List<OrderItem>, SQLException> orderItemsMapper = cached(
+                oneToManyAsList(customerIds -> {
+                    orderItemQueryCount.incrementAndGet();
+                    return getAllOrders(customerIds);
+                }, OrderItem::getCustomerId),
+                compressedCache(100, orderItemsSerializer(), deflateCodec(BEST_COMPRESSION), 2));
+
+        Assembler<Customer, Stream<Transaction>> transactionAssembler = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId), orderItemsMapper, Transaction::new)
+                .using(streamAdapter());
+
+        List<Transaction> transactions1 = transactionAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+        List<Transaction> transactions2 = transactionAssembler.assembleFromSupplier(this::getCustomers).collect(toList()); // Decoded on hit
+        List<Transaction> transactions3 = transactionAssembler.assembleFromSupplier(this::getCustomers).collect(toList()); // Kept decoded
+
+        List<Transaction> expectedTransactions = List.of(transaction1, transaction2WithNullBillingInfo, transaction3);
+        assertThat(transactions1, equalTo(expectedTransactions));
+        assertThat(transactions2, equalTo(expectedTransactions));
+        assertThat(transactions3, equalTo(expectedTransactions));
+        assertThat(orderItemQueryCount.get(), equalTo(1));
+    }
+
+    @Test
+    public void testAssembleBuilderWithNegativeCache() {
+
+        AtomicInteger billingInfoQueryCount = new AtomicInteger();
+        Cache<Long, BillingInfo> billingInfoCache = lruCache(100);
+
+        Mapper<Long, BillingInfo, SQLException> billingInfoMapper = cached(
+                oneToOne(customerIds -> {
+                    billingInfoQueryCount.incrementAndGet();
+                    return getBillingInfos(customerIds);
+                }, BillingInfo::getCustomerId),
+                billingInfoCache,
+                negativeCache(ofMinutes(1), LongIdSet::longIdSet));
+
+        Assembler<Customer, Stream<Transaction>> transactionAssembler = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(billingInfoMapper, oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId), Transaction::new)
+                .using(streamAdapter());
+
+        transactionAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+
+        List<Transaction> transactions = transactionAssembler
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2WithNullBillingInfo, transaction3)));
+        assertThat(billingInfoQueryCount.get(), equalTo(1));
+        assertThat(billingInfoCache.getAll(List.of(2L)), equalTo(Map.of())); // Customer 2 has no billing info
+    }
+
+    @Test
+    public void testAssembleBuilderWithInvalidatedCache() {
+
+        AtomicInteger billingInfoQueryCount = new AtomicInteger();
+
+        CachingMapper<Long, BillingInfo, SQLException> billingInfoMapper = cached(
+                oneToOne((List<Long> customerIds) -> {
+                    int version = billingInfoQueryCount.incrementAndGet();
+                    return customerIds.stream()
+                            .map(customerId -> new BillingInfo(customerId, "v" + version))
+                            .collect(toList());
+                }, BillingInfo::getCustomerId),
+                lruCache(100));
+
+        Assembler<Customer, Stream<String>> creditCardAssembler = assemblerOf(String.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(billingInfoMapper, (customer, billingInfo) -> billingInfo.getCreditCardNumber())
+                .using(streamAdapter());
+
+        List<String> creditCards1 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+
+        billingInfoMapper.invalidate(1L); // Reloaded by the next assembly
+        List<String> creditCards2 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+
+        billingInfoMapper.refresh(2L); // Reloaded right away
+        billingInfoMapper.invalidateIf(customerId -> customerId == 3L);
+        List<String> creditCards3 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+
+        assertThat(creditCards1, equalTo(List.of("v1", "v1", "v1")));
+        assertThat(creditCards2, equalTo(List.of("v2", "v1", "v1")));
+        assertThat(creditCards3, equalTo(List.of("v2", "v3", "v4")));
+        assertThat(billingInfoQueryCount.get(), equalTo(4));
+    }
+
+    @Test
+    public void testAssembleBuilderWithMemoryBudget() throws InterruptedException {
+
+        MemoryBudget budget = memoryBudget(1_000);
+
+        Assembler<Customer, Stream<Transaction>> transactionAssembler = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        cached(oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId), lruCache(budget, constantWeigher(200))),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .withMemoryBudget(budget, constantWeigher(100))
+                .using(streamAdapter());
+
+        List<Transaction> transactions = transactionAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2WithNullBillingInfo, transaction3)));
+        assertThat(budget.usedBytes(), equalTo(400L)); // 2 cached billing infos, the 300 bytes of the assembly were released
+
+        MemoryBudget.Reservation inFlight = budget.reservation();
+        inFlight.tryAcquire(600, 0, SECONDS);
+
+        // The cached billing infos are evicted to admit the assembly, and can no longer be cached
+        transactions = transactionAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2WithNullBillingInfo, transaction3)));
+        assertThat(budget.usedBytes(), equalTo(600L));
+
+        inFlight.tryAcquire(300, 0, SECONDS);
+        assertThrows(MemoryBudgetExceededException.class, () -> transactionAssembler.assembleFromSupplier(this::getCustomers));
+
+        inFlight.release();
+        assertThat(budget.usedBytes(), equalTo(0L));
+    }
+
+    @Test
+    public void testAssembleBuilderWithMemoryBudgetNeverWaitsWithNonBlockingAdapter() {
+
+        MemoryBudget budget = memoryBudget(1_000);
+        AssemblerAdapter<Customer, Long, Transaction, Stream<Transaction>> streamAdapter = streamAdapter();
+
+        Assembler<Customer, Stream<Transaction>> transactionAssembler = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .withMemoryBudget(budget, constantWeigher(100), ofMinutes(1))
+                .using(new AssemblerAdapter<>() {
+                    @Override
+                    public Stream<Transaction> convertMapperSources(Supplier<Iterable<Customer>> topLevelEntitiesProvider,
+                                                                    Function<Iterable<Customer>, Stream<Supplier<Map<Long, ?>>>> mapperSourcesBuilder,
+                                                                    BiFunction<Iterable<Customer>, List<Map<Long, ?>>, Stream<Transaction>> aggregateStreamBuilder) {
+                        return streamAdapter.convertMapperSources(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder);
+                    }
+
+                    @Override
+                    public boolean isNonBlocking() {
+                        return true;
+                    }
+                });
+
+        assertThat(budget.tryAcquire(800), equalTo(true));
+
+        // Rejected right away instead of waiting up to a minute for the 800 bytes to be released
+        long start = System.nanoTime();
+        assertThrows(MemoryBudgetExceededException.class, () -> transactionAssembler.assembleFromSupplier(this::getCustomers));
+        assertThat(System.nanoTime() - start < SECONDS.toNanos(10), equalTo(true));
+
+        budget.release(800);
+        assertThat(transactionAssembler.assembleFromSupplier(this::getCustomers).collect(toList()),
+                equalTo(List.of(transaction1, transaction2WithNullBillingInfo, transaction3)));
+        assertThat(budget.usedBytes(), equalTo(0L));
+    }
+
+    @Test
+    public void testAssembleBuilderWithResultCache() {
+
+        List<List<Long>> queriedCustomerIds = new ArrayList<>();
+        Cache<Long, Transaction> transactionCache = lruCache(100);
+
+        Assembler<Customer, Stream<Transaction>> transactionAssembler = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne((List<Long> customerIds) -> {
+                            queriedCustomerIds.add(customerIds);
+                            return getBillingInfos(customerIds);
+                        }, BillingInfo::getCustomerId),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .withResultCache(transactionCache)
+                .using(streamAdapter());
+
+        List<Transaction> transactions1 = transactionAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+        List<Transaction> transactions2 = transactionAssembler.assembleFromSupplier(this::getCustomers).collect(toList()); // All cached
+
+        transactionCache.removeAll(List.of(2L));
+        List<Transaction> transactions3 = transactionAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+
+        List<Transaction> expectedTransactions = List.of(transaction1, transaction2WithNullBillingInfo, transaction3);
+        assertThat(transactions1, equalTo(expectedTransactions));
+        assertThat(transactions2, equalTo(expectedTransactions));
+        assertThat(transactions3, equalTo(expectedTransactions));
+        assertThat(queriedCustomerIds, equalTo(List.of(List.of(1L, 2L, 3L), List.of(2L))));
+    }
+
+    @Test
+    public void testAssembleBuilderWithRefreshAheadCache() {
+
+        AtomicInteger billingInfoQueryCount = new AtomicInteger();
+
+        Assembler<Customer, Stream<String>> creditCardAssembler = assemblerOf(String.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        refreshAhead(oneToOne((List<Long> customerIds) -> {
+                            int version = billingInfoQueryCount.incrementAndGet();
+                            return customerIds.stream()
+                                    .map(customerId -> new BillingInfo(customerId, "v" + version))
+                                    .collect(toList());
+                        }, BillingInfo::getCustomerId), lruCache(100), ZERO, ofMinutes(1), Runnable::run),
+                        (customer, billingInfo) -> billingInfo.getCreditCardNumber())
+                .using(streamAdapter());
+
+        List<String> creditCards1 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+        List<String> creditCards2 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList()); // Stale, refreshed in the background
+        List<String> creditCards3 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+
+        assertThat(creditCards1, equalTo(List.of("v1", "v1", "v1")));
+        assertThat(creditCards2, equalTo(List.of("v1", "v1", "v1")));
+        assertThat(creditCards3, equalTo(List.of("v2", "v2", "v2")));
+        assertThat(billingInfoQueryCount.get(), equalTo(3));
+    }
+
+    @Test
+    public void testAssembleBuilderWithContextPerAssembly() {
+
+        List<Deadline> deadlines = new ArrayList<>();
+
+        Assembler<Customer, Stream<Transaction>> transactionAssembler = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        withContext(context -> {
+                            deadlines.add(context.deadline());
+                            return oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, BillingInfo::new);
+                        }),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(streamAdapter());
+
+        assertThat(deadlines.isEmpty(), equalTo(true));
+
+        List<Transaction> transactions1 = transactionAssembler.assemble(getCustomers(), after(ofMinutes(1))).collect(toList());
+        List<Transaction> transactions2 = transactionAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+
+        assertThat(transactions1, equalTo(List.of(transaction1, transaction2, transaction3)));
+        assertThat(transactions2, equalTo(List.of(transaction1, transaction2, transaction3)));
+        // Once to reserve and once to query per assembly
+        assertThat(deadlines.size(), equalTo(4));
+        assertThat(deadlines.get(0).isBounded() && deadlines.get(1).isBounded(), equalTo(true));
+        assertThat(deadlines.get(2).isBounded() || deadlines.get(3).isBounded(), equalTo(false));
+    }
+
+    @Test
+    public void testAssembleBuilderWithReferenceDataMapper() {
+
+        Map<Long, BillingInfo> billingInfoTable = new HashMap<>(Map.of(
+                1L, new BillingInfo(1L, "v1"),
+                2L, new BillingInfo(2L, "v1"),
+                3L, new BillingInfo(3L, "v1")));
+
+        AtomicInteger billingInfoQueryCount = new AtomicInteger();
+        List<Runnable> reloads = new ArrayList<>();
+
+        ReferenceDataMapper<Long, BillingInfo, RuntimeException> billingInfoMapper = referenceData(() -> {
+            billingInfoQueryCount.incrementAndGet();
+            return new ArrayList<>(billingInfoTable.values());
+        }, BillingInfo::getCustomerId, reloads::add);
+
+        Assembler<Customer, Stream<String>> creditCardAssembler = assemblerOf(String.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(billingInfoMapper, (customer, billingInfo) -> billingInfo.getCreditCardNumber())
+                .using(streamAdapter());
+
+        List<String> creditCards1 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+
+        billingInfoTable.put(2L, new BillingInfo(2L, "v2"));
+        List<String> creditCards2 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList()); // Same snapshot
+
+        billingInfoMapper.refresh();
+        List<String> creditCards3 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+
+        billingInfoTable.put(3L, new BillingInfo(3L, "v2"));
+        billingInfoMapper.invalidate(3L);
+        List<String> creditCards4 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList()); // Stale snapshot, reload queued
+
+        assertThat(reloads.size(), equalTo(1));
+        assertThat(billingInfoQueryCount.get(), equalTo(2));
+
+        reloads.remove(0).run();
+        List<String> creditCards5 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList()); // Reloaded in the background
+
+        assertThat(creditCards1, equalTo(List.of("v1", "v1", "v1")));
+        assertThat(creditCards2, equalTo(List.of("v1", "v1", "v1")));
+        assertThat(creditCards3, equalTo(List.of("v1", "v2", "v1")));
+        assertThat(creditCards4, equalTo(List.of("v1", "v2", "v1")));
+        assertThat(creditCards5, equalTo(List.of("v1", "v2", "v2")));
+        assertThat(billingInfoQueryCount.get(), equalTo(3));
+    }
+
+    @Test
+    public void testAssembleBuilderWithVersionedRevalidation() {
+
+        Map<Long, BillingInfo> billingInfoTable = new HashMap<>(Map.of(
+                1L, new BillingInfo(1L, "v1"),
+                2L, new BillingInfo(2L, "v1"),
+                3L, new BillingInfo(3L, "v1")));
+
+        AtomicInteger billingInfoQueryCount = new AtomicInteger();
+        List<Map<Long, String>> revalidatedVersions = new ArrayList<>();
+
+        Assembler<Customer, Stream<String>> creditCardAssembler = assemblerOf(String.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        versioned(oneToOne((List<Long> customerIds) -> {
+                                    billingInfoQueryCount.incrementAndGet();
+                                    return customerIds.stream().map(billingInfoTable::get).collect(toList());
+                                }, BillingInfo::getCustomerId),
+                                (Map<Long, String> versions) -> {
+                                    revalidatedVersions.add(versions);
+                                    return versions.keySet().stream()
+                                            .map(billingInfoTable::get)
+                                            .filter(billingInfo -> !billingInfo.getCreditCardNumber().equals(versions.get(billingInfo.getCustomerId())))
+                                            .collect(toList());
+                                },
+                                BillingInfo::getCustomerId, BillingInfo::getCreditCardNumber, lruCache(100), ZERO),
+                        (customer, billingInfo) -> billingInfo.getCreditCardNumber())
+                .using(streamAdapter());
+
+        List<String> creditCards1 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+        List<String> creditCards2 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList()); // Revalidated, unchanged
+
+        billingInfoTable.put(2L, new BillingInfo(2L, "v2"));
+        List<String> creditCards3 = creditCardAssembler.assembleFromSupplier(this::getCustomers).collect(toList());
+
+        assertThat(creditCards1, equalTo(List.of("v1", "v1", "v1")));
+        assertThat(creditCards2, equalTo(List.of("v1", "v1", "v1")));
+        assertThat(creditCards3, equalTo(List.of("v1", "v2", "v1")));
+        assertThat(billingInfoQueryCount.get(), equalTo(1));
+        assertThat(revalidatedVersions, equalTo(List.of(Map.of(1L, "v1", 2L, "v1", 3L, "v1"), Map.of(1L, "v1", 2L, "v1", 3L, "v1"))));
+    }
+
+    @Test
+    public void testAssembleBuilderWithMappedFileCacheReopened() throws Exception {
+
+        Path cacheFile = Files.createTempFile("billing-info", ".cache");
+        Files.delete(cacheFile);
+
+        AtomicInteger billingInfoQueryCount = new AtomicInteger();
+
+        Function<MappedFileCache<Long, BillingInfo>, List<Transaction>> assembleWithCache = cache -> assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        cached(oneToOne(customerIds -> {
+                            billingInfoQueryCount.incrementAndGet();
+                            return getBillingInfos(customerIds);
+                        }, BillingInfo::getCustomerId), cache),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList());
+
+        try {
+            try (MappedFileCache<Long, BillingInfo> cache = mappedFileCache(cacheFile, 4096, longSerializer(), billingInfoSerializer())) {
+                assembleWithCache.apply(cache);
+            }
+
+            // Simulates a restart, the reopened cache is warm
+            try (MappedFileCache<Long, BillingInfo> cache = mappedFileCache(cacheFile, 4096, longSerializer(), billingInfoSerializer())) {
+                assertThat(assembleWithCache.apply(cache), equalTo(List.of(transaction1, transaction2WithNullBillingInfo, transaction3)));
+            }
+        } finally {
+            Files.delete(cacheFile);
+        }
+
+        assertThat(billingInfoQueryCount.get(), equalTo(1));
+    }
+
+    @Test
+    public void testAssembleBuilderWithExpiredDeadline() {
+
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne(AssemblerTestUtils::throwSQLException, BillingInfo::getCustomerId, BillingInfo::new),
+                        oneToManyAsList(AssemblerTestUtils::throwSQLException, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assemble(getCustomers(), after(ZERO))
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(
+                new Transaction(customer1, new BillingInfo(1L), List.of()),
+                new Transaction(customer2, billingInfo2Unknown, List.of()),
+                new Transaction(customer3, new BillingInfo(3L), List.of()))));
+    }
+
+    @Test
+    public void testAssembleBuilderWithDeadlineExpiredBySlowSubQuery() {
+
+        AtomicInteger orderItemQueryCount = new AtomicInteger();
+
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        oneToOne(customerIds -> {
+                            Thread.sleep(300);
+                            return getBillingInfos(customerIds);
+                        }, BillingInfo::getCustomerId, BillingInfo::new),
+                        oneToManyAsList(customerIds -> {
+                            orderItemQueryCount.incrementAndGet();
+                            return getAllOrders(customerIds);
+                        }, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assemble(getCustomers(), after(ofMillis(100)))
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(
+                new Transaction(customer1, billingInfo1, List.of()),
+                new Transaction(customer2, billingInfo2Unknown, List.of()),
+                new Transaction(customer3, billingInfo3, List.of()))));
+        assertThat(orderItemQueryCount.get(), equalTo(0));
+    }
+
+    @Test
+    public void testAssembleBuilderWithBatchBisectingMapper() {
+
+        Mapper<Long, BillingInfo, SQLException> billingInfoMapper = batchBisecting(oneToOne(customerIds -> {
+            if (customerIds.contains(2L)) {
+                throw new SQLException("Invalid customer id 2");
+            }
+            return getBillingInfos(customerIds);
+        }, BillingInfo::getCustomerId, BillingInfo::new));
+
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        billingInfoMapper,
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2, transaction3)));
+    }
+
+    @Test
+    public void testBatchBisectingMapperLearnsMaxBatchSize() {
+
+        BatchBisectingMapper<Long, BillingInfo, SQLException> billingInfoMapper = batchBisecting(oneToOne(customerIds -> {
+            if (customerIds.size() > 1) {
+                throw new SQLException("Payload too large");
+            }
+            return getBillingInfos(customerIds);
+        }, BillingInfo::getCustomerId, BillingInfo::new));
+
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        billingInfoMapper,
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assembleFromSupplier(this::getCustomers)
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(transaction1, transaction2, transaction3)));
+        assertThat(billingInfoMapper.maxBatchSize(), equalTo(1));
+    }
+
+    @Test
+    public void testAssembleBuilderWithRateLimitedMapperPastDeadline() {
+
+        RateLimiter rateLimiter = rateLimiter(1);
+        rateLimiter.reserve(); // Next permit only available in 1 second
+
+        List<Transaction> transactions = assemblerOf(Transaction.class)
+                .withIdExtractor(Customer::getCustomerId)
+                .withAssemblerRules(
+                        rateLimited(oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, BillingInfo::new), rateLimiter),
+                        oneToManyAsList(AssemblerTestUtils::getAllOrders, OrderItem::getCustomerId),
+                        Transaction::new)
+                .using(streamAdapter())
+                .assemble(getCustomers(), after(ofMillis(500)))
+                .collect(toList());
+
+        assertThat(transactions, equalTo(List.of(
+                new Transaction(customer1, new BillingInfo(1L), transaction1.getOrderItems()),
+                new Transaction(customer2, billingInfo2Unknown, transaction2.getOrderItems()),
+                new Transaction(customer3, new BillingInfo(3L), transaction3.getOrderItems()))));
+    }
 }
@@ -17,48 +17,96 @@
 package io.github.pellse.assembler.flux;
 
 import io.github.pellse.assembler.AssemblerAdapter;
+import io.github.pellse.util.concurrent.ContextualExecutor;
+import io.github.pellse.util.query.Deadline;
+import io.github.pellse.util.query.MapperContext;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Scheduler;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+import static io.github.pellse.util.concurrent.ContextualExecutor.executorFor;
+import static io.github.pellse.util.concurrent.DelayedSupplier.delayNanos;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static java.time.Duration.ofNanos;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toList;
 import static reactor.core.publisher.Flux.zip;
+import static reactor.core.publisher.Mono.defer;
 import static reactor.core.publisher.Mono.fromSupplier;
+import static reactor.core.publisher.Mono.just;
+import static reactor.core.scheduler.Schedulers.fromExecutor;
 import static reactor.core.scheduler.Schedulers.parallel;
 
 public final class FluxAdapter<T, ID, R> implements AssemblerAdapter<T, ID, R, Flux<R>> {
 
-    private final Scheduler scheduler;
+    private final Function<MapperContext, Scheduler> schedulerProvider;
 
-    private FluxAdapter(Scheduler scheduler) {
-        this.scheduler = requireNonNull(scheduler);
+    private FluxAdapter(Function<MapperContext, Scheduler> schedulerProvider) {
+        this.schedulerProvider = requireNonNull(schedulerProvider);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public Flux<R> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
                                         Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
                                         BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder) {
 
-        return toMono(topLevelEntitiesProvider)
+        return convertMapperSources(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder, mapperContext());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Flux<R> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                        Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
+                                        BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder,
+                                        MapperContext mapperContext) {
+
+        Deadline deadline = mapperContext.deadline();
+        Scheduler scheduler = schedulerProvider.apply(mapperContext);
+
+        return withDeadline(toMono(topLevelEntitiesProvider, scheduler), deadline, emptyList())
                 .flatMapMany(entities ->
-                        zip(mapperSourcesBuilder.apply(entities).map(this::toMono).collect(toList()),
+                        zip(mapperSourcesBuilder.apply(entities)
+                                        .map(mapperSource -> withDeadline(toMono(mapperSource, scheduler), deadline, emptyMap()))
+                                        .collect(toList()),
                                 mapperResults -> aggregateStreamBuilder.apply(entities, Stream.of(mapperResults)
                                         .map(mapResult -> (Map<ID, ?>) mapResult)
                                         .collect(toList()))))
                 .flatMap(Flux::fromStream);
     }
 
-    private <U> Mono<U> toMono(Supplier<U> mapperSource) {
-        return fromSupplier(mapperSource).subscribeOn(scheduler);
+    @Override
+    public boolean isNonBlocking() {
+        return true;
+    }
+
+    @Override
+    public Flux<R> doFinally(Flux<R> result, Runnable onTerminate) {
+        return result.doFinally(signalType -> onTerminate.run());
+    }
+
+    private static <U> Mono<U> toMono(Supplier<U> mapperSource, Scheduler scheduler) {
+        // e.g. waiting for a rate limiter permit, we delay the subscription instead of parking a scheduler thread,
+        // the delay is only read on subscription as reading it reserves the permit
+        return defer(() -> {
+            long delayNanos = delayNanos(mapperSource);
+            Mono<U> mono = fromSupplier(mapperSource).subscribeOn(scheduler);
+            return delayNanos > 0 ? mono.delaySubscription(ofNanos(delayNanos)) : mono;
+        });
+    }
+
+    private static <U> Mono<U> withDeadline(Mono<U> mono, Deadline deadline, U fallbackValue) {
+        // The remaining time is only evaluated on subscription, not when the pipeline is built
+        return deadline.isBounded() ? defer(() -> mono.timeout(deadline.remaining(), just(fallbackValue))) : mono;
     }
 
     public static <T, ID, R> FluxAdapter<T, ID, R> fluxAdapter() {
@@ -66,6 +114,16 @@ public final class FluxAdapter<T, ID, R> implements AssemblerAdapter<T, ID, R, F
     }
 
     public static <T, ID, R> FluxAdapter<T, ID, R> fluxAdapter(Scheduler scheduler) {
-        return new FluxAdapter<>(scheduler);
+        requireNonNull(scheduler);
+        return new FluxAdapter<>(mapperContext -> scheduler);
+    }
+
+    /**
+     * A {@link ContextualExecutor} (e.g. a {@code FairShareExecutor}) is resolved for the {@link MapperContext} of each assembly
+     */
+    public static <T, ID, R> FluxAdapter<T, ID, R> fluxAdapter(Executor executor) {
+        return executor instanceof ContextualExecutor
+                ? new FluxAdapter<>(mapperContext -> fromExecutor(executorFor(executor, mapperContext)))
+                : fluxAdapter(fromExecutor(executor));
     }
 }
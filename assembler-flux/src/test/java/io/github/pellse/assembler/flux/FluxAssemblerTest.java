@@ -27,8 +27,10 @@ import java.util.List;
 import static io.github.pellse.assembler.AssemblerBuilder.assemblerOf;
 import static io.github.pellse.assembler.AssemblerTestUtils.*;
 import static io.github.pellse.assembler.flux.FluxAdapter.fluxAdapter;
+import static io.github.pellse.util.query.Deadline.after;
 import static io.github.pellse.util.query.MapperUtils.oneToManyAsList;
 import static io.github.pellse.util.query.MapperUtils.oneToOne;
+import static java.time.Duration.ofMillis;
 import static java.util.Arrays.asList;
 
 public class FluxAssemblerTest {
@@ -72,6 +74,31 @@ public class FluxAssemblerTest {
                 .verify();
     }
 
+    @Test
+    public void testAssemblerBuilderWithFluxWithDeadline() {
+
+        Transaction transaction1WithoutOrders = new Transaction(customer1, billingInfo1, List.of());
+        Transaction transaction2WithoutOrders = new Transaction(customer2, billingInfo2Unknown, List.of());
+        Transaction transaction3WithoutOrders = new Transaction(customer3, billingInfo3, List.of());
+
+        StepVerifier.create(
+                assemblerOf(Transaction.class)
+                        .withIdExtractor(Customer::getCustomerId)
+                        .withAssemblerRules(
+                                oneToOne(AssemblerTestUtils::getBillingInfos, BillingInfo::getCustomerId, BillingInfo::new),
+                                oneToManyAsList(customerIds -> {
+                                    Thread.sleep(2000);
+                                    return getAllOrders(customerIds);
+                                }, OrderItem::getCustomerId),
+                                Transaction::new)
+                        .using(fluxAdapter())
+                        .assemble(getCustomers(), after(ofMillis(200))))
+                .expectSubscription()
+                .expectNext(transaction1WithoutOrders, transaction2WithoutOrders, transaction3WithoutOrders, transaction1WithoutOrders, transaction2WithoutOrders)
+                .expectComplete()
+                .verify();
+    }
+
     @Test
     public void testAssemblerBuilderWithFluxWithBuffering() {
 
@@ -18,6 +18,8 @@ package io.github.pellse.assembler.microprofile;
 
 import io.github.pellse.assembler.AssemblerAdapter;
 import io.github.pellse.util.function.checked.CheckedSupplier;
+import io.github.pellse.util.query.Deadline;
+import io.github.pellse.util.query.MapperContext;
 import org.eclipse.microprofile.reactive.streams.operators.PublisherBuilder;
 import org.reactivestreams.Publisher;
 
@@ -31,9 +33,17 @@ import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static io.github.pellse.assembler.microprofile.LazyPublisherBuilder.lazyPublisherBuilder;
+import static io.github.pellse.util.concurrent.ContextualExecutor.executorFor;
+import static io.github.pellse.util.concurrent.DelayedSupplier.delayNanos;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
+import static java.util.concurrent.CompletableFuture.delayedExecutor;
 import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.eclipse.microprofile.reactive.streams.operators.ReactiveStreams.fromCompletionStage;
 import static org.eclipse.microprofile.reactive.streams.operators.ReactiveStreams.fromIterable;
+import static org.eclipse.microprofile.reactive.streams.operators.ReactiveStreams.fromPublisher;
 
 public final class PublisherBuilderAdapter<T, ID, R> implements AssemblerAdapter<T, ID, R, PublisherBuilder<R>> {
 
@@ -49,29 +59,60 @@ public final class PublisherBuilderAdapter<T, ID, R> implements AssemblerAdapter
     public PublisherBuilder<R> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
                                                     Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
                                                     BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder) {
+        return convertMapperSources(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder, mapperContext());
+    }
+
+    @Override
+    public PublisherBuilder<R> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                                    Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
+                                                    BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder,
+                                                    MapperContext mapperContext) {
         return lazy
-                ? lazyPublisherBuilder(() -> buildPublisher(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder))
-                : buildPublisher(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder);
+                ? lazyPublisherBuilder(() -> buildPublisher(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder, mapperContext))
+                : buildPublisher(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder, mapperContext);
+    }
+
+    @Override
+    public boolean isNonBlocking() {
+        return true;
+    }
+
+    @Override
+    public PublisherBuilder<R> doFinally(PublisherBuilder<R> result, Runnable onTerminate) {
+        return result.onTerminate(onTerminate);
     }
 
     private PublisherBuilder<R> buildPublisher(Supplier<Iterable<T>> topLevelEntitiesProvider,
                                                Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
-                                               BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder) {
+                                               BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder,
+                                               MapperContext mapperContext) {
 
-        return fromCompletionStage(toCompletableFuture(topLevelEntitiesProvider))
+        Deadline deadline = mapperContext.deadline();
+        Executor executor = executorFor(this.executor, mapperContext);
+
+        return fromCompletionStage(withDeadline(toCompletableFuture(topLevelEntitiesProvider, executor), deadline, emptyList()))
                 .flatMap(entities -> fromCompletionStage(
                         fromIterable(mapperSourcesBuilder.apply(entities)::iterator)
-                                .flatMapCompletionStage(this::toCompletableFuture)
+                                .flatMapCompletionStage(mapperSource -> withDeadline(toCompletableFuture(mapperSource, executor), deadline, emptyMap()))
                                 .toList()
                                 .run())
                         .map(m -> aggregateStreamBuilder.apply(entities, m))
                         .flatMapIterable(stream -> stream::iterator));
     }
 
-    private <U> CompletableFuture<U> toCompletableFuture(Supplier<U> mapperSource) {
+    private static <U> CompletableFuture<U> toCompletableFuture(Supplier<U> mapperSource, Executor executor) {
+        // e.g. waiting for a rate limiter permit, we schedule the execution instead of parking an executor thread
+        long delayNanos = delayNanos(mapperSource);
+        if (delayNanos > 0) {
+            return supplyAsync(mapperSource, executor != null ? delayedExecutor(delayNanos, NANOSECONDS, executor) : delayedExecutor(delayNanos, NANOSECONDS));
+        }
         return executor != null ? supplyAsync(mapperSource, executor) : supplyAsync(mapperSource);
     }
 
+    private static <U> CompletableFuture<U> withDeadline(CompletableFuture<U> future, Deadline deadline, U fallbackValue) {
+        return deadline.isBounded() ? future.completeOnTimeout(fallbackValue, deadline.remainingNanos(), NANOSECONDS) : future;
+    }
+
     public static <T, ID, R> AssemblerAdapter<T, ID, R, Publisher<R>> publisherAdapter() {
         return publisherAdapter(null);
     }
@@ -81,13 +122,37 @@ public final class PublisherBuilderAdapter<T, ID, R> implements AssemblerAdapter
     }
 
     public static <T, ID, R> AssemblerAdapter<T, ID, R, Publisher<R>> publisherAdapter(Executor executor) {
-        return publisherAdapter(false, null);
+        return publisherAdapter(false, executor);
     }
 
     public static <T, ID, R> AssemblerAdapter<T, ID, R, Publisher<R>> publisherAdapter(boolean lazy, Executor executor) {
         PublisherBuilderAdapter<T, ID, R> adapter = publisherBuilderAdapter(lazy, executor);
-        return (topLevelEntitiesProvider, mapperSourceSuppliers, aggregateStreamBuilder) ->
-                adapter.convertMapperSources(topLevelEntitiesProvider, mapperSourceSuppliers, aggregateStreamBuilder).buildRs();
+        return new AssemblerAdapter<>() {
+            @Override
+            public Publisher<R> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                                     Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourceSuppliers,
+                                                     BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder) {
+                return adapter.convertMapperSources(topLevelEntitiesProvider, mapperSourceSuppliers, aggregateStreamBuilder).buildRs();
+            }
+
+            @Override
+            public Publisher<R> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                                     Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourceSuppliers,
+                                                     BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder,
+                                                     MapperContext mapperContext) {
+                return adapter.convertMapperSources(topLevelEntitiesProvider, mapperSourceSuppliers, aggregateStreamBuilder, mapperContext).buildRs();
+            }
+
+            @Override
+            public boolean isNonBlocking() {
+                return adapter.isNonBlocking();
+            }
+
+            @Override
+            public Publisher<R> doFinally(Publisher<R> result, Runnable onTerminate) {
+                return adapter.doFinally(fromPublisher(result), onTerminate).buildRs();
+            }
+        };
     }
 
     public static <T, ID, R> PublisherBuilderAdapter<T, ID, R> publisherBuilderAdapter() {
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.assembler.microprofile;
+
+import io.github.pellse.util.cache.Invalidatable;
+import org.reactivestreams.Publisher;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+import static org.eclipse.microprofile.reactive.streams.operators.ReactiveStreams.fromPublisher;
+
+/**
+ * Keeps a cached mapper in sync with a {@link Publisher} of change events, e.g. the events of a CQRS write model,
+ * each event invalidating or refreshing the cached result of the ID it refers to as soon as it is received.
+ * <p>
+ * An error of {@code changeEvents} or {@code idExtractor} terminates the stream, the cached results are then
+ * no longer kept in sync, the returned {@link CompletionStage} completes exceptionally with that error
+ * so that it can be monitored, e.g. to log it or to restart the stream.
+ */
+public interface PublisherInvalidation {
+
+    /**
+     * @param changeEvents  The change events, e.g. a {@code Flux}, a {@code Flowable} or a Kafka consumer {@link Publisher}
+     * @param idExtractor   The ID of the entity changed by an event
+     * @param invalidatable The cached mapper, e.g. {@code cached(mapper, lruCache(10_000))}
+     * @return Completed when {@code changeEvents} completes, completed exceptionally when the stream fails
+     */
+    static <E, ID> CompletionStage<Void> invalidateOn(Publisher<E> changeEvents, Function<? super E, ? extends ID> idExtractor, Invalidatable<ID> invalidatable) {
+        requireNonNull(idExtractor, "idExtractor cannot be null");
+        requireNonNull(invalidatable, "invalidatable cannot be null");
+        return fromPublisher(changeEvents).<ID>map(idExtractor).forEach(invalidatable::invalidate).run();
+    }
+
+    /**
+     * The results are reloaded on the thread emitting the events, a failed reload leaves the ID
+     * invalidated without cancelling the subscription, see {@link Invalidatable#tryRefresh(Object)}
+     */
+    static <E, ID> CompletionStage<Void> refreshOn(Publisher<E> changeEvents, Function<? super E, ? extends ID> idExtractor, Invalidatable<ID> invalidatable) {
+        requireNonNull(idExtractor, "idExtractor cannot be null");
+        requireNonNull(invalidatable, "invalidatable cannot be null");
+        return fromPublisher(changeEvents).<ID>map(idExtractor).forEach(invalidatable::tryRefresh).run();
+    }
+}
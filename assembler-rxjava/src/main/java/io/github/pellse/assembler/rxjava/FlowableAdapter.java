@@ -17,6 +17,9 @@
 package io.github.pellse.assembler.rxjava;
 
 import io.github.pellse.assembler.AssemblerAdapter;
+import io.github.pellse.util.concurrent.ContextualExecutor;
+import io.github.pellse.util.query.Deadline;
+import io.github.pellse.util.query.MapperContext;
 import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Scheduler;
 
@@ -28,48 +31,97 @@ import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+import static io.github.pellse.util.concurrent.ContextualExecutor.executorFor;
+import static io.github.pellse.util.concurrent.DelayedSupplier.delayNanos;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static io.reactivex.rxjava3.core.Flowable.defer;
 import static io.reactivex.rxjava3.core.Flowable.fromCallable;
 import static io.reactivex.rxjava3.core.Flowable.fromIterable;
+import static io.reactivex.rxjava3.core.Flowable.just;
 import static io.reactivex.rxjava3.schedulers.Schedulers.computation;
 import static io.reactivex.rxjava3.schedulers.Schedulers.from;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.stream.Collectors.toList;
 
 public final class FlowableAdapter<T, ID, R> implements AssemblerAdapter<T, ID, R, Flowable<R>> {
 
-    private final Scheduler scheduler;
+    private final Function<MapperContext, Scheduler> schedulerProvider;
 
-    private FlowableAdapter(Scheduler scheduler) {
-        this.scheduler = requireNonNull(scheduler);
+    private FlowableAdapter(Function<MapperContext, Scheduler> schedulerProvider) {
+        this.schedulerProvider = requireNonNull(schedulerProvider);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public Flowable<R> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
                                             Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
                                             BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder) {
 
-        return toFlowable(topLevelEntitiesProvider)
-                .flatMap(entities -> Flowable.zip(mapperSourcesBuilder.apply(entities).map(this::toFlowable).collect(toList()),
+        return convertMapperSources(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder, mapperContext());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Flowable<R> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                            Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
+                                            BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder,
+                                            MapperContext mapperContext) {
+
+        Deadline deadline = mapperContext.deadline();
+        Scheduler scheduler = schedulerProvider.apply(mapperContext);
+
+        return withDeadline(toFlowable(topLevelEntitiesProvider, scheduler), deadline, emptyList())
+                .flatMap(entities -> Flowable.zip(mapperSourcesBuilder.apply(entities)
+                                .map(mapperSource -> withDeadline(toFlowable(mapperSource, scheduler), deadline, emptyMap()))
+                                .collect(toList()),
                         mapperResults -> aggregateStreamBuilder.apply(entities, Stream.of(mapperResults)
                                 .map(mapResult -> (Map<ID, ?>) mapResult)
                                 .collect(toList())))
                         .flatMap(stream -> fromIterable(stream::iterator)));
     }
 
-    private <U> Flowable<U> toFlowable(Supplier<U> mapperSource) {
-        return fromCallable(mapperSource::get).subscribeOn(scheduler);
+    @Override
+    public boolean isNonBlocking() {
+        return true;
+    }
+
+    @Override
+    public Flowable<R> doFinally(Flowable<R> result, Runnable onTerminate) {
+        return result.doFinally(onTerminate::run);
+    }
+
+    private static <U> Flowable<U> toFlowable(Supplier<U> mapperSource, Scheduler scheduler) {
+        // e.g. waiting for a rate limiter permit, we delay the subscription instead of parking a scheduler thread,
+        // the delay is only read on subscription as reading it reserves the permit
+        return defer(() -> {
+            long delayNanos = delayNanos(mapperSource);
+            Flowable<U> flowable = fromCallable(mapperSource::get).subscribeOn(scheduler);
+            return delayNanos > 0 ? flowable.delaySubscription(delayNanos, NANOSECONDS) : flowable;
+        });
+    }
+
+    private static <U> Flowable<U> withDeadline(Flowable<U> flowable, Deadline deadline, U fallbackValue) {
+        // The remaining time is only evaluated on subscription, not when the pipeline is built
+        return deadline.isBounded() ? defer(() -> flowable.timeout(deadline.remainingNanos(), NANOSECONDS, just(fallbackValue))) : flowable;
     }
 
     public static <T, ID, R> FlowableAdapter<T, ID, R> flowableAdapter() {
         return flowableAdapter(computation());
     }
 
+    /**
+     * A {@link ContextualExecutor} (e.g. a {@code FairShareExecutor}) is resolved for the {@link MapperContext} of each assembly
+     */
     public static <T, ID, R> FlowableAdapter<T, ID, R> flowableAdapter(Executor executor) {
-        return flowableAdapter(from(executor));
+        return executor instanceof ContextualExecutor
+                ? new FlowableAdapter<>(mapperContext -> from(executorFor(executor, mapperContext)))
+                : flowableAdapter(from(executor));
     }
 
     public static <T, ID, R> FlowableAdapter<T, ID, R> flowableAdapter(Scheduler scheduler) {
-        return new FlowableAdapter<>(scheduler);
+        requireNonNull(scheduler);
+        return new FlowableAdapter<>(mapperContext -> scheduler);
     }
 }
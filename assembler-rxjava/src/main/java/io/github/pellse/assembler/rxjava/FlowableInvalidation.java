@@ -0,0 +1,84 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.assembler.rxjava;
+
+import io.github.pellse.util.cache.Invalidatable;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.plugins.RxJavaPlugins;
+
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps a cached mapper in sync with a {@link Flowable} of change events, e.g. the events of a CQRS write model,
+ * each event invalidating or refreshing the cached result of the ID it refers to as soon as it is received.
+ * <p>
+ * An error of {@code changeEvents} or {@code idExtractor} terminates the subscription, the cached results are then
+ * no longer kept in sync, so that error is passed to an {@code errorConsumer}, by default the
+ * {@link RxJavaPlugins#onError(Throwable)} hook of RxJava.
+ */
+public interface FlowableInvalidation {
+
+    /**
+     * @param changeEvents  The change events, usually a hot {@link Flowable}
+     * @param idExtractor   The ID of the entity changed by an event
+     * @param invalidatable The cached mapper, e.g. {@code cached(mapper, lruCache(10_000))}
+     * @return The subscription to {@code changeEvents}
+     */
+    static <E, ID> Disposable invalidateOn(Flowable<E> changeEvents, Function<? super E, ? extends ID> idExtractor, Invalidatable<ID> invalidatable) {
+        return invalidateOn(changeEvents, idExtractor, invalidatable, RxJavaPlugins::onError);
+    }
+
+    /**
+     * @param errorConsumer Receives the error terminating the subscription, e.g. to log it or to resubscribe
+     * @see #invalidateOn(Flowable, Function, Invalidatable)
+     */
+    static <E, ID> Disposable invalidateOn(Flowable<E> changeEvents,
+                                           Function<? super E, ? extends ID> idExtractor,
+                                           Invalidatable<ID> invalidatable,
+                                           Consumer<? super Throwable> errorConsumer) {
+        requireNonNull(idExtractor, "idExtractor cannot be null");
+        requireNonNull(invalidatable, "invalidatable cannot be null");
+        requireNonNull(errorConsumer, "errorConsumer cannot be null");
+        return changeEvents.<ID>map(idExtractor::apply).subscribe(invalidatable::invalidate, errorConsumer::accept);
+    }
+
+    /**
+     * The results are reloaded on the thread emitting the events, a failed reload leaves the ID
+     * invalidated without cancelling the subscription, see {@link Invalidatable#tryRefresh(Object)}
+     */
+    static <E, ID> Disposable refreshOn(Flowable<E> changeEvents, Function<? super E, ? extends ID> idExtractor, Invalidatable<ID> invalidatable) {
+        return refreshOn(changeEvents, idExtractor, invalidatable, RxJavaPlugins::onError);
+    }
+
+    /**
+     * @param errorConsumer Receives the error terminating the subscription, e.g. to log it or to resubscribe
+     * @see #refreshOn(Flowable, Function, Invalidatable)
+     */
+    static <E, ID> Disposable refreshOn(Flowable<E> changeEvents,
+                                        Function<? super E, ? extends ID> idExtractor,
+                                        Invalidatable<ID> invalidatable,
+                                        Consumer<? super Throwable> errorConsumer) {
+        requireNonNull(idExtractor, "idExtractor cannot be null");
+        requireNonNull(invalidatable, "invalidatable cannot be null");
+        requireNonNull(errorConsumer, "errorConsumer cannot be null");
+        return changeEvents.<ID>map(idExtractor::apply).subscribe(invalidatable::tryRefresh, errorConsumer::accept);
+    }
+}
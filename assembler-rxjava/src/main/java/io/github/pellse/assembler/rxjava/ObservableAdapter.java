@@ -17,6 +17,9 @@
 package io.github.pellse.assembler.rxjava;
 
 import io.github.pellse.assembler.AssemblerAdapter;
+import io.github.pellse.util.concurrent.ContextualExecutor;
+import io.github.pellse.util.query.Deadline;
+import io.github.pellse.util.query.MapperContext;
 import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Scheduler;
 
@@ -28,48 +31,97 @@ import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
+import static io.github.pellse.util.concurrent.ContextualExecutor.executorFor;
+import static io.github.pellse.util.concurrent.DelayedSupplier.delayNanos;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static io.reactivex.rxjava3.core.Observable.defer;
 import static io.reactivex.rxjava3.core.Observable.fromCallable;
 import static io.reactivex.rxjava3.core.Observable.fromIterable;
+import static io.reactivex.rxjava3.core.Observable.just;
 import static io.reactivex.rxjava3.schedulers.Schedulers.computation;
 import static io.reactivex.rxjava3.schedulers.Schedulers.from;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.stream.Collectors.toList;
 
 public final class ObservableAdapter<T, ID, R> implements AssemblerAdapter<T, ID, R, Observable<R>> {
 
-    private final Scheduler scheduler;
+    private final Function<MapperContext, Scheduler> schedulerProvider;
 
-    private ObservableAdapter(Scheduler scheduler) {
-        this.scheduler = requireNonNull(scheduler);
+    private ObservableAdapter(Function<MapperContext, Scheduler> schedulerProvider) {
+        this.schedulerProvider = requireNonNull(schedulerProvider);
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public Observable<R> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
                                               Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
                                               BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder) {
 
-        return toObservable(topLevelEntitiesProvider)
-                .flatMap(entities -> Observable.zip(mapperSourcesBuilder.apply(entities).map(this::toObservable).collect(toList()),
+        return convertMapperSources(topLevelEntitiesProvider, mapperSourcesBuilder, aggregateStreamBuilder, mapperContext());
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public Observable<R> convertMapperSources(Supplier<Iterable<T>> topLevelEntitiesProvider,
+                                              Function<Iterable<T>, Stream<Supplier<Map<ID, ?>>>> mapperSourcesBuilder,
+                                              BiFunction<Iterable<T>, List<Map<ID, ?>>, Stream<R>> aggregateStreamBuilder,
+                                              MapperContext mapperContext) {
+
+        Deadline deadline = mapperContext.deadline();
+        Scheduler scheduler = schedulerProvider.apply(mapperContext);
+
+        return withDeadline(toObservable(topLevelEntitiesProvider, scheduler), deadline, emptyList())
+                .flatMap(entities -> Observable.zip(mapperSourcesBuilder.apply(entities)
+                                .map(mapperSource -> withDeadline(toObservable(mapperSource, scheduler), deadline, emptyMap()))
+                                .collect(toList()),
                         mapperResults -> aggregateStreamBuilder.apply(entities, Stream.of(mapperResults)
                                 .map(mapResult -> (Map<ID, ?>) mapResult)
                                 .collect(toList())))
                         .flatMap(stream -> fromIterable(stream::iterator)));
     }
 
-    private <U> Observable<U> toObservable(Supplier<U> mapperSource) {
-        return fromCallable(mapperSource::get).subscribeOn(scheduler);
+    @Override
+    public boolean isNonBlocking() {
+        return true;
+    }
+
+    @Override
+    public Observable<R> doFinally(Observable<R> result, Runnable onTerminate) {
+        return result.doFinally(onTerminate::run);
+    }
+
+    private static <U> Observable<U> toObservable(Supplier<U> mapperSource, Scheduler scheduler) {
+        // e.g. waiting for a rate limiter permit, we delay the subscription instead of parking a scheduler thread,
+        // the delay is only read on subscription as reading it reserves the permit
+        return defer(() -> {
+            long delayNanos = delayNanos(mapperSource);
+            Observable<U> observable = fromCallable(mapperSource::get).subscribeOn(scheduler);
+            return delayNanos > 0 ? observable.delaySubscription(delayNanos, NANOSECONDS) : observable;
+        });
+    }
+
+    private static <U> Observable<U> withDeadline(Observable<U> observable, Deadline deadline, U fallbackValue) {
+        // The remaining time is only evaluated on subscription, not when the pipeline is built
+        return deadline.isBounded() ? defer(() -> observable.timeout(deadline.remainingNanos(), NANOSECONDS, just(fallbackValue))) : observable;
     }
 
     public static <T, ID, R> ObservableAdapter<T, ID, R> observableAdapter() {
         return observableAdapter(computation());
     }
 
+    /**
+     * A {@link ContextualExecutor} (e.g. a {@code FairShareExecutor}) is resolved for the {@link MapperContext} of each assembly
+     */
     public static <T, ID, R> ObservableAdapter<T, ID, R> observableAdapter(Executor executor) {
-        return observableAdapter(from(executor));
+        return executor instanceof ContextualExecutor
+                ? new ObservableAdapter<>(mapperContext -> from(executorFor(executor, mapperContext)))
+                : observableAdapter(from(executor));
     }
 
     public static <T, ID, R> ObservableAdapter<T, ID, R> observableAdapter(Scheduler scheduler) {
-        return new ObservableAdapter<>(scheduler);
+        requireNonNull(scheduler);
+        return new ObservableAdapter<>(mapperContext -> scheduler);
     }
 }
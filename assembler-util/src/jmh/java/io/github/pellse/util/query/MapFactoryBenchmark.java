@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.query;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static io.github.pellse.util.query.MapFactory.defaultMapFactory;
+import static io.github.pellse.util.query.MapFactory.openAddressingMapFactory;
+import static java.util.Collections.shuffle;
+
+/**
+ * Compares the {@link MapFactory} implementations on the build once, probe many pattern of the assembler join.
+ * <p>
+ * With the {@code gc} profiler, {@code gc.alloc.rate.norm} of {@link #build(Blackhole)} approximates
+ * the retained size of a mapper result map of {@code size} entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MapFactoryBenchmark {
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    @Param({"hashMap", "openAddressing"})
+    private String mapFactoryType;
+
+    private MapFactory<Long, Object> mapFactory;
+    private List<Long> ids;
+    private Object value;
+    private Map<Long, Object> map;
+
+    @Setup
+    public void setUp() {
+        mapFactory = mapFactoryType.equals("hashMap") ? defaultMapFactory() : openAddressingMapFactory();
+
+        // IDs are already boxed when returned by query functions, so boxing is kept out of the measurements
+        ids = new ArrayList<>(size);
+        for (long id = 0; id < size; id++) {
+            ids.add(id * 31);
+        }
+        shuffle(ids, new Random(42));
+
+        value = new Object();
+        map = fill(mapFactory.apply(size));
+    }
+
+    @Benchmark
+    public void build(Blackhole blackhole) {
+        blackhole.consume(fill(mapFactory.apply(size)));
+    }
+
+    @Benchmark
+    public void probe(Blackhole blackhole) {
+        for (Long id : ids) {
+            blackhole.consume(map.get(id));
+        }
+    }
+
+    @Benchmark
+    public void buildAndProbe(Blackhole blackhole) {
+        Map<Long, Object> m = fill(mapFactory.apply(size));
+        for (Long id : ids) {
+            blackhole.consume(m.get(id));
+        }
+    }
+
+    private Map<Long, Object> fill(Map<Long, Object> m) {
+        for (Long id : ids) {
+            m.put(id, value);
+        }
+        return m;
+    }
+}
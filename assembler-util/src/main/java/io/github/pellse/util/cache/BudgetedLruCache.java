@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import io.github.pellse.util.concurrent.MemoryBudget;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * On-heap LRU cache bounded by a shared {@link MemoryBudget} instead of a number of entries: each result acquires its
+ * estimated weight from the budget, and the least recently used results are evicted when the budget runs short,
+ * whether for this cache, another cache or an in-flight assembly. A result is not cached when its weight cannot
+ * be acquired, i.e. when the budget is held by in-flight assemblies, the previous result of its ID is then removed
+ * so that it is no longer served in place of the newer result.
+ * <p>
+ * The budget is never invoked while holding the lock of this cache, so that caches sharing a budget can evict from
+ * each other without deadlocking.
+ */
+final class BudgetedLruCache<ID, R> implements Cache<ID, R>, MemoryBudget.Evictable {
+
+    private final MemoryBudget budget;
+    private final Weigher<? super R> weigher;
+
+    private final Map<ID, Weighted<R>> results = new LinkedHashMap<>(16, 0.75f, true);
+
+    BudgetedLruCache(MemoryBudget budget, Weigher<? super R> weigher) {
+        this.budget = budget;
+        this.weigher = weigher;
+    }
+
+    @Override
+    public synchronized Map<ID, R> getAll(Iterable<? extends ID> ids) {
+        Map<ID, R> cachedResults = new HashMap<>();
+        for (ID id : ids) {
+            Weighted<R> weighted = results.get(id);
+            if (weighted != null) {
+                cachedResults.put(id, weighted.value);
+            }
+        }
+        return cachedResults;
+    }
+
+    @Override
+    public void putAll(Map<? extends ID, ? extends R> results) {
+        results.forEach((id, result) -> {
+            long weight = result != null ? weigher.weigh(result) : 0;
+            boolean admitted = budget.tryAcquire(weight);
+
+            Weighted<R> replaced;
+            synchronized (this) {
+                replaced = admitted ? this.results.put(id, new Weighted<>(result, weight)) : this.results.remove(id);
+            }
+            if (replaced != null) {
+                budget.release(replaced.weight);
+            }
+        });
+    }
+
+    @Override
+    public void removeAll(Iterable<? extends ID> ids) {
+        long removedWeight = 0;
+        synchronized (this) {
+            for (ID id : ids) {
+                Weighted<R> removed = results.remove(id);
+                if (removed != null) {
+                    removedWeight += removed.weight;
+                }
+            }
+        }
+        budget.release(removedWeight);
+    }
+
+    @Override
+    public void removeIf(Predicate<? super ID> predicate) {
+        long removedWeight = 0;
+        synchronized (this) {
+            for (Iterator<Map.Entry<ID, Weighted<R>>> iterator = results.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<ID, Weighted<R>> entry = iterator.next();
+                if (predicate.test(entry.getKey())) {
+                    removedWeight += entry.getValue().weight;
+                    iterator.remove();
+                }
+            }
+        }
+        budget.release(removedWeight);
+    }
+
+    @Override
+    public long evict(long bytes) {
+        long evictedWeight = 0;
+        synchronized (this) {
+            for (Iterator<Weighted<R>> iterator = results.values().iterator(); iterator.hasNext() && evictedWeight < bytes; ) {
+                evictedWeight += iterator.next().weight;
+                iterator.remove();
+            }
+        }
+        budget.release(evictedWeight);
+        return evictedWeight;
+    }
+
+    private static final class Weighted<R> {
+        private final R value;
+        private final long weight;
+
+        private Weighted(R value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import io.github.pellse.util.concurrent.MemoryBudget;
+
+import java.util.Map;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Per ID store of mapper results, used by {@code MapperUtils.cached(Mapper, Cache)} so that assemblies
+ * sharing some of their IDs reuse the results already cached for those IDs. A {@code null} result
+ * (e.g. the default result of an ID with no sub entity) is cached like any other result.
+ * <p>
+ * Implementations must be thread safe.
+ *
+ * @param <ID> Type of the ids
+ * @param <R>  Type of the results
+ */
+public interface Cache<ID, R> {
+
+    /**
+     * @return A new mutable map of the cached results of the IDs of {@code ids} present in this cache,
+     * absent IDs are not in the returned map
+     */
+    Map<ID, R> getAll(Iterable<? extends ID> ids);
+
+    void putAll(Map<? extends ID, ? extends R> results);
+
+    void removeAll(Iterable<? extends ID> ids);
+
+    void removeIf(Predicate<? super ID> predicate);
+
+    /**
+     * @param maximumSize The maximum number of results, the least recently used results being evicted first
+     * @return An on-heap cache, e.g. the small first level of a {@link #tieredCache(Cache, Cache)}
+     */
+    static <ID, R> Cache<ID, R> lruCache(int maximumSize) {
+        return new LruCache<>(maximumSize);
+    }
+
+    /**
+     * @param budget  Shared by all the caches and assemblies of the application, the least recently used results are evicted
+     *                when it runs short, see {@link MemoryBudget}
+     * @param weigher Estimates the number of bytes retained by a result
+     * @return An on-heap cache bounded by {@code budget}, registered to {@code budget} for its lifetime
+     */
+    static <ID, R> Cache<ID, R> lruCache(MemoryBudget budget, Weigher<? super R> weigher) {
+        BudgetedLruCache<ID, R> cache = new BudgetedLruCache<>(requireNonNull(budget, "budget cannot be null"),
+                requireNonNull(weigher, "weigher cannot be null"));
+        budget.register(cache);
+        return cache;
+    }
+
+    /**
+     * @return A {@link #compressedCache(int, Serializer, Codec, int)} compressing the results with {@link Codec#deflateCodec()}
+     * and keeping decoded the results accessed at least 4 times
+     */
+    static <ID, R> Cache<ID, R> compressedCache(int maximumSize, Serializer<R> serializer) {
+        return compressedCache(maximumSize, serializer, Codec.deflateCodec(), 4);
+    }
+
+    /**
+     * @param maximumSize            The maximum number of results, the least recently used results being evicted first
+     * @param serializer             Converts the results to bytes before they are encoded
+     * @param codec                  Encodes the serialized results, e.g. {@link Codec#deflateCodec(int)}
+     * @param decodedAccessThreshold The number of recent accesses from which a result is also kept decoded
+     * @return An on-heap cache storing the results encoded, e.g. to fit more large and compressible one-to-many results
+     * in the same memory, results being decoded on hit
+     */
+    static <ID, R> Cache<ID, R> compressedCache(int maximumSize, Serializer<R> serializer, Codec codec, int decodedAccessThreshold) {
+        return new CompressedCache<>(maximumSize, requireNonNull(serializer, "serializer cannot be null"),
+                requireNonNull(codec, "codec cannot be null"), decodedAccessThreshold);
+    }
+
+    /**
+     * @param l1 The first level, e.g. a small {@link #lruCache(int)} keeping the hot results on-heap
+     * @param l2 The second level, e.g. a large {@link OffHeapCache}
+     * @return A cache looking up {@code l2} for the IDs not in {@code l1} and promoting the results found in {@code l2}
+     * to {@code l1}, new results are written to both levels
+     */
+    static <ID, R> Cache<ID, R> tieredCache(Cache<ID, R> l1, Cache<ID, R> l2) {
+        return new TieredCache<>(requireNonNull(l1, "l1 cannot be null"), requireNonNull(l2, "l2 cannot be null"));
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import io.github.pellse.util.function.checked.UncheckedException;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes serialized results before they are cached, e.g. to compress them, see {@link Cache#compressedCache(int, Serializer, Codec, int)}
+ * and {@link Serializer#compressedSerializer(Serializer, Codec)}
+ */
+public interface Codec {
+
+    byte[] encode(byte[] bytes);
+
+    /**
+     * @param buffer The encoded bytes from its position to its limit
+     */
+    byte[] decode(ByteBuffer buffer);
+
+    static Codec deflateCodec() {
+        return deflateCodec(Deflater.BEST_SPEED);
+    }
+
+    /**
+     * @param level The compression level of the JDK built-in {@link Deflater}, from {@link Deflater#BEST_SPEED}
+     *              to {@link Deflater#BEST_COMPRESSION}
+     * @return A codec compressing with the zlib format, prefixed with the length of the uncompressed bytes, each thread
+     * reusing its own {@link Deflater} and {@link Inflater}
+     */
+    static Codec deflateCodec(int level) {
+        if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("level must be between " + Deflater.BEST_SPEED + " and " + Deflater.BEST_COMPRESSION + ", was " + level);
+        }
+
+        ThreadLocal<Deflater> deflaters = ThreadLocal.withInitial(() -> new Deflater(level));
+        ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+
+        return new Codec() {
+            @Override
+            public byte[] encode(byte[] bytes) {
+                Deflater deflater = deflaters.get();
+                deflater.reset();
+                deflater.setInput(bytes);
+                deflater.finish();
+
+                byte[] encoded = new byte[Integer.BYTES + Math.max(bytes.length / 2, 64)];
+                ByteBuffer.wrap(encoded).putInt(bytes.length);
+
+                int length = Integer.BYTES;
+                while (!deflater.finished()) {
+                    if (length == encoded.length) {
+                        encoded = Arrays.copyOf(encoded, encoded.length << 1);
+                    }
+                    length += deflater.deflate(encoded, length, encoded.length - length);
+                }
+                return Arrays.copyOf(encoded, length);
+            }
+
+            @Override
+            public byte[] decode(ByteBuffer buffer) {
+                ByteBuffer input = buffer.duplicate();
+                byte[] decoded = new byte[input.getInt()];
+
+                byte[] array;
+                int offset;
+                if (input.hasArray()) {
+                    array = input.array();
+                    offset = input.arrayOffset() + input.position();
+                } else {
+                    array = new byte[input.remaining()];
+                    input.duplicate().get(array);
+                    offset = 0;
+                }
+
+                Inflater inflater = inflaters.get();
+                inflater.reset();
+                inflater.setInput(array, offset, input.remaining());
+
+                try {
+                    int length = 0;
+                    while (length < decoded.length) {
+                        int inflated = inflater.inflate(decoded, length, decoded.length - length);
+                        if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                            throw new UncheckedException("Truncated deflate data, " + length + " of " + decoded.length + " bytes decoded");
+                        }
+                        length += inflated;
+                    }
+                } catch (DataFormatException e) {
+                    throw new UncheckedException(e);
+                }
+                return decoded;
+            }
+        };
+    }
+}
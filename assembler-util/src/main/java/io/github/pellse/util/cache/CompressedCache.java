@@ -0,0 +1,147 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Bounded on-heap {@link Cache} evicting the least recently used results, each result being stored serialized and
+ * encoded by a {@link Codec}, e.g. compressed, and decoded lazily on hit. Results accessed at least
+ * {@code decodedAccessThreshold} times are also kept decoded, access counts being halved every
+ * {@code 10 * maximumSize} accesses so that results which are no longer hot go back to their encoded form only.
+ * <p>
+ * Serialization and encoding happen outside of the lock, accesses to the index are serialized.
+ */
+final class CompressedCache<ID, R> implements Cache<ID, R> {
+
+    private static final int DECAY_PERIOD_FACTOR = 10;
+
+    private final Map<ID, EncodedResult<R>> entries;
+    private final Serializer<R> serializer;
+    private final Codec codec;
+    private final int decodedAccessThreshold;
+    private final long decayPeriod;
+
+    private long accessCount;
+
+    CompressedCache(int maximumSize, Serializer<R> serializer, Codec codec, int decodedAccessThreshold) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be greater than 0, was " + maximumSize);
+        }
+        if (decodedAccessThreshold <= 0) {
+            throw new IllegalArgumentException("decodedAccessThreshold must be greater than 0, was " + decodedAccessThreshold);
+        }
+
+        this.serializer = serializer;
+        this.codec = codec;
+        this.decodedAccessThreshold = decodedAccessThreshold;
+        this.decayPeriod = (long) maximumSize * DECAY_PERIOD_FACTOR;
+
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ID, EncodedResult<R>> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    @Override
+    public Map<ID, R> getAll(Iterable<? extends ID> ids) {
+        Map<ID, EncodedResult<R>> hits = new HashMap<>();
+        synchronized (this) {
+            for (ID id : ids) {
+                EncodedResult<R> entry = entries.get(id);
+                if (entry != null) {
+                    entry.frequency++;
+                    hits.put(id, entry);
+                    if (++accessCount % decayPeriod == 0) {
+                        decay();
+                    }
+                }
+            }
+        }
+
+        Map<ID, R> cachedResults = new HashMap<>();
+        for (Map.Entry<ID, EncodedResult<R>> hit : hits.entrySet()) {
+            EncodedResult<R> entry = hit.getValue();
+            R result = entry.decoded;
+            if (result == null && entry.encoded != null) {
+                result = serializer.deserialize(ByteBuffer.wrap(codec.decode(ByteBuffer.wrap(entry.encoded))));
+                if (entry.frequency >= decodedAccessThreshold) {
+                    entry.decoded = result;
+                }
+            }
+            cachedResults.put(hit.getKey(), result);
+        }
+        return cachedResults;
+    }
+
+    @Override
+    public void putAll(Map<? extends ID, ? extends R> results) {
+        Map<ID, EncodedResult<R>> newEntries = new HashMap<>();
+        results.forEach((id, result) -> newEntries.put(id, new EncodedResult<>(result != null ? codec.encode(serializer.serialize(result)) : null)));
+
+        synchronized (this) {
+            newEntries.forEach((id, entry) -> {
+                EncodedResult<R> previous = entries.put(id, entry);
+                if (previous != null) {
+                    entry.frequency = previous.frequency;
+                }
+            });
+        }
+    }
+
+    @Override
+    public synchronized void removeAll(Iterable<? extends ID> ids) {
+        for (ID id : ids) {
+            entries.remove(id);
+        }
+    }
+
+    @Override
+    public synchronized void removeIf(Predicate<? super ID> predicate) {
+        entries.keySet().removeIf(predicate);
+    }
+
+    private void decay() {
+        for (EncodedResult<R> entry : entries.values()) {
+            entry.frequency >>>= 1;
+            if (entry.frequency < decodedAccessThreshold) {
+                entry.decoded = null;
+            }
+        }
+    }
+
+    /**
+     * The encoded bytes of a result never change, {@code decoded} is only a copy of them, so that an entry
+     * replaced or decayed while being decoded outside of the lock can never expose a stale result.
+     */
+    private static final class EncodedResult<R> {
+
+        private final byte[] encoded;
+        private volatile R decoded;
+        private volatile int frequency;
+
+        private EncodedResult(byte[] encoded) {
+            this.encoded = encoded;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.cache;
+
+import java.util.function.Predicate;
+
+import static java.util.Collections.singletonList;
+
+/**
+ * Cached mapper whose entries can be invalidated or refreshed as soon as the source of truth changes, e.g. from the
+ * change events of a CQRS write model, instead of only expiring after a time to live.
+ * <p>
+ * An invalidation also applies to the results being loaded when it happens, these results are returned
+ * to the assembly that loaded them but are not cached.
+ *
+ * @param <ID> Type of the ids
+ */
+public interface Invalidatable<ID> {
+
+    void invalidateAll(Iterable<? extends ID> ids);
+
+    void invalidateIf(Predicate<? super ID> predicate);
+
+    /**
+     * Invalidates then reloads the results of {@code ids}, the IDs with no result stay invalidated.
+     * The exceptions of the decorated mapper are propagated after the invalidation.
+     */
+    void refreshAll(Iterable<? extends ID> ids);
+
+    default void invalidate(ID id) {
+        invalidateAll(singletonList(id));
+    }
+
+    default void refresh(ID id) {
+        refreshAll(singletonList(id));
+    }
+
+    /**
+     * @return {@code false} if the results of {@code ids} could not be reloaded, they are then only invalidated,
+     * e.g. to keep consuming a stream of change events after a query failure
+     */
+    default boolean tryRefreshAll(Iterable<? extends ID> ids) {
+        try {
+            refreshAll(ids);
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    default boolean tryRefresh(ID id) {
+        return tryRefreshAll(singletonList(id));
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Bounded on-heap {@link Cache} evicting the least recently used results, accesses are serialized
+ * so it is meant to stay small, e.g. as the first level of a {@link TieredCache}
+ */
+final class LruCache<ID, R> implements Cache<ID, R> {
+
+    private final Map<ID, R> results;
+
+    LruCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("maximumSize must be greater than 0, was " + maximumSize);
+        }
+
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ID, R> eldest) {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    @Override
+    public synchronized Map<ID, R> getAll(Iterable<? extends ID> ids) {
+        Map<ID, R> cachedResults = new HashMap<>();
+        for (ID id : ids) {
+            R result = results.get(id);
+            if (result != null || results.containsKey(id)) {
+                cachedResults.put(id, result);
+            }
+        }
+        return cachedResults;
+    }
+
+    @Override
+    public synchronized void putAll(Map<? extends ID, ? extends R> results) {
+        this.results.putAll(results);
+    }
+
+    @Override
+    public synchronized void removeAll(Iterable<? extends ID> ids) {
+        for (ID id : ids) {
+            results.remove(id);
+        }
+    }
+
+    @Override
+    public synchronized void removeIf(Predicate<? super ID> predicate) {
+        results.keySet().removeIf(predicate);
+    }
+}
@@ -0,0 +1,372 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link Cache} persisted in a memory-mapped file, so that a restarted JVM, or other JVMs of the same host opening
+ * the same file, reuse the results already cached instead of starting with a cold cache.
+ * <p>
+ * The file is an append-only log of {@code (id, result)} records, and of tombstone records for the removed IDs, after a header holding the capacity of the file and
+ * the end of the last committed record. A record is first written after that end, then committed by updating the end
+ * in the header while holding a lock on the header region of the file, which serializes writers across processes.
+ * Each instance keeps an on-heap index from each ID to its latest record, and catches up with the records appended by
+ * other processes before each lookup. Each record has a checksum, when opening the file the log is replayed and truncated
+ * at the first invalid record, e.g. a record partially written to disk before a crash of the host.
+ * <p>
+ * Once the log reaches the capacity of the file new results are no longer persisted and removals are only applied to the
+ * index of this instance, the file can be deleted to start over.
+ * Only one instance per file should be opened in a given JVM.
+ *
+ * @param <ID> Type of the ids
+ * @param <R>  Type of the results
+ */
+public final class MappedFileCache<ID, R> implements Cache<ID, R>, AutoCloseable {
+
+    private static final int MAGIC = 0x41534D43;
+    private static final int VERSION = 2; // Version 1 had no tombstone records
+
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int END_OFFSET = 16;
+    private static final int HEADER_SIZE = 24;
+
+    private static final int RECORD_HEADER_SIZE = 12; // Key length, value length (-1 for null, -2 for a tombstone), checksum
+    private static final int NULL_LENGTH = -1;
+    private static final int TOMBSTONE_LENGTH = -2;
+
+    private final Serializer<ID> idSerializer;
+    private final Serializer<R> serializer;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    private final Map<ID, Integer> index = new HashMap<>(); // Offset of the latest record of each ID
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int scannedEnd = HEADER_SIZE;
+
+    private MappedFileCache(Path file, int capacity, Serializer<ID> idSerializer, Serializer<R> serializer) throws IOException {
+        this.idSerializer = requireNonNull(idSerializer, "idSerializer cannot be null");
+        this.serializer = requireNonNull(serializer, "serializer cannot be null");
+
+        this.channel = FileChannel.open(requireNonNull(file, "file cannot be null"), CREATE, READ, WRITE);
+        try {
+            FileLock headerLock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                MappedByteBuffer header = channel.map(READ_WRITE, 0, HEADER_SIZE);
+                boolean initialized = channel.size() >= HEADER_SIZE && header.getInt(0) == MAGIC;
+
+                if (initialized && header.getInt(4) != VERSION) {
+                    throw new IOException("Unsupported cache file version " + header.getInt(4) + " in " + file);
+                }
+                if (!initialized) {
+                    header.putInt(0, MAGIC).putInt(4, VERSION).putLong(CAPACITY_OFFSET, capacity).putLong(END_OFFSET, HEADER_SIZE);
+                }
+
+                // The capacity of an existing file is kept, whatever the capacity requested by this process
+                this.capacity = (int) header.getLong(CAPACITY_OFFSET);
+                this.buffer = channel.map(READ_WRITE, 0, this.capacity);
+
+                // Recovery, the log is truncated at the first invalid record
+                long end = buffer.getLong(END_OFFSET);
+                scannedEnd = scan(HEADER_SIZE, (int) Math.min(end, this.capacity));
+                if (scannedEnd != end) {
+                    buffer.putLong(END_OFFSET, scannedEnd);
+                }
+            } finally {
+                headerLock.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param file         The cache file, created if it doesn't exist
+     * @param capacity     The maximum size of the file in bytes, at most {@link Integer#MAX_VALUE},
+     *                     ignored if the file already exists
+     * @param idSerializer Converts the IDs to and from bytes, to rebuild the index from the file
+     * @param serializer   Converts the results to and from bytes
+     * @throws UncheckedIOException If the file cannot be opened or is not a cache file
+     */
+    public static <ID, R> MappedFileCache<ID, R> mappedFileCache(Path file,
+                                                                 long capacity,
+                                                                 Serializer<ID> idSerializer,
+                                                                 Serializer<R> serializer) {
+        if (capacity <= HEADER_SIZE || capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity must be greater than " + HEADER_SIZE + " and at most " + Integer.MAX_VALUE + ", was " + capacity);
+        }
+
+        try {
+            return new MappedFileCache<>(file, (int) capacity, idSerializer, serializer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public Map<ID, R> getAll(Iterable<? extends ID> ids) {
+        catchUp();
+
+        Map<ID, R> cachedResults = new HashMap<>();
+
+        lock.readLock().lock();
+        try {
+            for (ID id : ids) {
+                Integer offset = index.get(id);
+                if (offset != null) {
+                    cachedResults.put(id, readValue(offset));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return cachedResults;
+    }
+
+    @Override
+    public void putAll(Map<? extends ID, ? extends R> results) {
+        // Serialized before acquiring the locks, only the append to the log is exclusive
+        List<ID> ids = new ArrayList<>(results.size());
+        List<byte[]> keys = new ArrayList<>(results.size());
+        List<byte[]> values = new ArrayList<>(results.size());
+
+        results.forEach((id, result) -> {
+            ids.add(id);
+            keys.add(idSerializer.serialize(id));
+            values.add(result != null ? serializer.serialize(result) : null);
+        });
+
+        lock.writeLock().lock();
+        try {
+            FileLock headerLock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                int end = scan(scannedEnd, (int) buffer.getLong(END_OFFSET));
+
+                for (int i = 0; i < ids.size(); i++) {
+                    int recordEnd = append(end, keys.get(i), values.get(i));
+                    if (recordEnd < 0) {
+                        break; // Full
+                    }
+                    index.put(ids.get(i), end);
+                    end = recordEnd;
+                }
+
+                buffer.putLong(END_OFFSET, end); // Commit
+                scannedEnd = end;
+            } finally {
+                headerLock.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeAll(Iterable<? extends ID> ids) {
+        remove(index -> {
+            List<ID> removedIds = new ArrayList<>();
+            for (ID id : ids) {
+                if (index.containsKey(id)) {
+                    removedIds.add(id);
+                }
+            }
+            return removedIds;
+        });
+    }
+
+    @Override
+    public void removeIf(Predicate<? super ID> predicate) {
+        remove(index -> {
+            List<ID> removedIds = new ArrayList<>();
+            for (ID id : index.keySet()) {
+                if (predicate.test(id)) {
+                    removedIds.add(id);
+                }
+            }
+            return removedIds;
+        });
+    }
+
+    /**
+     * @return The number of cached results
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Appends a tombstone record for each of the IDs selected from the up to date index, so that the removal
+     * is seen by the other processes and survives a restart
+     */
+    private void remove(Function<Map<ID, Integer>, List<ID>> removedIdsSelector) {
+        lock.writeLock().lock();
+        try {
+            FileLock headerLock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                int end = scan(scannedEnd, (int) buffer.getLong(END_OFFSET));
+                boolean full = false;
+
+                for (ID id : removedIdsSelector.apply(index)) {
+                    index.remove(id);
+                    if (full) {
+                        continue; // Only removed from the index of this instance
+                    }
+
+                    int recordEnd = append(end, idSerializer.serialize(id), null, TOMBSTONE_LENGTH);
+                    if (recordEnd < 0) {
+                        full = true;
+                    } else {
+                        end = recordEnd;
+                    }
+                }
+
+                buffer.putLong(END_OFFSET, end); // Commit
+                scannedEnd = end;
+            } finally {
+                headerLock.release();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Indexes the records committed by other processes since the last scan
+     */
+    private void catchUp() {
+        if ((int) buffer.getLong(END_OFFSET) == scannedEnd) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            scannedEnd = scan(scannedEnd, (int) buffer.getLong(END_OFFSET));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The end of the last valid record between {@code from} and {@code to}
+     */
+    private int scan(int from, int to) {
+        int offset = from;
+        while (offset + RECORD_HEADER_SIZE <= to) {
+            int keyLength = buffer.getInt(offset);
+            int valueLength = buffer.getInt(offset + 4);
+
+            long recordEnd = (long) offset + RECORD_HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+            if (keyLength < 0 || valueLength < TOMBSTONE_LENGTH || recordEnd > to || buffer.getInt(offset + 8) != checksum(offset, keyLength, valueLength)) {
+                break;
+            }
+
+            ID id = idSerializer.deserialize(slice(offset + RECORD_HEADER_SIZE, keyLength));
+            if (valueLength != TOMBSTONE_LENGTH) {
+                index.put(id, offset);
+            } else {
+                index.remove(id);
+            }
+            offset = (int) recordEnd;
+        }
+        return offset;
+    }
+
+    /**
+     * @return The end of the appended record, {@code -1} if it doesn't fit in the file
+     */
+    private int append(int offset, byte[] key, byte[] value) {
+        return append(offset, key, value, value != null ? value.length : NULL_LENGTH);
+    }
+
+    private int append(int offset, byte[] key, byte[] value, int valueLength) {
+        long recordEnd = (long) offset + RECORD_HEADER_SIZE + key.length + (value != null ? value.length : 0);
+        if (recordEnd > capacity) {
+            return -1;
+        }
+
+        ByteBuffer record = buffer.duplicate();
+        record.position(offset + RECORD_HEADER_SIZE);
+        record.put(key);
+        if (value != null) {
+            record.put(value);
+        }
+
+        buffer.putInt(offset, key.length).putInt(offset + 4, valueLength);
+        buffer.putInt(offset + 8, checksum(offset, key.length, valueLength));
+        return (int) recordEnd;
+    }
+
+    private R readValue(int offset) {
+        int keyLength = buffer.getInt(offset);
+        int valueLength = buffer.getInt(offset + 4);
+
+        return valueLength != NULL_LENGTH ? serializer.deserialize(slice(offset + RECORD_HEADER_SIZE + keyLength, valueLength)) : null;
+    }
+
+    private int checksum(int offset, int keyLength, int valueLength) {
+        CRC32 crc = new CRC32();
+        crc.update(slice(offset, 8));
+        crc.update(slice(offset + RECORD_HEADER_SIZE, keyLength + Math.max(valueLength, 0)));
+        return (int) crc.getValue();
+    }
+
+    private ByteBuffer slice(int offset, int length) {
+        ByteBuffer slice = buffer.duplicate();
+        slice.limit(offset + length).position(offset);
+        return slice.slice();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Set of the IDs known to have no result (i.e. for which a mapper returned its default result), remembered
+ * for a time to live usually shorter than the one of the actual results, so those IDs are not queried again
+ * until they expire. Only the IDs are kept, not their default results.
+ * <p>
+ * The IDs are added to generations each covering a quarter of the time to live, a whole generation being
+ * dropped once its time to live is reached, so there is no timestamp per ID and an ID expires at most a quarter
+ * of the time to live earlier than requested. The set of each generation is pluggable, e.g. a
+ * {@link io.github.pellse.util.collection.LongIdSet} takes a few bits to two bytes per {@code Long} ID.
+ *
+ * @param <ID> Type of the ids
+ */
+public final class NegativeCache<ID> {
+
+    private static final int GENERATION_COUNT = 4;
+
+    private final long ttlNanos;
+    private final long generationNanos;
+    private final Supplier<? extends Set<ID>> setFactory;
+
+    private final Deque<Generation<ID>> generations = new ArrayDeque<>(GENERATION_COUNT + 1);
+
+    private NegativeCache(Duration ttl, Supplier<? extends Set<ID>> setFactory) {
+        requireNonNull(ttl, "ttl cannot be null");
+        if (ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("ttl must be greater than 0, was " + ttl);
+        }
+
+        this.ttlNanos = ttl.toNanos();
+        this.generationNanos = Math.max(ttlNanos / GENERATION_COUNT, 1);
+        this.setFactory = requireNonNull(setFactory, "setFactory cannot be null");
+    }
+
+    public static <ID> NegativeCache<ID> negativeCache(Duration ttl) {
+        return negativeCache(ttl, HashSet::new);
+    }
+
+    /**
+     * @param ttl        How long an ID is known to have no result
+     * @param setFactory Creates the set of IDs of each generation, e.g. {@code LongIdSet::longIdSet}
+     */
+    public static <ID> NegativeCache<ID> negativeCache(Duration ttl, Supplier<? extends Set<ID>> setFactory) {
+        return new NegativeCache<>(ttl, setFactory);
+    }
+
+    public synchronized boolean contains(ID id) {
+        expire(System.nanoTime());
+
+        for (Generation<ID> generation : generations) {
+            if (generation.ids.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized void addAll(Iterable<? extends ID> ids) {
+        long now = System.nanoTime();
+        expire(now);
+
+        Generation<ID> current = generations.peekLast();
+        if (current == null || now - current.startNanos >= generationNanos) {
+            current = new Generation<>(now, setFactory.get());
+            generations.addLast(current);
+        }
+
+        for (ID id : ids) {
+            current.ids.add(id);
+        }
+    }
+
+    public synchronized void removeAll(Iterable<? extends ID> ids) {
+        for (Generation<ID> generation : generations) {
+            for (ID id : ids) {
+                generation.ids.remove(id);
+            }
+        }
+    }
+
+    public synchronized void removeIf(Predicate<? super ID> predicate) {
+        for (Generation<ID> generation : generations) {
+            generation.ids.removeIf(predicate);
+        }
+    }
+
+    private void expire(long now) {
+        Generation<ID> oldest;
+        while ((oldest = generations.peekFirst()) != null && now - oldest.startNanos >= ttlNanos) {
+            generations.removeFirst();
+        }
+    }
+
+    private static final class Generation<ID> {
+        private final long startNanos;
+        private final Set<ID> ids;
+
+        private Generation(long startNanos, Set<ID> ids) {
+            this.startNanos = startNanos;
+            this.ids = ids;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link Cache} storing the serialized results in direct {@link ByteBuffer}s outside of the Java heap, so a large
+ * cache doesn't add to the work of the garbage collector, only an index of the IDs stays on-heap. Usually the second
+ * level of a {@link Cache#tieredCache(Cache, Cache)} behind a small {@link Cache#lruCache(int)} keeping the hot results
+ * deserialized.
+ * <p>
+ * The capacity is split in fixed size segments allocated on demand and filled one after the other, a result
+ * being appended to the current segment. Once all segments are allocated the oldest segment is reused when
+ * the current one is full, evicting all the results it contains (in insertion order, like a ring buffer),
+ * the space of a replaced result is reclaimed the same way. A result larger than a segment is not cached.
+ *
+ * @param <ID> Type of the ids
+ * @param <R>  Type of the results
+ */
+public final class OffHeapCache<ID, R> implements Cache<ID, R> {
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final int LENGTH_BYTES = Integer.BYTES;
+    private static final int NULL_LENGTH = -1;
+
+    private final Serializer<R> serializer;
+    private final int segmentSize;
+    private final Segment<ID>[] segments;
+
+    private final Map<ID, Long> index = new HashMap<>(); // Segment number in the upper 32 bits, offset in the lower 32 bits
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private int currentSegment;
+
+    private OffHeapCache(long capacity, int segmentSize, Serializer<R> serializer) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be greater than 0, was " + capacity);
+        }
+        if (segmentSize <= LENGTH_BYTES) {
+            throw new IllegalArgumentException("segmentSize must be greater than " + LENGTH_BYTES + ", was " + segmentSize);
+        }
+
+        this.serializer = requireNonNull(serializer, "serializer cannot be null");
+        this.segmentSize = (int) Math.min(segmentSize, capacity);
+
+        long segmentCount = Math.max(capacity / this.segmentSize, 1);
+        if (segmentCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("capacity / segmentSize must be at most " + Integer.MAX_VALUE + ", was " + segmentCount);
+        }
+
+        this.segments = newSegments((int) segmentCount);
+        this.segments[0] = new Segment<>(this.segmentSize);
+    }
+
+    /**
+     * @param capacity   The maximum number of bytes allocated outside of the heap
+     * @param serializer Converts the results to and from bytes
+     */
+    public static <ID, R> OffHeapCache<ID, R> offHeapCache(long capacity, Serializer<R> serializer) {
+        return offHeapCache(capacity, DEFAULT_SEGMENT_SIZE, serializer);
+    }
+
+    /**
+     * @param capacity    The maximum number of bytes allocated outside of the heap
+     * @param segmentSize The number of bytes allocated and evicted at once, also the maximum size of a serialized result
+     * @param serializer  Converts the results to and from bytes
+     */
+    public static <ID, R> OffHeapCache<ID, R> offHeapCache(long capacity, int segmentSize, Serializer<R> serializer) {
+        return new OffHeapCache<>(capacity, segmentSize, serializer);
+    }
+
+    @Override
+    public Map<ID, R> getAll(Iterable<? extends ID> ids) {
+        Map<ID, R> cachedResults = new HashMap<>();
+
+        lock.readLock().lock();
+        try {
+            for (ID id : ids) {
+                Long location = index.get(id);
+                if (location != null) {
+                    cachedResults.put(id, read(location));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return cachedResults;
+    }
+
+    @Override
+    public void putAll(Map<? extends ID, ? extends R> results) {
+        // Serialized before acquiring the lock, only the copy to the segments is exclusive
+        List<ID> ids = new ArrayList<>(results.size());
+        List<byte[]> values = new ArrayList<>(results.size());
+
+        results.forEach((id, result) -> {
+            ids.add(id);
+            values.add(result != null ? serializer.serialize(result) : null);
+        });
+
+        lock.writeLock().lock();
+        try {
+            for (int i = 0; i < ids.size(); i++) {
+                write(ids.get(i), values.get(i));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Only the index entries are removed, the space of the removed results is reclaimed when their segment is reused
+     */
+    @Override
+    public void removeAll(Iterable<? extends ID> ids) {
+        lock.writeLock().lock();
+        try {
+            for (ID id : ids) {
+                index.remove(id);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void removeIf(Predicate<? super ID> predicate) {
+        lock.writeLock().lock();
+        try {
+            index.keySet().removeIf(predicate);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return The number of cached results
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private R read(long location) {
+        ByteBuffer buffer = segments[(int) (location >>> 32)].buffer;
+        int offset = (int) location;
+
+        int length = buffer.getInt(offset);
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+
+        ByteBuffer value = buffer.duplicate();
+        value.limit(offset + LENGTH_BYTES + length).position(offset + LENGTH_BYTES);
+        return serializer.deserialize(value.slice());
+    }
+
+    private void write(ID id, byte[] value) {
+        int length = LENGTH_BYTES + (value != null ? value.length : 0);
+        if (length > segmentSize) {
+            index.remove(id);
+            return;
+        }
+
+        Segment<ID> segment = segments[currentSegment];
+        if (segment.position + length > segmentSize) {
+            segment = nextSegment();
+        }
+
+        int offset = segment.position;
+        segment.buffer.putInt(offset, value != null ? value.length : NULL_LENGTH);
+        if (value != null) {
+            ByteBuffer target = segment.buffer.duplicate();
+            target.position(offset + LENGTH_BYTES);
+            target.put(value);
+        }
+        segment.position += length;
+        segment.ids.add(id);
+
+        index.put(id, (long) currentSegment << 32 | offset);
+    }
+
+    private Segment<ID> nextSegment() {
+        currentSegment = (currentSegment + 1) % segments.length;
+
+        Segment<ID> segment = segments[currentSegment];
+        if (segment == null) {
+            return segments[currentSegment] = new Segment<>(segmentSize);
+        }
+
+        // Evicts the results of the reused segment, unless they were since replaced in another segment
+        for (ID id : segment.ids) {
+            Long location = index.get(id);
+            if (location != null && (int) (location >>> 32) == currentSegment) {
+                index.remove(id);
+            }
+        }
+        segment.ids.clear();
+        segment.position = 0;
+        return segment;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <ID> Segment<ID>[] newSegments(int length) {
+        return (Segment<ID>[]) new Segment<?>[length];
+    }
+
+    private static final class Segment<ID> {
+        private final ByteBuffer buffer;
+        private final List<ID> ids = new ArrayList<>();
+        private int position;
+
+        private Segment(int size) {
+            this.buffer = ByteBuffer.allocateDirect(size);
+        }
+    }
+}
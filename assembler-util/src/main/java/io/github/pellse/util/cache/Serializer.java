@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import io.github.pellse.util.function.checked.UncheckedException;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Converts the results stored outside of the Java heap, e.g. by an {@link OffHeapCache}, to and from bytes
+ *
+ * @param <T> Type of the results
+ */
+public interface Serializer<T> {
+
+    byte[] serialize(T value);
+
+    /**
+     * @param buffer The bytes of the value from its position to its limit
+     */
+    T deserialize(ByteBuffer buffer);
+
+    static <T> Serializer<T> serializer(Function<? super T, byte[]> serializer, Function<ByteBuffer, ? extends T> deserializer) {
+        requireNonNull(serializer, "serializer cannot be null");
+        requireNonNull(deserializer, "deserializer cannot be null");
+
+        return new Serializer<>() {
+            @Override
+            public byte[] serialize(T value) {
+                return serializer.apply(value);
+            }
+
+            @Override
+            public T deserialize(ByteBuffer buffer) {
+                return deserializer.apply(buffer);
+            }
+        };
+    }
+
+    static Serializer<Long> longSerializer() {
+        return serializer(value -> ByteBuffer.allocate(Long.BYTES).putLong(value).array(), ByteBuffer::getLong);
+    }
+
+    static Serializer<String> stringSerializer() {
+        return serializer(value -> value.getBytes(UTF_8), buffer -> UTF_8.decode(buffer).toString());
+    }
+
+    /**
+     * @return A {@link Serializer} encoding the bytes of {@code serializer} with {@code codec}, e.g. to compress
+     * the results of an {@link OffHeapCache} or a {@link MappedFileCache} with {@link Codec#deflateCodec()}
+     */
+    static <T> Serializer<T> compressedSerializer(Serializer<T> serializer, Codec codec) {
+        requireNonNull(serializer, "serializer cannot be null");
+        requireNonNull(codec, "codec cannot be null");
+
+        return serializer(
+                value -> codec.encode(serializer.serialize(value)),
+                buffer -> serializer.deserialize(ByteBuffer.wrap(codec.decode(buffer))));
+    }
+
+    /**
+     * @return A {@link Serializer} based on Java serialization, the results must be {@link Serializable}
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Serializer<T> javaSerializer() {
+        return serializer(
+                value -> {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                        out.writeObject(value);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    return bytes.toByteArray();
+                },
+                buffer -> {
+                    byte[] bytes = new byte[buffer.remaining()];
+                    buffer.get(bytes);
+                    try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                        return (T) in.readObject();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    } catch (ClassNotFoundException e) {
+                        throw new UncheckedException(e);
+                    }
+                });
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Two level {@link Cache}, see {@link Cache#tieredCache(Cache, Cache)}
+ */
+final class TieredCache<ID, R> implements Cache<ID, R> {
+
+    private final Cache<ID, R> l1;
+    private final Cache<ID, R> l2;
+
+    TieredCache(Cache<ID, R> l1, Cache<ID, R> l2) {
+        this.l1 = l1;
+        this.l2 = l2;
+    }
+
+    @Override
+    public Map<ID, R> getAll(Iterable<? extends ID> ids) {
+        Map<ID, R> cachedResults = l1.getAll(ids);
+
+        List<ID> l1MissingIds = new ArrayList<>();
+        for (ID id : ids) {
+            if (!cachedResults.containsKey(id)) {
+                l1MissingIds.add(id);
+            }
+        }
+        if (l1MissingIds.isEmpty()) {
+            return cachedResults;
+        }
+
+        Map<ID, R> l2Results = l2.getAll(l1MissingIds);
+        if (!l2Results.isEmpty()) {
+            l1.putAll(l2Results);
+            cachedResults.putAll(l2Results);
+        }
+        return cachedResults;
+    }
+
+    @Override
+    public void putAll(Map<? extends ID, ? extends R> results) {
+        l2.putAll(results);
+        l1.putAll(results);
+    }
+
+    // l2 first, so that a concurrent lookup cannot promote a removed result back to l1
+    @Override
+    public void removeAll(Iterable<? extends ID> ids) {
+        l2.removeAll(ids);
+        l1.removeAll(ids);
+    }
+
+    @Override
+    public void removeIf(Predicate<? super ID> predicate) {
+        l2.removeIf(predicate);
+        l1.removeIf(predicate);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import java.util.Objects;
+
+/**
+ * Cached value along with the wall clock time at which it was loaded, used to apply time based expiry policies
+ *
+ * @param <T> Type of the value
+ */
+public final class Timestamped<T> {
+
+    private final T value;
+    private final long timestampMillis;
+
+    private Timestamped(T value, long timestampMillis) {
+        this.value = value;
+        this.timestampMillis = timestampMillis;
+    }
+
+    public static <T> Timestamped<T> timestamped(T value, long timestampMillis) {
+        return new Timestamped<>(value, timestampMillis);
+    }
+
+    public T value() {
+        return value;
+    }
+
+    /**
+     * @return The time at which the value was loaded, in milliseconds since the epoch
+     */
+    public long timestampMillis() {
+        return timestampMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Timestamped)) {
+            return false;
+        }
+        Timestamped<?> that = (Timestamped<?>) o;
+        return timestampMillis == that.timestampMillis && Objects.equals(value, that.value);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hashCode(value) + Long.hashCode(timestampMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "Timestamped[value=" + value + ", timestampMillis=" + timestampMillis + "]";
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+/**
+ * Estimates the number of bytes retained by a value, e.g. a cached result or a top level entity with all the
+ * sub-entities assembled for it, to account for it in a {@code MemoryBudget}. Estimates only need to be consistent
+ * with each other, e.g. {@code orderItems -> 64 + 128L * orderItems.size()}.
+ *
+ * @param <T> Type of the weighed values
+ */
+@FunctionalInterface
+public interface Weigher<T> {
+
+    long weigh(T value);
+
+    static <T> Weigher<T> constantWeigher(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("bytes must be at least 0, was " + bytes);
+        }
+        return value -> bytes;
+    }
+}
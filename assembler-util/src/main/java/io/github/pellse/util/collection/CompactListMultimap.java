@@ -0,0 +1,243 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.collection;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+import static io.github.pellse.util.collection.KeyIndex.keyIndex;
+import static java.util.Collections.emptyList;
+
+/**
+ * Immutable compact representation of a one-to-many {@code Map<K, List<V>>}, in compressed sparse row (CSR) layout:
+ * all the values are stored in a single array, grouped by key, and each key is associated through a {@link KeyIndex}
+ * with the offset of its first value in that array.
+ * <p>
+ * Compared to a {@code HashMap} of {@code ArrayList}, there is no entry, list or per key backing array to allocate
+ * and regrow, the lists returned by {@link #get(Object)} are lightweight immutable views over the shared value array.
+ *
+ * @param <K> Type of the keys
+ * @param <V> Type of the values
+ */
+public final class CompactListMultimap<K, V> extends AbstractMap<K, List<V>> {
+
+    private final KeyIndex<K> keyIndex;
+    private final int[] offsets; // offsets[i] to offsets[i + 1] is the range of values of key i
+    private final Object[] values;
+
+    private Set<Entry<K, List<V>>> entrySet;
+
+    private CompactListMultimap(KeyIndex<K> keyIndex, int[] offsets, Object[] values) {
+        this.keyIndex = keyIndex;
+        this.offsets = offsets;
+        this.values = values;
+    }
+
+    @Override
+    public int size() {
+        return keyIndex.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return keyIndex.indexOf(key) >= 0;
+    }
+
+    @Override
+    public List<V> get(Object key) {
+        int index = keyIndex.indexOf(key);
+        return index >= 0 ? valuesAt(index) : null;
+    }
+
+    @Override
+    public List<V> getOrDefault(Object key, List<V> defaultValue) {
+        int index = keyIndex.indexOf(key);
+        return index >= 0 ? valuesAt(index) : defaultValue;
+    }
+
+    @Override
+    public Set<Entry<K, List<V>>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<K, List<V>>> iterator() {
+                    return new Iterator<>() {
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < keyIndex.size();
+                        }
+
+                        @Override
+                        public Entry<K, List<V>> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int i = index++;
+                            return new SimpleImmutableEntry<>(keyIndex.keyAt(i), valuesAt(i));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keyIndex.size();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private List<V> valuesAt(int index) {
+        int from = offsets[index], to = offsets[index + 1];
+        return from == to ? emptyList() : new ValueRange<>(values, from, to);
+    }
+
+    /**
+     * @param keys         The keys to include in the resulting map even if no value is associated with them
+     *                     (e.g. the IDs passed to a query function), mapped to an empty list
+     * @param keyExtractor Extracts the key of each collected value, values of keys not in {@code keys} are also included
+     * @return A {@link Collector} building a {@link CompactListMultimap}, values are kept in encounter order for each key
+     */
+    public static <K, V> Collector<V, ?, Map<K, List<V>>> toCompactListMultimap(Collection<K> keys, Function<? super V, ? extends K> keyExtractor) {
+        return toCompactListMultimap(keys, keyExtractor, null);
+    }
+
+    /**
+     * @param equivalence The hashing and equivalence strategy of the keys, {@code null} for {@link Object#equals(Object)}
+     * @see #toCompactListMultimap(Collection, Function)
+     */
+    public static <K, V> Collector<V, ?, Map<K, List<V>>> toCompactListMultimap(Collection<K> keys,
+                                                                                Function<? super V, ? extends K> keyExtractor,
+                                                                                Equivalence<? super K> equivalence) {
+        return Collector.of(
+                () -> new Builder<K, V>(keys, keyExtractor, equivalence),
+                Builder::add,
+                (b1, b2) -> {
+                    throw new UnsupportedOperationException("Parallel collection not supported");
+                },
+                Builder::build);
+    }
+
+    /**
+     * @param map         The one-to-many map to copy
+     * @param equivalence The hashing and equivalence strategy of the keys, {@code null} for {@link Object#equals(Object)}
+     * @return An exactly sized {@link CompactListMultimap} copy of {@code map}, values are kept in iteration order for each key
+     */
+    public static <K, V> CompactListMultimap<K, V> compactListMultimap(Map<K, ? extends Collection<? extends V>> map,
+                                                                       Equivalence<? super K> equivalence) {
+        int valueCount = 0;
+        for (Collection<? extends V> values : map.values()) {
+            valueCount += values != null ? values.size() : 0;
+        }
+
+        KeyIndex<K> keyIndex = keyIndex(map.size(), equivalence);
+        int[] offsets = new int[map.size() + 1];
+        Object[] values = new Object[valueCount];
+
+        int offset = 0;
+        for (Entry<K, ? extends Collection<? extends V>> entry : map.entrySet()) {
+            int index = keyIndex.add(entry.getKey());
+            if (index != keyIndex.size() - 1) {
+                throw new IllegalArgumentException("Duplicate key " + entry.getKey() + " for the equivalence of the keys");
+            }
+            if (entry.getValue() != null) {
+                for (V value : entry.getValue()) {
+                    values[offset++] = value;
+                }
+            }
+            offsets[index + 1] = offset;
+        }
+
+        return new CompactListMultimap<>(keyIndex.trim(), offsets, values);
+    }
+
+    private static class Builder<K, V> {
+        private final KeyIndex<K> keyIndex;
+        private final Function<? super V, ? extends K> keyExtractor;
+
+        private Object[] values;
+        private int[] valueKeys; // index of the key of each value
+        private int size;
+
+        private Builder(Collection<K> keys, Function<? super V, ? extends K> keyExtractor, Equivalence<? super K> equivalence) {
+            int expectedSize = keys != null ? keys.size() : 0;
+            this.keyIndex = keys != null ? keyIndex(keys, expectedSize, equivalence) : keyIndex(expectedSize, equivalence);
+            this.keyExtractor = keyExtractor;
+            this.values = new Object[Math.max(expectedSize, 8)];
+            this.valueKeys = new int[values.length];
+        }
+
+        private void add(V value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size << 1);
+                valueKeys = Arrays.copyOf(valueKeys, size << 1);
+            }
+            values[size] = value;
+            valueKeys[size++] = keyIndex.add(keyExtractor.apply(value));
+        }
+
+        private CompactListMultimap<K, V> build() {
+            int keyCount = keyIndex.size();
+
+            // Counting sort of the values by key index
+            int[] offsets = new int[keyCount + 1];
+            for (int i = 0; i < size; i++) {
+                offsets[valueKeys[i] + 1]++;
+            }
+            for (int k = 0; k < keyCount; k++) {
+                offsets[k + 1] += offsets[k];
+            }
+
+            int[] cursors = Arrays.copyOf(offsets, keyCount);
+            Object[] sortedValues = new Object[size];
+            for (int i = 0; i < size; i++) {
+                sortedValues[cursors[valueKeys[i]]++] = values[i];
+            }
+
+            return new CompactListMultimap<>(keyIndex.trim(), offsets, sortedValues);
+        }
+    }
+
+    private static class ValueRange<V> extends AbstractList<V> implements RandomAccess {
+        private final Object[] values;
+        private final int from;
+        private final int to;
+
+        private ValueRange(Object[] values, int from, int to) {
+            this.values = values;
+            this.from = from;
+            this.to = to;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public V get(int index) {
+            if (index < 0 || index >= to - from) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+            }
+            return (V) values[from + index];
+        }
+
+        @Override
+        public int size() {
+            return to - from;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.collection;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Immutable multi-column ID with primitive fields and a hash computed once at construction, to be used instead of
+ * ad-hoc {@code List} keys whose {@code hashCode()} is recomputed from boxed elements on every lookup.
+ */
+public abstract class CompositeKey {
+
+    private final int hash;
+
+    private CompositeKey(int hash) {
+        this.hash = hash;
+    }
+
+    public static LongPair compositeKey(long first, long second) {
+        return new LongPair(first, second);
+    }
+
+    public static IntPair compositeKey(int first, int second) {
+        return new IntPair(first, second);
+    }
+
+    /**
+     * @return A key over the most and least significant bits of {@code uuid}
+     */
+    public static LongPair compositeKey(UUID uuid) {
+        requireNonNull(uuid, "uuid cannot be null");
+        return new LongPair(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public static Tuple compositeKey(Object... columns) {
+        requireNonNull(columns, "columns cannot be null");
+        return new Tuple(columns.clone());
+    }
+
+    @Override
+    public final int hashCode() {
+        return hash;
+    }
+
+    private static int mix(long value) {
+        return Long.hashCode(value * 0x9E3779B97F4A7C15L);
+    }
+
+    public static final class LongPair extends CompositeKey {
+
+        private final long first;
+        private final long second;
+
+        private LongPair(long first, long second) {
+            super(31 * mix(first) + mix(second));
+            this.first = first;
+            this.second = second;
+        }
+
+        public long first() {
+            return first;
+        }
+
+        public long second() {
+            return second;
+        }
+
+        public UUID toUUID() {
+            return new UUID(first, second);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof LongPair)) {
+                return false;
+            }
+            LongPair that = (LongPair) o;
+            return first == that.first && second == that.second;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + first + ", " + second + ")";
+        }
+    }
+
+    public static final class IntPair extends CompositeKey {
+
+        private final int first;
+        private final int second;
+
+        private IntPair(int first, int second) {
+            super(mix(((long) first << 32) | (second & 0xFFFFFFFFL)));
+            this.first = first;
+            this.second = second;
+        }
+
+        public int first() {
+            return first;
+        }
+
+        public int second() {
+            return second;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof IntPair)) {
+                return false;
+            }
+            IntPair that = (IntPair) o;
+            return first == that.first && second == that.second;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + first + ", " + second + ")";
+        }
+    }
+
+    public static final class Tuple extends CompositeKey {
+
+        private final Object[] columns;
+
+        private Tuple(Object[] columns) {
+            super(Arrays.deepHashCode(columns));
+            this.columns = columns;
+        }
+
+        public int size() {
+            return columns.length;
+        }
+
+        public Object get(int index) {
+            return columns[index];
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Tuple)) {
+                return false;
+            }
+            Tuple that = (Tuple) o;
+            return hashCode() == that.hashCode() && Arrays.deepEquals(columns, that.columns);
+        }
+
+        @Override
+        public String toString() {
+            return Arrays.deepToString(columns);
+        }
+    }
+}
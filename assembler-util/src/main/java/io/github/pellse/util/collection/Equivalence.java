@@ -0,0 +1,86 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.collection;
+
+import java.util.Arrays;
+import java.util.function.BiPredicate;
+import java.util.function.ToIntFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Hashing and equivalence strategy for the keys of a {@link KeyIndex}, {@link IdList} or {@link OpenAddressingMap},
+ * used instead of {@link Object#equals(Object)} and {@link Object#hashCode()}, e.g. to use {@code byte[]} IDs
+ * directly as keys without wrapping each of them in an object. Keys passed to an {@link Equivalence} are never {@code null}.
+ *
+ * @param <T> Type of the keys
+ */
+public interface Equivalence<T> {
+
+    Equivalence<Object> DEFAULT = of(Object::equals, Object::hashCode);
+    Equivalence<Object> IDENTITY = of((a, b) -> a == b, System::identityHashCode);
+    Equivalence<byte[]> BYTE_ARRAY = of(Arrays::equals, Arrays::hashCode);
+
+    boolean equivalent(T a, T b);
+
+    int hash(T t);
+
+    /**
+     * @return The {@link Object#equals(Object)} and {@link Object#hashCode()} equivalence
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Equivalence<T> defaultEquivalence() {
+        return (Equivalence<T>) DEFAULT;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <T> Equivalence<T> identityEquivalence() {
+        return (Equivalence<T>) IDENTITY;
+    }
+
+    /**
+     * @return An equivalence comparing the content of {@code byte[]} keys, e.g. binary UUIDs or hashes
+     */
+    static Equivalence<byte[]> byteArrayEquivalence() {
+        return BYTE_ARRAY;
+    }
+
+    static <T> Equivalence<T> of(BiPredicate<? super T, ? super T> equivalent, ToIntFunction<? super T> hash) {
+        requireNonNull(equivalent, "equivalent cannot be null");
+        requireNonNull(hash, "hash cannot be null");
+
+        return new Equivalence<>() {
+            @Override
+            public boolean equivalent(T a, T b) {
+                return equivalent.test(a, b);
+            }
+
+            @Override
+            public int hash(T t) {
+                return hash.applyAsInt(t);
+            }
+        };
+    }
+
+    /**
+     * @return {@code true} if {@code equivalence} is {@code null} or the default equivalence, so that
+     * {@link Object#equals(Object)} and {@link Object#hashCode()} can be invoked directly
+     */
+    static boolean isDefault(Equivalence<?> equivalence) {
+        return equivalence == null || equivalence == DEFAULT;
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.collection;
+
+import java.util.*;
+
+import static io.github.pellse.util.collection.CompactListMultimap.compactListMultimap;
+import static io.github.pellse.util.collection.KeyIndex.keyIndex;
+import static java.util.Collections.unmodifiableList;
+import static java.util.Collections.unmodifiableSet;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Immutable exactly sized copy of a mapper result, for results retained for a long time (e.g. cached) where the spare
+ * capacity of a {@code HashMap} and of the {@code ArrayList} or {@code HashSet} of each ID would otherwise be kept:
+ * the keys are stored in a trimmed {@link KeyIndex} and the values in an array at the index of their key.
+ *
+ * @param <K> Type of the keys
+ * @param <V> Type of the values
+ * @see #freeze(Map)
+ */
+public final class FrozenMap<K, V> extends AbstractMap<K, V> {
+
+    private final KeyIndex<K> keyIndex;
+    private final Object[] values;
+
+    private Set<Entry<K, V>> entrySet;
+
+    private FrozenMap(KeyIndex<K> keyIndex, Object[] values) {
+        this.keyIndex = keyIndex;
+        this.values = values;
+    }
+
+    @Override
+    public int size() {
+        return keyIndex.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return keyIndex.indexOf(key) >= 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object key) {
+        int index = keyIndex.indexOf(key);
+        return index >= 0 ? (V) values[index] : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        int index = keyIndex.indexOf(key);
+        return index >= 0 ? (V) values[index] : defaultValue;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new Iterator<>() {
+                        private int index;
+
+                        @Override
+                        public boolean hasNext() {
+                            return index < keyIndex.size();
+                        }
+
+                        @SuppressWarnings("unchecked")
+                        @Override
+                        public Entry<K, V> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int i = index++;
+                            return new SimpleImmutableEntry<>(keyIndex.keyAt(i), (V) values[i]);
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keyIndex.size();
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * Converts a mapper result into a compact immutable map: a one-to-many result of {@code List} values becomes a
+     * {@link CompactListMultimap} with all the values in a single array, otherwise a {@link FrozenMap} is created and
+     * each {@code List} or {@code Set} value is replaced by an exactly sized immutable copy. An already frozen map is
+     * returned as is, the keys of an {@link OpenAddressingMap} keep being compared with its {@link Equivalence}.
+     *
+     * @param map The map to freeze
+     * @return A compact immutable copy of {@code map}
+     */
+    @SuppressWarnings("unchecked")
+    public static <K, V> Map<K, V> freeze(Map<K, V> map) {
+        requireNonNull(map, "map cannot be null");
+
+        if (map instanceof FrozenMap || map instanceof CompactListMultimap) {
+            return map;
+        }
+
+        Equivalence<Object> equivalence = map instanceof OpenAddressingMap ? ((OpenAddressingMap<K, V>) map).equivalence() : null;
+
+        if (!map.isEmpty() && allListValues(map)) {
+            return (Map<K, V>) compactListMultimap((Map<K, List<Object>>) map, equivalence);
+        }
+
+        KeyIndex<K> keyIndex = keyIndex(map.size(), equivalence);
+        Object[] values = new Object[map.size()];
+
+        for (Entry<K, V> entry : map.entrySet()) {
+            values[keyIndex.add(entry.getKey())] = freezeValue(entry.getValue());
+        }
+
+        return new FrozenMap<>(keyIndex.trim(), values);
+    }
+
+    private static boolean allListValues(Map<?, ?> map) {
+        for (Object value : map.values()) {
+            if (!(value instanceof List)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Object freezeValue(Object value) {
+        if (value instanceof List) {
+            Object[] elements = ((List<?>) value).toArray();
+            return containsNull(elements) ? unmodifiableList(Arrays.asList(elements)) : List.of(elements);
+        }
+        if (value instanceof Set && !(value instanceof SortedSet)) {
+            Object[] elements = ((Set<?>) value).toArray();
+            return containsNull(elements) ? unmodifiableSet(new HashSet<>(Arrays.asList(elements))) : Set.of(elements);
+        }
+        return value;
+    }
+
+    private static boolean containsNull(Object[] elements) {
+        for (Object element : elements) {
+            if (element == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
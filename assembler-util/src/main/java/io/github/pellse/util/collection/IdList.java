@@ -0,0 +1,314 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.collection;
+
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+
+import static io.github.pellse.util.collection.CollectionUtil.toStream;
+import static io.github.pellse.util.collection.KeyIndex.keyIndex;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toCollection;
+
+/**
+ * Immutable list of distinct IDs in encounter order, built once per assembly and shared by all mappers
+ * instead of copying the IDs into a new collection for each query function.
+ * <p>
+ * {@link #contains(Object)} and {@link #indexOf(Object)} are constant time, the position of an ID in the list
+ * is a dense index that can be used to store the results associated with each ID in plain arrays,
+ * and {@link #asSet()} exposes the same IDs as an immutable {@link Set} without copying them.
+ *
+ * @param <E> Type of the IDs
+ */
+public final class IdList<E> extends AbstractList<E> implements RandomAccess {
+
+    private static final IdList<?> EMPTY = new IdList<>(keyIndex(0));
+
+    private static final Supplier<List<?>> LIST_VIEW = ArrayList::new;
+    private static final Supplier<Set<?>> SET_VIEW = HashSet::new;
+
+    private final KeyIndex<E> keyIndex;
+    private final IdSet<E> set;
+
+    private volatile SortedView<E> sortedView;
+
+    private IdList(KeyIndex<E> keyIndex) {
+        this.keyIndex = keyIndex.trim();
+        this.set = new IdSet<>(this);
+    }
+
+    @Override
+    public E get(int index) {
+        return keyIndex.keyAt(index);
+    }
+
+    @Override
+    public int size() {
+        return keyIndex.size();
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return keyIndex.indexOf(o) >= 0;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return keyIndex.indexOf(o);
+    }
+
+    /**
+     * @param expectedPosition The position where {@code o} is expected to be, e.g. when walking
+     *                         the entities from which this list was built in the same order
+     * @return The position of {@code o}, only looked up if not at {@code expectedPosition}
+     */
+    public int indexOf(Object o, int expectedPosition) {
+        return keyIndex.isAt(expectedPosition, o) ? expectedPosition : keyIndex.indexOf(o);
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        return keyIndex.indexOf(o);
+    }
+
+    /**
+     * @return An immutable {@link Set} view of this list, iterating in the same order
+     */
+    public Set<E> asSet() {
+        return set;
+    }
+
+    /**
+     * The sort is computed once and reused by all callers passing the same {@code comparator} instance
+     * (e.g. {@link Comparator#naturalOrder()}), IDs already in order are detected in a single pass without sorting.
+     *
+     * @return An immutable view of the IDs of this list sorted by {@code comparator}
+     */
+    public SortedView<E> sortedBy(Comparator<? super E> comparator) {
+        requireNonNull(comparator, "comparator cannot be null");
+
+        SortedView<E> view = sortedView;
+        if (view == null || view.comparator != comparator) {
+            view = new SortedView<>(this, comparator, sortPositions(comparator));
+            sortedView = view;
+        }
+        return view;
+    }
+
+    private int[] sortPositions(Comparator<? super E> comparator) {
+        int size = size();
+        int[] positions = new int[size];
+        boolean sorted = true;
+
+        for (int i = 0; i < size; i++) {
+            positions[i] = i;
+            sorted &= i == 0 || comparator.compare(get(i - 1), get(i)) <= 0;
+        }
+
+        if (!sorted) {
+            mergeSort(positions, new int[size], 0, size, comparator);
+        }
+        return positions;
+    }
+
+    private void mergeSort(int[] positions, int[] buffer, int from, int to, Comparator<? super E> comparator) {
+        if (to - from < 2) {
+            return;
+        }
+
+        int middle = (from + to) >>> 1;
+        mergeSort(positions, buffer, from, middle, comparator);
+        mergeSort(positions, buffer, middle, to, comparator);
+
+        if (comparator.compare(get(positions[middle - 1]), get(positions[middle])) <= 0) {
+            return; // Both halves already in order
+        }
+
+        System.arraycopy(positions, from, buffer, from, to - from);
+        for (int i = from, left = from, right = middle; i < to; i++) {
+            positions[i] = right >= to || (left < middle && comparator.compare(get(buffer[left]), get(buffer[right])) <= 0)
+                    ? buffer[left++]
+                    : buffer[right++];
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <E> IdList<E> emptyIdList() {
+        return (IdList<E>) EMPTY;
+    }
+
+    /**
+     * @return {@code ids} itself if already an {@link IdList} or a {@link #asSet()} view of one,
+     * otherwise a new {@link IdList} of the distinct elements of {@code ids}, empty if {@code ids} is {@code null}
+     */
+    public static <E> IdList<E> idList(Iterable<? extends E> ids) {
+        return idList(ids, null);
+    }
+
+    /**
+     * @param equivalence The hashing and equivalence strategy used to deduplicate and look up the IDs,
+     *                    {@code null} for {@link Object#equals(Object)}, ignored if {@code ids} is already an {@link IdList}
+     */
+    public static <E> IdList<E> idList(Iterable<? extends E> ids, Equivalence<? super E> equivalence) {
+        if (ids == null) {
+            return emptyIdList();
+        }
+        IdList<E> idList = unwrap(ids);
+        if (idList != null) {
+            return idList;
+        }
+        return new IdList<>(keyIndex(ids, ids instanceof Collection ? ((Collection<?>) ids).size() : 16, equivalence));
+    }
+
+    public static <E> Collector<E, ?, IdList<E>> toIdList() {
+        return toIdList(null);
+    }
+
+    /**
+     * @param equivalence The hashing and equivalence strategy used to deduplicate and look up the IDs,
+     *                    {@code null} for {@link Object#equals(Object)}
+     */
+    public static <E> Collector<E, ?, IdList<E>> toIdList(Equivalence<? super E> equivalence) {
+        return Collector.<E, KeyIndex<E>, IdList<E>>of(
+                () -> keyIndex(16, equivalence),
+                KeyIndex::add,
+                (index1, index2) -> {
+                    for (int i = 0; i < index2.size(); i++) {
+                        index1.add(index2.keyAt(i));
+                    }
+                    return index1;
+                },
+                IdList::new);
+    }
+
+    /**
+     * ID collection factory for query functions accepting a {@code List}, when the IDs are already an {@link IdList}
+     * the query function receives that list as is, otherwise a new {@link ArrayList} is created
+     *
+     * @see #toIdCollection(Iterable, Supplier)
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> Supplier<List<E>> listView() {
+        return (Supplier<List<E>>) (Supplier<?>) LIST_VIEW;
+    }
+
+    /**
+     * ID collection factory for query functions accepting a {@code Set}, when the IDs are already an {@link IdList}
+     * the query function receives its {@link #asSet()} view, otherwise a new {@link HashSet} is created
+     *
+     * @see #toIdCollection(Iterable, Supplier)
+     */
+    @SuppressWarnings("unchecked")
+    public static <E> Supplier<Set<E>> setView() {
+        return (Supplier<Set<E>>) (Supplier<?>) SET_VIEW;
+    }
+
+    /**
+     * @param ids                 The IDs to convert
+     * @param idCollectionFactory The factory of the collection expected by a query function, only {@link #listView()}
+     *                            and {@link #setView()} avoid a copy, any other factory is assumed to require its own
+     *                            (e.g. mutable) collection
+     * @return A collection of {@code ids} of the type provided by {@code idCollectionFactory}
+     */
+    @SuppressWarnings("unchecked")
+    public static <E, C extends Collection<E>> C toIdCollection(Iterable<E> ids, Supplier<C> idCollectionFactory) {
+        IdList<E> idList = idCollectionFactory == LIST_VIEW || idCollectionFactory == SET_VIEW ? unwrap(ids) : null;
+        if (idList != null) {
+            return (C) (idCollectionFactory == LIST_VIEW ? idList : idList.asSet());
+        }
+        return toStream(ids)
+                .collect(toCollection(idCollectionFactory));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> IdList<E> unwrap(Iterable<? extends E> ids) {
+        if (ids instanceof IdList) {
+            return (IdList<E>) ids;
+        }
+        return ids instanceof IdSet ? ((IdSet<E>) ids).idList : null;
+    }
+
+    /**
+     * Immutable view of the IDs of an {@link IdList} in sorted order,
+     * {@link #positionAt(int)} maps each index of this view back to the position of the ID in the {@link IdList}
+     *
+     * @param <E> Type of the IDs
+     */
+    public static final class SortedView<E> extends AbstractList<E> implements RandomAccess {
+        private final IdList<E> idList;
+        private final Comparator<? super E> comparator;
+        private final int[] positions;
+
+        private SortedView(IdList<E> idList, Comparator<? super E> comparator, int[] positions) {
+            this.idList = idList;
+            this.comparator = comparator;
+            this.positions = positions;
+        }
+
+        @Override
+        public E get(int index) {
+            return idList.get(positions[index]);
+        }
+
+        @Override
+        public int size() {
+            return positions.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return idList.contains(o);
+        }
+
+        public int positionAt(int index) {
+            return positions[index];
+        }
+
+        public Comparator<? super E> comparator() {
+            return comparator;
+        }
+    }
+
+    private static class IdSet<E> extends AbstractSet<E> {
+        private final IdList<E> idList;
+
+        private IdSet(IdList<E> idList) {
+            this.idList = idList;
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return idList.iterator();
+        }
+
+        @Override
+        public int size() {
+            return idList.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return idList.contains(o);
+        }
+
+        @Override
+        public Spliterator<E> spliterator() {
+            return Spliterators.spliterator(this, Spliterator.DISTINCT | Spliterator.ORDERED);
+        }
+    }
+}
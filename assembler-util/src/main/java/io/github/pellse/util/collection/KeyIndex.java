@@ -0,0 +1,185 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.collection;
+
+import java.util.Arrays;
+
+import static io.github.pellse.util.collection.Equivalence.isDefault;
+import static java.lang.Integer.numberOfLeadingZeros;
+import static java.lang.Math.max;
+
+/**
+ * Assigns a dense index ({@code 0} to {@code size() - 1}, in insertion order) to each distinct key,
+ * e.g. to store the values associated with each key in plain arrays instead of a {@code Map}.
+ * <p>
+ * The keys are kept in a dense array and looked up through an open addressing table of {@code int} with
+ * linear probing, so there is no object allocated per key. Keys are compared with {@link Object#equals(Object)}
+ * unless an {@link Equivalence} is provided. Null keys are supported, the index is not thread safe.
+ *
+ * @param <K> Type of the keys
+ */
+public final class KeyIndex<K> {
+
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+    private static final Object NULL_KEY = new Object();
+
+    private final Equivalence<Object> equivalence; // null for equals() and hashCode()
+
+    private Object[] keys;
+    private int[] slots; // index of the key + 1, 0 for an empty slot
+    private int size;
+    private int shift;
+
+    @SuppressWarnings("unchecked")
+    private KeyIndex(int expectedSize, Equivalence<? super K> equivalence) {
+        this.equivalence = isDefault(equivalence) ? null : (Equivalence<Object>) equivalence;
+        keys = new Object[max(expectedSize, 1)];
+        allocateSlots(expectedSize);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public K keyAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+        Object key = keys[index];
+        return key != NULL_KEY ? (K) key : null;
+    }
+
+    /**
+     * @return The index of {@code key}, or {@code -1} if not present
+     */
+    public int indexOf(Object key) {
+        Object k = maskNull(key);
+        int mask = slots.length - 1;
+
+        for (int i = slotOf(k); ; i = (i + 1) & mask) {
+            int slot = slots[i];
+            if (slot == 0) {
+                return -1;
+            }
+            if (keysMatch(keys[slot - 1], k)) {
+                return slot - 1;
+            }
+        }
+    }
+
+    /**
+     * @return {@code true} if {@code key} is at {@code index}, without hashing {@code key}
+     */
+    public boolean isAt(int index, Object key) {
+        return index >= 0 && index < size && keysMatch(keys[index], maskNull(key));
+    }
+
+    /**
+     * @return The index of {@code key}, newly assigned if {@code key} was not already present
+     */
+    public int add(K key) {
+        Object k = maskNull(key);
+        int mask = slots.length - 1;
+
+        int i = slotOf(k);
+        for (int slot; (slot = slots[i]) != 0; i = (i + 1) & mask) {
+            if (keysMatch(keys[slot - 1], k)) {
+                return slot - 1;
+            }
+        }
+
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size << 1);
+        }
+        keys[size] = k;
+        slots[i] = ++size;
+
+        if (size * 2 > slots.length) { // Load factor of at most 0.5, probing an int[] is cheap
+            rehash();
+        }
+        return size - 1;
+    }
+
+    /**
+     * Releases the spare capacity of the key array once all keys have been added
+     */
+    public KeyIndex<K> trim() {
+        if (keys.length > size) {
+            keys = Arrays.copyOf(keys, max(size, 1));
+        }
+        return this;
+    }
+
+    private void rehash() {
+        allocateSlots(size * 2);
+        int mask = slots.length - 1;
+
+        for (int index = 0; index < size; index++) {
+            int i = slotOf(keys[index]);
+            while (slots[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            slots[i] = index + 1;
+        }
+    }
+
+    private void allocateSlots(int expectedSize) {
+        int capacity = max(Integer.highestOneBit(max(expectedSize, 1) * 2 - 1) << 1, 2);
+        slots = new int[capacity];
+        shift = numberOfLeadingZeros(capacity) + 1;
+    }
+
+    private int slotOf(Object key) {
+        int hash = equivalence == null ? key.hashCode() : key != NULL_KEY ? equivalence.hash(key) : 0;
+        return (hash * GOLDEN_RATIO) >>> shift;
+    }
+
+    private boolean keysMatch(Object current, Object key) {
+        if (current == key) {
+            return true;
+        }
+        return equivalence == null ? current.equals(key) : current != NULL_KEY && key != NULL_KEY && equivalence.equivalent(current, key);
+    }
+
+    private static Object maskNull(Object key) {
+        return key != null ? key : NULL_KEY;
+    }
+
+    public static <K> KeyIndex<K> keyIndex(int expectedSize) {
+        return keyIndex(expectedSize, null);
+    }
+
+    /**
+     * @param equivalence The hashing and equivalence strategy of the keys, {@code null} for {@link Object#equals(Object)}
+     */
+    public static <K> KeyIndex<K> keyIndex(int expectedSize, Equivalence<? super K> equivalence) {
+        return new KeyIndex<>(expectedSize, equivalence);
+    }
+
+    public static <K> KeyIndex<K> keyIndex(Iterable<? extends K> keys, int expectedSize) {
+        return keyIndex(keys, expectedSize, null);
+    }
+
+    public static <K> KeyIndex<K> keyIndex(Iterable<? extends K> keys, int expectedSize, Equivalence<? super K> equivalence) {
+        KeyIndex<K> keyIndex = new KeyIndex<>(expectedSize, equivalence);
+        for (K key : keys) {
+            keyIndex.add(key);
+        }
+        return keyIndex;
+    }
+}
@@ -0,0 +1,689 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.collection;
+
+import java.util.*;
+import java.util.stream.Collector;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Compressed {@code Set} of {@code long} IDs in the style of a Roaring bitmap: the IDs are partitioned by their upper
+ * 48 bits, and the lower 16 bits of the IDs of each partition are stored either in a sorted {@code char[]} while the
+ * partition is sparse, or in a 64K bits bitmap once it is dense, so a dense range of IDs takes about one bit per ID
+ * instead of a boxed {@link Long} per ID.
+ * <p>
+ * Can be used as the ID collection factory of a mapper (e.g. {@code oneToOne(this::getBillingInfos,
+ * BillingInfo::getCustomerId, LongIdSet::longIdSet)}) so the query function receives the deduplicated IDs in ascending
+ * order, and can iterate them without boxing with {@link #longIterator()} or turn them into ranges with
+ * {@link #forEachRange(LongRangeConsumer)}, e.g. to query {@code WHERE id BETWEEN ? AND ?}.
+ * <p>
+ * Not thread safe.
+ */
+public final class LongIdSet extends AbstractSet<Long> {
+
+    private static final int ARRAY_CONTAINER_MAX_SIZE = 4096;
+    private static final int MAX_LOW = 0xFFFF;
+
+    private long[] keys = new long[4];
+    private Container[] containers = new Container[4];
+    private int containerCount;
+    private int lastContainerIndex;
+
+    private int size;
+    private int modCount;
+
+    private int[] containerRanks; // Number of IDs before each container, null until needed or when stale
+
+    private LongIdSet() {
+    }
+
+    public static LongIdSet longIdSet() {
+        return new LongIdSet();
+    }
+
+    public static LongIdSet longIdSet(long... ids) {
+        requireNonNull(ids, "ids cannot be null");
+
+        LongIdSet longIdSet = new LongIdSet();
+        for (long id : ids) {
+            longIdSet.add(id);
+        }
+        return longIdSet;
+    }
+
+    /**
+     * @return A new {@link LongIdSet} of {@code ids}, or {@code ids} itself if already a {@link LongIdSet}
+     */
+    public static LongIdSet longIdSet(Iterable<Long> ids) {
+        if (ids instanceof LongIdSet) {
+            return (LongIdSet) ids;
+        }
+
+        LongIdSet longIdSet = new LongIdSet();
+        if (ids != null) {
+            for (Long id : ids) {
+                longIdSet.add(id);
+            }
+        }
+        return longIdSet;
+    }
+
+    public static Collector<Long, ?, LongIdSet> toLongIdSet() {
+        return Collector.of(LongIdSet::new, LongIdSet::add, (left, right) -> {
+            left.addAll(right);
+            return left;
+        }, Collector.Characteristics.UNORDERED);
+    }
+
+    @Override
+    public boolean add(Long id) {
+        requireNonNull(id, "id cannot be null");
+        return add(id.longValue());
+    }
+
+    public boolean add(long id) {
+        long key = id >> 16;
+        int low = (int) id & MAX_LOW;
+
+        int index = containerIndex(key);
+        if (index < 0) {
+            index = -index - 1;
+            insertContainer(index, key, new ArrayContainer());
+        }
+
+        Container container = containers[index];
+        int containerSize = container.size();
+
+        containers[index] = container.add(low);
+        if (containers[index].size() == containerSize) {
+            return false;
+        }
+
+        modified(1);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Long && contains(((Long) o).longValue());
+    }
+
+    public boolean contains(long id) {
+        int index = containerIndex(id >> 16);
+        return index >= 0 && containers[index].contains((int) id & MAX_LOW);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        return o instanceof Long && remove(((Long) o).longValue());
+    }
+
+    public boolean remove(long id) {
+        int index = containerIndex(id >> 16);
+        if (index < 0) {
+            return false;
+        }
+
+        Container container = containers[index];
+        int containerSize = container.size();
+
+        Container updatedContainer = container.remove((int) id & MAX_LOW);
+        if (updatedContainer.size() == containerSize) {
+            return false;
+        }
+
+        if (updatedContainer.size() == 0) {
+            removeContainer(index);
+        } else {
+            containers[index] = updatedContainer;
+        }
+
+        modified(-1);
+        return true;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(containers, 0, containerCount, null);
+        containerCount = 0;
+        lastContainerIndex = 0;
+        modified(-size);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public long first() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        return idOf(0, containers[0].nextValue(0));
+    }
+
+    public long last() {
+        if (size == 0) {
+            throw new NoSuchElementException();
+        }
+        int index = containerCount - 1;
+        return idOf(index, containers[index].select(containers[index].size() - 1));
+    }
+
+    /**
+     * @return The position of {@code id} in ascending order, {@code -1} if absent
+     */
+    public int indexOf(long id) {
+        int index = containerIndex(id >> 16);
+        if (index < 0) {
+            return -1;
+        }
+
+        Container container = containers[index];
+        int low = (int) id & MAX_LOW;
+
+        return container.contains(low) ? containerRanks()[index] + container.rank(low) : -1;
+    }
+
+    /**
+     * @return The ID at position {@code index} in ascending order
+     */
+    public long get(int index) {
+        Objects.checkIndex(index, size);
+
+        int[] ranks = containerRanks();
+        int lo = 0, hi = containerCount - 1;
+        while (lo < hi) { // Last container starting at or before index
+            int mid = (lo + hi + 1) >>> 1;
+            if (ranks[mid] <= index) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return idOf(lo, containers[lo].select(index - ranks[lo]));
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return longIterator();
+    }
+
+    /**
+     * @return An iterator of the IDs in ascending order, without boxing
+     */
+    public PrimitiveIterator.OfLong longIterator() {
+        return new LongIdIterator();
+    }
+
+    public LongStream longStream() {
+        return StreamSupport.longStream(Spliterators.spliterator(longIterator(), size,
+                Spliterator.ORDERED | Spliterator.SORTED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+    }
+
+    /**
+     * Passes each maximal range of consecutive IDs to {@code rangeConsumer} in ascending order,
+     * e.g. {@code [1, 2, 3, 7, 9, 10]} gives {@code (1, 3)}, {@code (7, 7)} and {@code (9, 10)}
+     */
+    public void forEachRange(LongRangeConsumer rangeConsumer) {
+        requireNonNull(rangeConsumer, "rangeConsumer cannot be null");
+
+        boolean inRange = false;
+        long rangeFirst = 0, rangeLast = 0;
+
+        for (int index = 0; index < containerCount; index++) {
+            Container container = containers[index];
+
+            int low = container.nextValue(0);
+            while (low >= 0) {
+                int endOfRun = container.endOfRun(low);
+                long first = idOf(index, low), last = idOf(index, endOfRun);
+
+                if (inRange && first == rangeLast + 1) {
+                    rangeLast = last;
+                } else {
+                    if (inRange) {
+                        rangeConsumer.accept(rangeFirst, rangeLast);
+                    }
+                    inRange = true;
+                    rangeFirst = first;
+                    rangeLast = last;
+                }
+                low = container.nextValue(endOfRun + 1);
+            }
+        }
+
+        if (inRange) {
+            rangeConsumer.accept(rangeFirst, rangeLast);
+        }
+    }
+
+    /**
+     * @return A read only {@code List} view of the IDs in ascending order,
+     * {@link List#indexOf(Object)} and {@link List#get(int)} don't require a search over the elements
+     */
+    public List<Long> asList() {
+        return new ListView();
+    }
+
+    @FunctionalInterface
+    public interface LongRangeConsumer {
+
+        /**
+         * @param first The first ID of the range, inclusive
+         * @param last  The last ID of the range, inclusive
+         */
+        void accept(long first, long last);
+    }
+
+    private long idOf(int containerIndex, int low) {
+        return keys[containerIndex] << 16 | low;
+    }
+
+    private int containerIndex(long key) {
+        // IDs are usually added and looked up in clusters, so the last container accessed is checked first
+        int last = lastContainerIndex;
+        if (last < containerCount && keys[last] == key) {
+            return last;
+        }
+
+        int index = Arrays.binarySearch(keys, 0, containerCount, key);
+        if (index >= 0) {
+            lastContainerIndex = index;
+        }
+        return index;
+    }
+
+    private void insertContainer(int index, long key, Container container) {
+        if (containerCount == keys.length) {
+            keys = Arrays.copyOf(keys, containerCount << 1);
+            containers = Arrays.copyOf(containers, containerCount << 1);
+        }
+        System.arraycopy(keys, index, keys, index + 1, containerCount - index);
+        System.arraycopy(containers, index, containers, index + 1, containerCount - index);
+
+        keys[index] = key;
+        containers[index] = container;
+        containerCount++;
+        lastContainerIndex = index;
+    }
+
+    private void removeContainer(int index) {
+        System.arraycopy(keys, index + 1, keys, index, containerCount - index - 1);
+        System.arraycopy(containers, index + 1, containers, index, containerCount - index - 1);
+
+        containers[--containerCount] = null;
+        lastContainerIndex = 0;
+    }
+
+    private void modified(int sizeDelta) {
+        size += sizeDelta;
+        modCount++;
+        containerRanks = null;
+    }
+
+    private int[] containerRanks() {
+        if (containerRanks == null) {
+            int[] ranks = new int[containerCount];
+            for (int i = 1; i < containerCount; i++) {
+                ranks[i] = ranks[i - 1] + containers[i - 1].size();
+            }
+            containerRanks = ranks;
+        }
+        return containerRanks;
+    }
+
+    private final class LongIdIterator implements PrimitiveIterator.OfLong {
+
+        private int containerIndex;
+        private int nextLow;
+
+        private long lastReturned;
+        private boolean canRemove;
+        private int expectedModCount = modCount;
+
+        private LongIdIterator() {
+            nextLow = containerCount > 0 ? containers[0].nextValue(0) : -1;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return nextLow >= 0;
+        }
+
+        @Override
+        public long nextLong() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (nextLow < 0) {
+                throw new NoSuchElementException();
+            }
+
+            lastReturned = idOf(containerIndex, nextLow);
+            canRemove = true;
+
+            nextLow = containers[containerIndex].nextValue(nextLow + 1);
+            while (nextLow < 0 && ++containerIndex < containerCount) {
+                nextLow = containers[containerIndex].nextValue(0);
+            }
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (!canRemove) {
+                throw new IllegalStateException();
+            }
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+
+            boolean hasNext = hasNext();
+            long nextId = hasNext ? idOf(containerIndex, nextLow) : 0;
+
+            LongIdSet.this.remove(lastReturned);
+
+            // The container of the next ID may have moved if the container of the removed ID became empty
+            if (hasNext) {
+                containerIndex = containerIndex(nextId >> 16);
+            }
+            canRemove = false;
+            expectedModCount = modCount;
+        }
+    }
+
+    private final class ListView extends AbstractList<Long> implements RandomAccess {
+
+        @Override
+        public Long get(int index) {
+            return LongIdSet.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            return o instanceof Long ? LongIdSet.this.indexOf(((Long) o).longValue()) : -1;
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return indexOf(o);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return LongIdSet.this.contains(o);
+        }
+
+        @Override
+        public Iterator<Long> iterator() {
+            return longIterator();
+        }
+    }
+
+    /**
+     * Lower 16 bits of the IDs sharing the same upper 48 bits
+     */
+    private abstract static class Container {
+
+        abstract int size();
+
+        abstract boolean contains(int low);
+
+        /**
+         * @return This container or the container it was converted to
+         */
+        abstract Container add(int low);
+
+        /**
+         * @return This container or the container it was converted to
+         */
+        abstract Container remove(int low);
+
+        /**
+         * @return The smallest value greater than or equal to {@code fromLow}, {@code -1} if none
+         */
+        abstract int nextValue(int fromLow);
+
+        /**
+         * @return The last value of the run of consecutive values starting at {@code low}, which must be present
+         */
+        abstract int endOfRun(int low);
+
+        /**
+         * @return The number of values smaller than {@code low}
+         */
+        abstract int rank(int low);
+
+        abstract int select(int index);
+    }
+
+    private static final class ArrayContainer extends Container {
+
+        private char[] values = new char[4];
+        private int size;
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        boolean contains(int low) {
+            return Arrays.binarySearch(values, 0, size, (char) low) >= 0;
+        }
+
+        @Override
+        Container add(int low) {
+            int index = Arrays.binarySearch(values, 0, size, (char) low);
+            if (index >= 0) {
+                return this;
+            }
+            if (size == ARRAY_CONTAINER_MAX_SIZE) {
+                return new BitmapContainer(this).add(low);
+            }
+
+            index = -index - 1;
+            if (size == values.length) {
+                values = Arrays.copyOf(values, Math.min(size << 1, ARRAY_CONTAINER_MAX_SIZE));
+            }
+            System.arraycopy(values, index, values, index + 1, size - index);
+            values[index] = (char) low;
+            size++;
+            return this;
+        }
+
+        @Override
+        Container remove(int low) {
+            int index = Arrays.binarySearch(values, 0, size, (char) low);
+            if (index >= 0) {
+                System.arraycopy(values, index + 1, values, index, size - index - 1);
+                size--;
+            }
+            return this;
+        }
+
+        @Override
+        int nextValue(int fromLow) {
+            int index = rank(fromLow);
+            return index < size ? values[index] : -1;
+        }
+
+        @Override
+        int endOfRun(int low) {
+            int index = rank(low);
+            while (index + 1 < size && values[index + 1] == values[index] + 1) {
+                index++;
+            }
+            return values[index];
+        }
+
+        @Override
+        int rank(int low) {
+            if (low > MAX_LOW) {
+                return size;
+            }
+            int index = Arrays.binarySearch(values, 0, size, (char) low);
+            return index >= 0 ? index : -index - 1;
+        }
+
+        @Override
+        int select(int index) {
+            return values[index];
+        }
+    }
+
+    private static final class BitmapContainer extends Container {
+
+        private static final int WORD_COUNT = (MAX_LOW + 1) >>> 6;
+
+        private final long[] words = new long[WORD_COUNT];
+        private int size;
+
+        private int[] wordRanks; // Number of values before each word, null until needed or when stale
+
+        private BitmapContainer(ArrayContainer arrayContainer) {
+            for (int i = 0; i < arrayContainer.size; i++) {
+                int low = arrayContainer.values[i];
+                words[low >>> 6] |= 1L << low;
+            }
+            size = arrayContainer.size;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        boolean contains(int low) {
+            return (words[low >>> 6] & 1L << low) != 0;
+        }
+
+        @Override
+        Container add(int low) {
+            long word = words[low >>> 6];
+            if ((word & 1L << low) == 0) {
+                words[low >>> 6] = word | 1L << low;
+                size++;
+                wordRanks = null;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(int low) {
+            long word = words[low >>> 6];
+            if ((word & 1L << low) == 0) {
+                return this;
+            }
+
+            words[low >>> 6] = word & ~(1L << low);
+            size--;
+            wordRanks = null;
+
+            // Converted back well below the array container capacity, so that alternating
+            // adds and removes around that capacity don't convert the container each time
+            return size > ARRAY_CONTAINER_MAX_SIZE / 2 ? this : toArrayContainer();
+        }
+
+        @Override
+        int nextValue(int fromLow) {
+            if (fromLow > MAX_LOW) {
+                return -1;
+            }
+
+            int wordIndex = fromLow >>> 6;
+            long word = words[wordIndex] & -1L << fromLow;
+            while (word == 0) {
+                if (++wordIndex == WORD_COUNT) {
+                    return -1;
+                }
+                word = words[wordIndex];
+            }
+            return (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        @Override
+        int endOfRun(int low) {
+            int wordIndex = low >>> 6;
+            long clearBits = ~words[wordIndex] & -1L << low;
+            while (clearBits == 0) {
+                if (++wordIndex == WORD_COUNT) {
+                    return MAX_LOW;
+                }
+                clearBits = ~words[wordIndex];
+            }
+            return (wordIndex << 6) + Long.numberOfTrailingZeros(clearBits) - 1;
+        }
+
+        @Override
+        int rank(int low) {
+            int wordIndex = low >>> 6;
+            return wordRanks()[wordIndex] + Long.bitCount(words[wordIndex] & (1L << low) - 1);
+        }
+
+        @Override
+        int select(int index) {
+            int[] ranks = wordRanks();
+
+            int lo = 0, hi = WORD_COUNT - 1;
+            while (lo < hi) { // Last word starting at or before index
+                int mid = (lo + hi + 1) >>> 1;
+                if (ranks[mid] <= index) {
+                    lo = mid;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+
+            long word = words[lo];
+            for (int i = index - ranks[lo]; i > 0; i--) {
+                word &= word - 1;
+            }
+            return (lo << 6) + Long.numberOfTrailingZeros(word);
+        }
+
+        private int[] wordRanks() {
+            if (wordRanks == null) {
+                int[] ranks = new int[WORD_COUNT];
+                for (int i = 1; i < WORD_COUNT; i++) {
+                    ranks[i] = ranks[i - 1] + Long.bitCount(words[i - 1]);
+                }
+                wordRanks = ranks;
+            }
+            return wordRanks;
+        }
+
+        private ArrayContainer toArrayContainer() {
+            ArrayContainer arrayContainer = new ArrayContainer();
+            arrayContainer.values = new char[Math.max(size, 4)];
+            for (int low = nextValue(0); low >= 0; low = nextValue(low + 1)) {
+                arrayContainer.values[arrayContainer.size++] = (char) low;
+            }
+            return arrayContainer;
+        }
+    }
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.collection;
+
+import java.util.*;
+
+import static io.github.pellse.util.collection.Equivalence.isDefault;
+import static java.lang.Integer.numberOfLeadingZeros;
+import static java.lang.Math.max;
+
+/**
+ * Compact {@link Map} implementation based on open addressing with linear probing, keys and values
+ * are stored in two parallel arrays so there is no entry object per key as in {@link HashMap}.
+ * <p>
+ * It is tuned for the build once, probe many pattern of the assembler join: the table is sized upfront from
+ * the expected number of entries and lookups are a hash followed by a short scan of contiguous slots.
+ * {@link #remove(Object)} is supported (with backward shift deletion, no tombstones) but removing
+ * through the iterators of the collection views is not. Keys are compared with {@link Object#equals(Object)} unless
+ * an {@link Equivalence} is provided (e.g. for {@code byte[]} keys). Null keys and values are supported, the map is not thread safe.
+ *
+ * @param <K> Type of the keys
+ * @param <V> Type of the values
+ */
+public final class OpenAddressingMap<K, V> extends AbstractMap<K, V> {
+
+    public static final float DEFAULT_LOAD_FACTOR = 0.7f;
+
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int GOLDEN_RATIO = 0x9E3779B9;
+    private static final Object NULL_KEY = new Object();
+
+    private final float loadFactor;
+    private final Equivalence<Object> equivalence; // null for equals() and hashCode()
+
+    private Object[] keys;
+    private Object[] values;
+    private int size;
+    private int shift;
+    private int resizeThreshold;
+
+    private Set<Entry<K, V>> entrySet;
+
+    @SuppressWarnings("unchecked")
+    private OpenAddressingMap(int expectedSize, float loadFactor, Equivalence<? super K> equivalence) {
+        this.loadFactor = loadFactor;
+        this.equivalence = isDefault(equivalence) ? null : (Equivalence<Object>) equivalence;
+        allocate(tableSizeFor(expectedSize, loadFactor));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The equivalence of the keys, {@code null} for {@link Object#equals(Object)} and {@link Object#hashCode()}
+     */
+    Equivalence<Object> equivalence() {
+        return equivalence;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(maskNull(key)) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != null && Objects.equals(values[i], value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V get(Object key) {
+        int index = indexOf(maskNull(key));
+        return index >= 0 ? (V) values[index] : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V getOrDefault(Object key, V defaultValue) {
+        int index = indexOf(maskNull(key));
+        return index >= 0 ? (V) values[index] : defaultValue;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V put(K key, V value) {
+        Object k = maskNull(key);
+        int mask = keys.length - 1;
+
+        for (int i = slotOf(k); ; i = (i + 1) & mask) {
+            Object current = keys[i];
+            if (current == null) {
+                if (size >= resizeThreshold) {
+                    rehash(keys.length << 1);
+                    return put(key, value);
+                }
+                keys[i] = k;
+                values[i] = value;
+                size++;
+                return null;
+            }
+            if (matches(current, k)) {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public V remove(Object key) {
+        int index = indexOf(maskNull(key));
+        if (index < 0) {
+            return null;
+        }
+
+        V previous = (V) values[index];
+        deleteSlot(index);
+        return previous;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(keys, null);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<K, V>> iterator() {
+                    return new EntryIterator();
+                }
+
+                @Override
+                public int size() {
+                    return size;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    private int slotOf(Object key) {
+        int hash = equivalence == null ? key.hashCode() : key != NULL_KEY ? equivalence.hash(key) : 0;
+        return (hash * GOLDEN_RATIO) >>> shift;
+    }
+
+    private boolean matches(Object current, Object key) {
+        if (current == key) {
+            return true;
+        }
+        return equivalence == null ? current.equals(key) : current != NULL_KEY && key != NULL_KEY && equivalence.equivalent(current, key);
+    }
+
+    private int indexOf(Object key) {
+        int mask = keys.length - 1;
+
+        for (int i = slotOf(key); ; i = (i + 1) & mask) {
+            Object current = keys[i];
+            if (current == null) {
+                return -1;
+            }
+            if (matches(current, key)) {
+                return i;
+            }
+        }
+    }
+
+    /**
+     * Backward shift deletion, moves back the following entries of the same probe sequence
+     * so that lookups never stop on a hole in the middle of a cluster
+     */
+    private void deleteSlot(int index) {
+        int mask = keys.length - 1;
+        int gap = index;
+
+        for (int i = (gap + 1) & mask; keys[i] != null; i = (i + 1) & mask) {
+            int home = slotOf(keys[i]);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+
+        keys[gap] = null;
+        values[gap] = null;
+        size--;
+    }
+
+    private void rehash(int newCapacity) {
+        if (keys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("Maximum capacity reached");
+        }
+
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+
+        int mask = keys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            Object k = oldKeys[j];
+            if (k != null) {
+                int i = slotOf(k);
+                while (keys[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = k;
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        shift = numberOfLeadingZeros(capacity) + 1;
+        resizeThreshold = (int) Math.min(capacity * (double) loadFactor, capacity - 1);
+    }
+
+    private static int tableSizeFor(int expectedSize, float loadFactor) {
+        long minCapacity = (long) Math.ceil(max(expectedSize, 1) / (double) loadFactor) + 1;
+        return minCapacity >= MAX_CAPACITY ? MAX_CAPACITY : max(Integer.highestOneBit((int) minCapacity - 1) << 1, 2);
+    }
+
+    private static Object maskNull(Object key) {
+        return key != null ? key : NULL_KEY;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K> K unmaskNull(Object key) {
+        return key != NULL_KEY ? (K) key : null;
+    }
+
+    private class EntryIterator implements Iterator<Entry<K, V>> {
+
+        private final Object[] iteratedKeys = keys;
+        private int nextIndex = advance(0);
+
+        @Override
+        public boolean hasNext() {
+            return nextIndex < iteratedKeys.length;
+        }
+
+        @Override
+        public Entry<K, V> next() {
+            if (iteratedKeys != keys) {
+                throw new ConcurrentModificationException();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            int index = nextIndex;
+            nextIndex = advance(index + 1);
+            return new SlotEntry(index);
+        }
+
+        private int advance(int index) {
+            while (index < iteratedKeys.length && iteratedKeys[index] == null) {
+                index++;
+            }
+            return index;
+        }
+    }
+
+    private class SlotEntry implements Entry<K, V> {
+
+        private final K key;
+        private final int index;
+
+        private SlotEntry(int index) {
+            this.key = unmaskNull(keys[index]);
+            this.index = index;
+        }
+
+        @Override
+        public K getKey() {
+            return key;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public V getValue() {
+            return (V) values[index];
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public V setValue(V value) {
+            V previous = (V) values[index];
+            values[index] = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) {
+                return false;
+            }
+            Entry<?, ?> e = (Entry<?, ?>) o;
+            return Objects.equals(key, e.getKey()) && Objects.equals(getValue(), e.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(key) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return key + "=" + getValue();
+        }
+    }
+
+    public static <K, V> OpenAddressingMap<K, V> openAddressingMap() {
+        return openAddressingMap(16);
+    }
+
+    public static <K, V> OpenAddressingMap<K, V> openAddressingMap(int expectedSize) {
+        return openAddressingMap(expectedSize, DEFAULT_LOAD_FACTOR);
+    }
+
+    /**
+     * @param expectedSize Number of entries the map can hold without having to grow its arrays
+     * @param loadFactor   Maximum ratio of occupied slots, lower values mean shorter probe sequences but more memory
+     */
+    public static <K, V> OpenAddressingMap<K, V> openAddressingMap(int expectedSize, float loadFactor) {
+        return openAddressingMap(expectedSize, loadFactor, null);
+    }
+
+    /**
+     * @param equivalence The hashing and equivalence strategy of the keys, {@code null} for {@link Object#equals(Object)}
+     */
+    public static <K, V> OpenAddressingMap<K, V> openAddressingMap(int expectedSize, float loadFactor, Equivalence<? super K> equivalence) {
+        if (!(loadFactor > 0 && loadFactor < 1)) {
+            throw new IllegalArgumentException("loadFactor must be between 0 and 1 exclusively");
+        }
+        return new OpenAddressingMap<>(max(expectedSize, 0), loadFactor, equivalence);
+    }
+}
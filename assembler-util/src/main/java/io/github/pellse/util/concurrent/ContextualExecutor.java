@@ -0,0 +1,36 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.concurrent;
+
+import io.github.pellse.util.query.MapperContext;
+
+import java.util.concurrent.Executor;
+
+/**
+ * {@link Executor} whose scheduling depends on the {@link MapperContext} of the assembly submitting the tasks
+ * (e.g. its tenant), adapters accepting an {@link Executor} detect it and execute the sub queries of each assembly
+ * on the {@link Executor} returned by {@link #executorFor(MapperContext)}.
+ */
+public interface ContextualExecutor extends Executor {
+
+    Executor executorFor(MapperContext mapperContext);
+
+    static Executor executorFor(Executor executor, MapperContext mapperContext) {
+        return executor instanceof ContextualExecutor ? ((ContextualExecutor) executor).executorFor(mapperContext) : executor;
+    }
+}
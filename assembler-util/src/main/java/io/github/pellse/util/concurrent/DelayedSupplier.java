@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.concurrent;
+
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+import static io.github.pellse.util.concurrent.RateLimiter.awaitNanos;
+import static java.lang.Math.max;
+import static java.lang.System.nanoTime;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link Supplier} that must not be invoked before a given point in time, e.g. before the permit
+ * reserved from a {@link RateLimiter} can be used.
+ * <p>
+ * Asynchronous callers are expected to read {@link #delayNanos(Supplier)} and schedule the invocation
+ * of {@link #get()} accordingly (e.g. delay a subscription), in which case {@link #get()} returns without waiting.
+ * Callers unaware of the delay still honor it as {@link #get()} parks the calling thread for the remaining time.
+ * <p>
+ * A supplier created by {@link #reserving(LongSupplier, Supplier, Supplier)} only makes its reservation
+ * when its delay is first read or {@link #get()} first invoked, e.g. on subscription, so that a pipeline built but
+ * subscribed later, or never, does not use up the permits in the meantime. A reservation that is refused, e.g. because
+ * the permit would only be available after a deadline, falls back right away without having used up a permit.
+ *
+ * @param <T> Type of the supplied value
+ */
+public final class DelayedSupplier<T> implements Supplier<T> {
+
+    private final Supplier<T> delegate;
+    private final Supplier<T> fallback;
+    private final LongSupplier reservation;
+
+    private boolean reserved;
+    private boolean tooLate;
+    private long readyAtNanos;
+
+    private DelayedSupplier(Supplier<T> delegate, Supplier<T> fallback, LongSupplier reservation) {
+        this.delegate = requireNonNull(delegate, "delegate cannot be null");
+        this.fallback = requireNonNull(fallback, "fallback cannot be null");
+        this.reservation = requireNonNull(reservation, "reservation cannot be null");
+    }
+
+    @Override
+    public T get() {
+        awaitNanos(remainingNanos());
+        return isTooLate() ? fallback.get() : delegate.get();
+    }
+
+    public long remainingNanos() {
+        return max(readyAtNanos() - nanoTime(), 0);
+    }
+
+    private synchronized long readyAtNanos() {
+        if (!reserved) {
+            long delayNanos = reservation.getAsLong();
+            tooLate = delayNanos < 0;
+            readyAtNanos = tooLate ? nanoTime() : nanoTime() + delayNanos;
+            reserved = true;
+        }
+        return readyAtNanos;
+    }
+
+    private synchronized boolean isTooLate() {
+        return tooLate;
+    }
+
+    public static <T> Supplier<T> delayed(Supplier<T> delegate, long delayNanos) {
+        if (delayNanos <= 0) {
+            return delegate;
+        }
+
+        DelayedSupplier<T> delayedSupplier = new DelayedSupplier<>(delegate, delegate, () -> delayNanos);
+        delayedSupplier.readyAtNanos();
+        return delayedSupplier;
+    }
+
+    /**
+     * @param reservation Reserves e.g. a rate limiter permit and returns the delay in nanoseconds before it can be used,
+     *                    or a negative value if nothing was reserved, e.g. {@link RateLimiter#tryReserve(long)}, invoked once,
+     *                    when the delay is first read or {@link #get()} first invoked
+     * @param delegate    Invoked once the reserved delay has elapsed
+     * @param fallback    Invoked right away instead of {@code delegate} if nothing was reserved
+     */
+    public static <T> Supplier<T> reserving(LongSupplier reservation, Supplier<T> delegate, Supplier<T> fallback) {
+        return new DelayedSupplier<>(delegate, fallback, reservation);
+    }
+
+    /**
+     * @return The remaining delay in nanoseconds before {@code supplier} can be invoked, {@code 0} if it is not a {@link DelayedSupplier}
+     */
+    public static long delayNanos(Supplier<?> supplier) {
+        return supplier instanceof DelayedSupplier ? ((DelayedSupplier<?>) supplier).remainingNanos() : 0;
+    }
+}
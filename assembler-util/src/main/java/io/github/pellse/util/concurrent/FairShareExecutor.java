@@ -0,0 +1,225 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.concurrent;
+
+import io.github.pellse.util.query.MapperContext;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+import static io.github.pellse.util.concurrent.TenantQuota.tenantQuota;
+import static io.github.pellse.util.query.MapperContext.DEFAULT_TENANT;
+import static java.lang.Math.max;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link ContextualExecutor} sharing a delegate {@link Executor} (e.g. sized after a database connection pool)
+ * between tenants with weighted fair queuing, the tenant of a task being the {@link MapperContext#tenant()}
+ * of the assembly submitting it.
+ * <p>
+ * At most {@code maxConcurrency} tasks are running on the delegate executor at any time, the others wait in a queue
+ * per tenant. Each time a slot frees up, the next task is taken from the tenant with the smallest virtual time
+ * among the tenants below their own {@link TenantQuota#maxConcurrency()}, the virtual time of a tenant
+ * advancing by {@code 1 / weight} for each dispatched task. A tenant becoming active again starts at the
+ * current virtual time instead of its own past one, so a light tenant is dispatched right away
+ * even behind thousands of queued tasks of a heavy tenant, which in turn cannot bank credit while idle.
+ * <p>
+ * A task rejected by the delegate executor is only reported to the caller submitting it, the tasks of other callers
+ * dispatched at the same time stay queued and are dispatched again on the next submission or completion.
+ */
+public final class FairShareExecutor implements ContextualExecutor {
+
+    private final Executor executor;
+    private final int maxConcurrency;
+    private final Function<Object, TenantQuota> quotaProvider;
+
+    private final Map<Object, TenantQueue> tenantQueues = new HashMap<>();
+    private int inFlight;
+    private double virtualTime;
+
+    private FairShareExecutor(Executor executor, int maxConcurrency, Function<Object, TenantQuota> quotaProvider) {
+        this.executor = requireNonNull(executor, "executor cannot be null");
+        this.maxConcurrency = maxConcurrency;
+        this.quotaProvider = requireNonNull(quotaProvider, "quotaProvider cannot be null");
+    }
+
+    @Override
+    public Executor executorFor(MapperContext mapperContext) {
+        Object tenant = mapperContext.tenant();
+        return task -> execute(tenant, task);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        execute(DEFAULT_TENANT, task);
+    }
+
+    public void execute(Object tenant, Runnable task) {
+        requireNonNull(tenant, "tenant cannot be null");
+        requireNonNull(task, "task cannot be null");
+
+        TenantQueue tenantQueue;
+        synchronized (this) {
+            tenantQueue = tenantQueues.computeIfAbsent(tenant, this::newTenantQueue);
+            if (tenantQueue.isIdle()) {
+                tenantQueue.virtualTime = max(tenantQueue.virtualTime, virtualTime);
+            }
+            tenantQueue.tasks.add(task);
+        }
+
+        // Only the rejection of its own task is reported to the caller
+        RejectedExecutionException rejected = dispatch();
+        if (rejected != null && removeQueued(tenantQueue, task)) {
+            throw rejected;
+        }
+    }
+
+    /**
+     * @return The number of tasks of {@code tenant} waiting to be dispatched to the delegate executor
+     */
+    public synchronized int queuedTasks(Object tenant) {
+        TenantQueue tenantQueue = tenantQueues.get(tenant);
+        return tenantQueue != null ? tenantQueue.tasks.size() : 0;
+    }
+
+    private TenantQueue newTenantQueue(Object tenant) {
+        return new TenantQueue(tenant, requireNonNull(quotaProvider.apply(tenant), () -> "No quota defined for tenant " + tenant));
+    }
+
+    /**
+     * @return The exception of the delegate executor if it rejected a task, the rejected task is then put back at the head
+     * of its queue and the dispatch stops, the queued tasks being dispatched again on the next submission or completion
+     */
+    private RejectedExecutionException dispatch() {
+        while (true) {
+            TenantQueue tenantQueue;
+            Runnable task;
+
+            synchronized (this) {
+                tenantQueue = inFlight < maxConcurrency ? nextTenantQueue() : null;
+                if (tenantQueue == null) {
+                    return null;
+                }
+
+                task = tenantQueue.tasks.remove();
+                tenantQueue.inFlight++;
+                inFlight++;
+
+                virtualTime = tenantQueue.virtualTime;
+                tenantQueue.virtualTime += 1 / tenantQueue.quota.weight();
+            }
+
+            try {
+                executor.execute(() -> run(tenantQueue, task));
+            } catch (RejectedExecutionException e) {
+                requeue(tenantQueue, task);
+                return e;
+            }
+        }
+    }
+
+    private TenantQueue nextTenantQueue() {
+        TenantQueue next = null;
+        for (TenantQueue tenantQueue : tenantQueues.values()) {
+            if (tenantQueue.isDispatchable() && (next == null || tenantQueue.virtualTime < next.virtualTime)) {
+                next = tenantQueue;
+            }
+        }
+        return next;
+    }
+
+    private void run(TenantQueue tenantQueue, Runnable task) {
+        try {
+            task.run();
+        } finally {
+            complete(tenantQueue);
+            dispatch();
+        }
+    }
+
+    private synchronized void requeue(TenantQueue tenantQueue, Runnable task) {
+        tenantQueue.tasks.addFirst(task);
+        tenantQueue.virtualTime -= 1 / tenantQueue.quota.weight();
+        tenantQueue.inFlight--;
+        inFlight--;
+    }
+
+    private synchronized boolean removeQueued(TenantQueue tenantQueue, Runnable task) {
+        if (!tenantQueue.tasks.removeLastOccurrence(task)) {
+            return false;
+        }
+        if (tenantQueue.isIdle()) {
+            tenantQueues.remove(tenantQueue.tenant);
+        }
+        return true;
+    }
+
+    private synchronized void complete(TenantQueue tenantQueue) {
+        tenantQueue.inFlight--;
+        inFlight--;
+
+        // The virtual time of an idle tenant is caught up on its next task anyway, no need to keep it
+        if (tenantQueue.isIdle()) {
+            tenantQueues.remove(tenantQueue.tenant);
+        }
+    }
+
+    public static FairShareExecutor fairShareExecutor(Executor executor, int maxConcurrency) {
+        TenantQuota quota = tenantQuota(1);
+        return fairShareExecutor(executor, maxConcurrency, tenant -> quota);
+    }
+
+    /**
+     * @param executor       The shared executor, e.g. the one passed to {@code completableFutureAdapter()}
+     * @param maxConcurrency Maximum number of tasks of all tenants executing at the same time on {@code executor}
+     * @param quotaProvider  Weight and maximum concurrency of each tenant, e.g. a lower weight for bulk export tenants
+     */
+    public static FairShareExecutor fairShareExecutor(Executor executor, int maxConcurrency, Function<Object, TenantQuota> quotaProvider) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0");
+        }
+        return new FairShareExecutor(executor, maxConcurrency, quotaProvider);
+    }
+
+    private static class TenantQueue {
+        private final Object tenant;
+        private final TenantQuota quota;
+        private final Deque<Runnable> tasks = new ArrayDeque<>();
+
+        private int inFlight;
+        private double virtualTime;
+
+        private TenantQueue(Object tenant, TenantQuota quota) {
+            this.tenant = tenant;
+            this.quota = quota;
+        }
+
+        private boolean isIdle() {
+            return tasks.isEmpty() && inFlight == 0;
+        }
+
+        private boolean isDispatchable() {
+            return !tasks.isEmpty() && inFlight < quota.maxConcurrency();
+        }
+    }
+}
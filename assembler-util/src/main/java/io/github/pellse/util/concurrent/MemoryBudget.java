@@ -0,0 +1,237 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.concurrent;
+
+import java.lang.ref.Cleaner;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.System.nanoTime;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Process-wide budget of bytes shared by caches and in-flight assemblies, based on estimated sizes, so that e.g.
+ * 50 concurrent large assemblies cannot all materialize their mapper results at the same time.
+ * <p>
+ * Caches register as {@link Evictable}: when an acquisition would exceed the budget, registered caches are first asked
+ * to evict entries to make room, an acquisition only fails (or waits for a release) once there is nothing left to evict,
+ * i.e. when the budget is held by in-flight assemblies. The evictables are invoked without holding any lock of the
+ * budget, so that a cache can acquire from the budget while another one is evicting.
+ */
+public final class MemoryBudget {
+
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private final long maxBytes;
+    private final List<Evictable> evictables = new CopyOnWriteArrayList<>();
+    private final AtomicLong nextEvictable = new AtomicLong();
+
+    private long usedBytes; // Guarded by this
+
+    private MemoryBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param maxBytes The estimated number of bytes all caches and in-flight assemblies sharing this budget can retain
+     */
+    public static MemoryBudget memoryBudget(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be greater than 0, was " + maxBytes);
+        }
+        return new MemoryBudget(maxBytes);
+    }
+
+    /**
+     * A cache releasing part of the bytes it acquired from a {@link MemoryBudget} when asked to
+     */
+    @FunctionalInterface
+    public interface Evictable {
+
+        /**
+         * @param bytes The number of bytes the budget is short of
+         * @return The number of bytes evicted and released with {@link MemoryBudget#release(long)}, {@code 0} if nothing was evicted
+         */
+        long evict(long bytes);
+    }
+
+    /**
+     * Registered for the lifetime of the budget, usually the lifetime of the application
+     */
+    public void register(Evictable evictable) {
+        evictables.add(requireNonNull(evictable, "evictable cannot be null"));
+    }
+
+    /**
+     * Acquires {@code bytes} right away, evicting from the registered caches if needed
+     *
+     * @return {@code false} if {@code bytes} cannot fit in the budget, even after evicting from all caches
+     */
+    public boolean tryAcquire(long bytes) {
+        if (bytes < 0) {
+            throw new IllegalArgumentException("bytes must be at least 0, was " + bytes);
+        }
+        if (bytes > maxBytes) {
+            return false;
+        }
+
+        long shortfall;
+        while ((shortfall = acquireOrShortfall(bytes)) > 0) {
+            if (evict(shortfall) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits at most {@code timeout} for other holders to release enough bytes
+     *
+     * @return {@code false} if {@code bytes} could not be acquired before {@code timeout} elapsed
+     */
+    public boolean tryAcquire(long bytes, long timeout, TimeUnit unit) throws InterruptedException {
+        long deadlineNanos = nanoTime() + unit.toNanos(timeout);
+
+        while (!tryAcquire(bytes)) {
+            synchronized (this) {
+                long remainingNanos = deadlineNanos - nanoTime();
+                if (remainingNanos <= 0 || bytes > maxBytes) {
+                    return false;
+                }
+                if (usedBytes + bytes > maxBytes) {
+                    TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+                }
+            }
+        }
+        return true;
+    }
+
+    public synchronized void release(long bytes) {
+        usedBytes -= bytes;
+        notifyAll();
+    }
+
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    public long maxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return A new reservation holding no bytes, e.g. for a single assembly
+     */
+    public Reservation reservation() {
+        return new Reservation(this);
+    }
+
+    @Override
+    public String toString() {
+        return "MemoryBudget[used=" + usedBytes() + ", max=" + maxBytes + "]";
+    }
+
+    /**
+     * @return {@code 0} if {@code bytes} were acquired, otherwise the number of bytes missing
+     */
+    private synchronized long acquireOrShortfall(long bytes) {
+        long shortfall = usedBytes + bytes - maxBytes;
+        if (shortfall <= 0) {
+            usedBytes += bytes;
+        }
+        return shortfall;
+    }
+
+    /**
+     * The evictables are asked in turn, starting from a different one at each call so that a single cache doesn't
+     * bear all the evictions
+     */
+    private long evict(long bytes) {
+        int count = evictables.size();
+        long start = nextEvictable.getAndIncrement();
+
+        long evicted = 0;
+        for (int i = 0; i < count && evicted < bytes; i++) {
+            evicted += evictables.get((int) ((start + i) % count)).evict(bytes - evicted);
+        }
+        return evicted;
+    }
+
+    /**
+     * Bytes acquired in possibly several steps and released at once, or when the reservation becomes unreachable,
+     * as a safety net for e.g. an asynchronous assembly whose result never terminates
+     */
+    public static final class Reservation {
+
+        private final MemoryBudget budget;
+        private final AtomicLong heldBytes = new AtomicLong();
+        private final Cleaner.Cleanable cleanable;
+
+        private volatile boolean closed;
+
+        private Reservation(MemoryBudget budget) {
+            this.budget = budget;
+
+            // The cleaning action must not reference this reservation
+            AtomicLong heldBytes = this.heldBytes;
+            this.cleanable = CLEANER.register(this, () -> budget.release(heldBytes.getAndSet(0)));
+        }
+
+        /**
+         * @param timeout Maximum time to wait for other holders to release enough bytes, {@code 0} to not wait
+         * @return {@code false} if {@code bytes} could not be acquired before {@code timeout} elapsed, or if this
+         * reservation is closed
+         */
+        public boolean tryAcquire(long bytes, long timeout, TimeUnit unit) throws InterruptedException {
+            if (closed || !budget.tryAcquire(bytes, timeout, unit)) {
+                return false;
+            }
+
+            heldBytes.addAndGet(bytes);
+            if (closed) {
+                // Closed while acquiring, e.g. an assembly cancelled while waiting for the budget
+                release();
+                return false;
+            }
+            return true;
+        }
+
+        public long heldBytes() {
+            return heldBytes.get();
+        }
+
+        /**
+         * Releases all the bytes held, the reservation can then be reused
+         */
+        public void release() {
+            long bytes = heldBytes.getAndSet(0);
+            if (bytes > 0) {
+                budget.release(bytes);
+            }
+        }
+
+        /**
+         * Releases all the bytes held, any later acquisition then fails
+         */
+        public void close() {
+            closed = true;
+            release();
+        }
+    }
+}
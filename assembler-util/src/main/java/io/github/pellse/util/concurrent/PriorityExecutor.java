@@ -0,0 +1,165 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.concurrent;
+
+import io.github.pellse.util.query.MapperContext;
+import io.github.pellse.util.query.Priority;
+
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static io.github.pellse.util.query.Priority.NORMAL;
+import static java.util.Comparator.comparing;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link ContextualExecutor} sharing a delegate {@link Executor} between assemblies of different
+ * {@link MapperContext#priority() priority classes}.
+ * <p>
+ * At most {@code maxConcurrency} tasks are running on the delegate executor at any time, the others wait in a
+ * priority queue. Each time a slot frees up, the oldest task of the highest priority class is dispatched,
+ * so high priority assemblies never wait behind queued low priority work, only behind the tasks already running.
+ * {@code maxConcurrency} should therefore not exceed the number of threads of the delegate executor,
+ * otherwise tasks would be queued there again regardless of their priority.
+ * <p>
+ * A task rejected by the delegate executor is only reported to the caller submitting it, the tasks of other callers
+ * dispatched at the same time stay queued and are dispatched again on the next submission or completion.
+ */
+public final class PriorityExecutor implements ContextualExecutor {
+
+    private final Executor executor;
+    private final int maxConcurrency;
+
+    private final Queue<PrioritizedTask> tasks = new PriorityQueue<>(
+            comparing((PrioritizedTask task) -> task.priority).thenComparingLong(task -> task.sequence));
+    private long sequence;
+    private int inFlight;
+
+    private PriorityExecutor(Executor executor, int maxConcurrency) {
+        this.executor = requireNonNull(executor, "executor cannot be null");
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    @Override
+    public Executor executorFor(MapperContext mapperContext) {
+        Priority priority = mapperContext.priority();
+        return task -> execute(priority, task);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        execute(NORMAL, task);
+    }
+
+    public void execute(Priority priority, Runnable task) {
+        requireNonNull(priority, "priority cannot be null");
+        requireNonNull(task, "task cannot be null");
+
+        PrioritizedTask prioritizedTask;
+        synchronized (this) {
+            prioritizedTask = new PrioritizedTask(priority, sequence++, task);
+            tasks.add(prioritizedTask);
+        }
+
+        // Only the rejection of its own task is reported to the caller
+        RejectedExecutionException rejected = dispatch();
+        if (rejected != null && removeQueued(prioritizedTask)) {
+            throw rejected;
+        }
+    }
+
+    /**
+     * @return The number of tasks waiting to be dispatched to the delegate executor
+     */
+    public synchronized int queuedTasks() {
+        return tasks.size();
+    }
+
+    /**
+     * @return The exception of the delegate executor if it rejected a task, the rejected task is then queued again
+     * and the dispatch stops, the queued tasks being dispatched again on the next submission or completion
+     */
+    private RejectedExecutionException dispatch() {
+        while (true) {
+            PrioritizedTask prioritizedTask;
+
+            synchronized (this) {
+                if (inFlight >= maxConcurrency || tasks.isEmpty()) {
+                    return null;
+                }
+                prioritizedTask = tasks.remove();
+                inFlight++;
+            }
+
+            try {
+                Runnable task = prioritizedTask.task;
+                executor.execute(() -> run(task));
+            } catch (RejectedExecutionException e) {
+                requeue(prioritizedTask);
+                return e;
+            }
+        }
+    }
+
+    private void run(Runnable task) {
+        try {
+            task.run();
+        } finally {
+            complete();
+            dispatch();
+        }
+    }
+
+    private synchronized void requeue(PrioritizedTask prioritizedTask) {
+        tasks.add(prioritizedTask);
+        inFlight--;
+    }
+
+    private synchronized boolean removeQueued(PrioritizedTask prioritizedTask) {
+        return tasks.remove(prioritizedTask);
+    }
+
+    private synchronized void complete() {
+        inFlight--;
+    }
+
+    /**
+     * @param executor       The shared executor, e.g. the one passed to {@code completableFutureAdapter()}
+     * @param maxConcurrency Maximum number of tasks executing at the same time on {@code executor}, typically its number of threads
+     */
+    public static PriorityExecutor priorityExecutor(Executor executor, int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0");
+        }
+        return new PriorityExecutor(executor, maxConcurrency);
+    }
+
+    private static class PrioritizedTask {
+        private final Priority priority;
+        private final long sequence;
+        private final Runnable task;
+
+        private PrioritizedTask(Priority priority, long sequence, Runnable task) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.task = task;
+        }
+    }
+}
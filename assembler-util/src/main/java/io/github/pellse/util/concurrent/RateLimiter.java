@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.concurrent;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.Math.max;
+import static java.lang.System.nanoTime;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.locks.LockSupport.parkNanos;
+
+/**
+ * Non blocking token bucket rate limiter, typically shared by all the mappers (of possibly many assemblers)
+ * querying the same datasource to enforce its request per second quota.
+ * <p>
+ * Permits are never refused, {@link #reserve()} instead returns how long the caller has to wait before using
+ * the permit it just reserved, so that asynchronous callers can delay their work (e.g. delay the subscription
+ * of a {@code Mono}) instead of parking a thread. Callers that give up past a deadline use {@link #tryReserve(long)}
+ * instead, so that the permits they don't use don't delay the other callers. Up to {@code maxBurst} permits are immediately available
+ * after an idle period. The state is a single theoretical arrival time updated with CAS, there is no lock.
+ */
+public final class RateLimiter {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong nextFreeNanos;
+
+    private RateLimiter(long intervalNanos, int maxBurst) {
+        this.intervalNanos = intervalNanos;
+        this.burstNanos = intervalNanos * (maxBurst - 1);
+        this.nextFreeNanos = new AtomicLong(nanoTime() - burstNanos);
+    }
+
+    /**
+     * @return The delay in nanoseconds before the reserved permit can be used, {@code 0} if it can be used right away
+     */
+    public long reserve() {
+        return reserve(1);
+    }
+
+    public long reserve(int permits) {
+        long now = nanoTime();
+        long prev, start;
+        do {
+            prev = nextFreeNanos.get();
+            start = max(prev, now - burstNanos);
+        } while (!nextFreeNanos.compareAndSet(prev, start + intervalNanos * permits));
+
+        return max(start - now, 0);
+    }
+
+    /**
+     * Reserves a permit only if it can be used within {@code maxDelayNanos}, otherwise the next free permit is left unchanged
+     *
+     * @return The delay in nanoseconds before the reserved permit can be used, or {@code -1} if no permit was reserved
+     */
+    public long tryReserve(long maxDelayNanos) {
+        long now = nanoTime();
+        long prev, start;
+        do {
+            prev = nextFreeNanos.get();
+            start = max(prev, now - burstNanos);
+            if (start - now >= maxDelayNanos) {
+                return -1;
+            }
+        } while (!nextFreeNanos.compareAndSet(prev, start + intervalNanos));
+
+        return max(start - now, 0);
+    }
+
+    /**
+     * Reserves a permit only if it can be used right away
+     */
+    public boolean tryAcquire() {
+        return tryReserve(1) >= 0;
+    }
+
+    /**
+     * Blocking counterpart of {@link #reserve()}, parks the calling thread until the reserved permit can be used
+     */
+    public void acquire() {
+        awaitNanos(reserve());
+    }
+
+    public static void awaitNanos(long delayNanos) {
+        long readyAt = nanoTime() + delayNanos;
+        for (long remaining = delayNanos; remaining > 0; remaining = readyAt - nanoTime()) {
+            parkNanos(remaining);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "RateLimiter[interval=" + Duration.ofNanos(intervalNanos) + ", burst=" + (burstNanos / intervalNanos + 1) + "]";
+    }
+
+    public static RateLimiter rateLimiter(double permitsPerSecond) {
+        return rateLimiter(permitsPerSecond, 1);
+    }
+
+    /**
+     * @param permitsPerSecond Sustained rate, e.g. the requests per second quota of a third party API
+     * @param maxBurst         Number of permits immediately available after an idle period
+     */
+    public static RateLimiter rateLimiter(double permitsPerSecond, int maxBurst) {
+        if (!(permitsPerSecond > 0)) {
+            throw new IllegalArgumentException("permitsPerSecond must be greater than 0");
+        }
+        if (maxBurst < 1) {
+            throw new IllegalArgumentException("maxBurst must be greater than 0");
+        }
+        return new RateLimiter(max((long) (1_000_000_000L / permitsPerSecond), 1), maxBurst);
+    }
+
+    public static RateLimiter rateLimiter(int permits, Duration period) {
+        requireNonNull(period, "period cannot be null");
+        return rateLimiter(permits * 1_000_000_000d / period.toNanos(), permits);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.concurrent;
+
+/**
+ * Share of a {@link FairShareExecutor} allocated to a tenant
+ */
+public final class TenantQuota {
+
+    private final double weight;
+    private final int maxConcurrency;
+
+    private TenantQuota(double weight, int maxConcurrency) {
+        this.weight = weight;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * @return Relative share of the executor when tenants compete for it, a tenant of weight 2 gets
+     * twice as many tasks dispatched as a tenant of weight 1
+     */
+    public double weight() {
+        return weight;
+    }
+
+    /**
+     * @return Maximum number of tasks of the tenant executing at the same time
+     */
+    public int maxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public String toString() {
+        return "TenantQuota[weight=" + weight + ", maxConcurrency=" + maxConcurrency + "]";
+    }
+
+    public static TenantQuota tenantQuota(double weight) {
+        return tenantQuota(weight, Integer.MAX_VALUE);
+    }
+
+    public static TenantQuota tenantQuota(double weight, int maxConcurrency) {
+        if (!(weight > 0)) {
+            throw new IllegalArgumentException("weight must be greater than 0");
+        }
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be greater than 0");
+        }
+        return new TenantQuota(weight, maxConcurrency);
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.query;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+import static io.github.pellse.util.ExceptionUtils.sneakyThrow;
+import static io.github.pellse.util.collection.CollectionUtil.toStream;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * {@link Mapper} decorator recursively bisecting a batch of IDs for which the decorated mapper fails,
+ * e.g. when a datasource rejects a payload that is too large ("413 Payload Too Large", query too complex)
+ * or when a single invalid ID fails the whole batch.
+ * <p>
+ * A single ID still failing after bisection is isolated and mapped to the {@link Mapper#defaultResult(Object)}
+ * of the decorated mapper. When both halves of a failed batch succeed, the failure is attributed to the size
+ * of the batch, and the largest half becomes the maximum batch size for all subsequent invocations,
+ * so that later calls are partitioned upfront instead of paying for the failed round trip every time.
+ * <p>
+ * {@link #reserve(MapperContext)} reserves for the first invocation of the decorated mapper only, the other batches
+ * and the retries of a failed batch reserve for themselves, e.g. a rate limited mapper then waits for its permits.
+ *
+ * @param <ID> Type of the ids
+ * @param <R>  Type of the results
+ * @param <EX> Type of the exception that can be thrown by the decorated mapper
+ */
+public final class BatchBisectingMapper<ID, R, EX extends Throwable> implements ContextualMapper<ID, R, EX> {
+
+    private final Mapper<ID, R, EX> mapper;
+    private final Predicate<Throwable> isBisectable;
+    private final AtomicInteger maxBatchSize;
+
+    BatchBisectingMapper(Mapper<ID, R, EX> mapper, Predicate<Throwable> isBisectable, int maxBatchSize) {
+        this.mapper = requireNonNull(mapper, "mapper cannot be null");
+        this.isBisectable = requireNonNull(isBisectable, "isBisectable cannot be null");
+        this.maxBatchSize = new AtomicInteger(max(maxBatchSize, 1));
+    }
+
+    @Override
+    public Map<ID, R> apply(Iterable<ID> entityIds, MapperContext context) throws EX {
+        return apply(entityIds, context, false);
+    }
+
+    @Override
+    public long reserve(MapperContext context) {
+        return mapper.reserve(context);
+    }
+
+    @Override
+    public Map<ID, R> applyReserved(Iterable<ID> entityIds, MapperContext context) throws EX {
+        return apply(entityIds, context, true);
+    }
+
+    @Override
+    public R defaultResult(ID id) {
+        return mapper.defaultResult(id);
+    }
+
+    /**
+     * @return The maximum batch size learned so far, {@link Integer#MAX_VALUE} if no batch ever failed because of its size
+     */
+    public int maxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    private Map<ID, R> apply(Iterable<ID> entityIds, MapperContext context, boolean reserved) throws EX {
+
+        List<ID> ids = toStream(entityIds).collect(toList());
+        Map<ID, R> results = MapFactory.<ID, R>defaultMapFactory().apply(ids.size());
+
+        int batchSize = maxBatchSize.get();
+        for (int i = 0; i < ids.size(); i += batchSize) {
+            applyBisecting(ids.subList(i, min(i + batchSize, ids.size())), context, results, reserved && i == 0);
+        }
+
+        return results;
+    }
+
+    /**
+     * @return {@code true} if all IDs of {@code ids} were eventually mapped without having to be isolated,
+     * i.e. a failure of this batch can only be explained by its size
+     */
+    private boolean applyBisecting(List<ID> ids, MapperContext context, Map<ID, R> results, boolean reserved) {
+        try {
+            results.putAll(reserved ? mapper.applyReserved(ids, context) : mapper.apply(ids, context));
+            return true;
+        } catch (Throwable e) {
+            if (!isBisectable.test(e)) {
+                return sneakyThrow(e);
+            }
+
+            // No point retrying once the time budget of the assembly is exhausted,
+            // neither when the failure is already isolated to a single ID
+            if (ids.size() == 1 || context.deadline().isExpired()) {
+                ids.forEach(id -> results.put(id, mapper.defaultResult(id)));
+                return false;
+            }
+
+            int middle = ids.size() / 2;
+            List<ID> left = ids.subList(0, middle);
+            List<ID> right = ids.subList(middle, ids.size());
+
+            boolean noneIsolated = applyBisecting(left, context, results, false) & applyBisecting(right, context, results, false);
+            if (noneIsolated) {
+                maxBatchSize.accumulateAndGet(right.size(), Math::min);
+            }
+            return noneIsolated;
+        }
+    }
+}
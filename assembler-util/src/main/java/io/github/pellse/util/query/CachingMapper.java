@@ -0,0 +1,175 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.query;
+
+import io.github.pellse.util.cache.Cache;
+import io.github.pellse.util.cache.Invalidatable;
+import io.github.pellse.util.cache.NegativeCache;
+import io.github.pellse.util.collection.IdList;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+import static io.github.pellse.util.collection.IdList.idList;
+import static io.github.pellse.util.function.checked.Unchecked.unchecked;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link Mapper} decorator caching results per ID in a {@link Cache}: only the IDs not already
+ * in the cache are passed to the decorated mapper, and its results are then added to the cache.
+ * <p>
+ * With a {@link NegativeCache}, the IDs for which the decorated mapper returned its
+ * {@link Mapper#defaultResult(Object) default result} are added to the negative cache instead, and are not queried
+ * again until they expire from it, the default result of those IDs being returned in the meantime.
+ * <p>
+ * Entries can be invalidated or refreshed when the source of truth changes, see {@link Invalidatable}.
+ * <p>
+ * {@link #reserve(MapperContext)} reserves for the decorated mapper, e.g. a rate limiter permit, even when all IDs
+ * turn out to be cached.
+ *
+ * @param <ID> Type of the ids
+ * @param <R>  Type of the results
+ * @param <EX> Type of the exception that can be thrown by the decorated mapper
+ */
+public final class CachingMapper<ID, R, EX extends Throwable> implements ContextualMapper<ID, R, EX>, Invalidatable<ID> {
+
+    private final Mapper<ID, R, EX> mapper;
+    private final Cache<ID, R> cache;
+    private final NegativeCache<ID> negativeCache;
+
+    private final InvalidationGuard invalidationGuard = new InvalidationGuard();
+
+    CachingMapper(Mapper<ID, R, EX> mapper, Cache<ID, R> cache, NegativeCache<ID> negativeCache) {
+        this.mapper = requireNonNull(mapper, "mapper cannot be null");
+        this.cache = requireNonNull(cache, "cache cannot be null");
+        this.negativeCache = negativeCache;
+    }
+
+    @Override
+    public Map<ID, R> apply(Iterable<ID> entityIds, MapperContext context) throws EX {
+        return apply(entityIds, context, false);
+    }
+
+    @Override
+    public long reserve(MapperContext context) {
+        return mapper.reserve(context);
+    }
+
+    @Override
+    public Map<ID, R> applyReserved(Iterable<ID> entityIds, MapperContext context) throws EX {
+        return apply(entityIds, context, true);
+    }
+
+    @Override
+    public R defaultResult(ID id) {
+        return mapper.defaultResult(id);
+    }
+
+    private Map<ID, R> apply(Iterable<ID> entityIds, MapperContext context, boolean reserved) throws EX {
+        Map<ID, R> cachedResults = cache.getAll(entityIds);
+
+        List<ID> uncachedIds = new ArrayList<>();
+        for (ID id : entityIds) {
+            if (cachedResults.containsKey(id)) {
+                continue;
+            }
+            if (negativeCache != null && negativeCache.contains(id)) {
+                cachedResults.put(id, mapper.defaultResult(id));
+            } else {
+                uncachedIds.add(id);
+            }
+        }
+
+        if (uncachedIds.isEmpty()) {
+            return cachedResults;
+        }
+
+        IdList<ID> missingIds = idList(uncachedIds);
+        long stamp = invalidationGuard.stamp();
+        Map<ID, R> results = reserved ? mapper.applyReserved(missingIds, context) : mapper.apply(missingIds, context);
+
+        invalidationGuard.cacheIfValid(stamp, () -> cacheAll(missingIds, results));
+
+        if (cachedResults.isEmpty()) {
+            return results;
+        }
+
+        Map<ID, R> mergedResults = new HashMap<>(results);
+        mergedResults.putAll(cachedResults);
+        return mergedResults;
+    }
+
+    @Override
+    public void invalidateAll(Iterable<? extends ID> ids) {
+        invalidationGuard.invalidate(() -> {
+            cache.removeAll(ids);
+            if (negativeCache != null) {
+                negativeCache.removeAll(ids);
+            }
+        });
+    }
+
+    @Override
+    public void invalidateIf(Predicate<? super ID> predicate) {
+        invalidationGuard.invalidate(() -> {
+            cache.removeIf(predicate);
+            if (negativeCache != null) {
+                negativeCache.removeIf(predicate);
+            }
+        });
+    }
+
+    @Override
+    public void refreshAll(Iterable<? extends ID> ids) {
+        IdList<ID> refreshIds = idList(ids);
+        invalidateAll(refreshIds);
+
+        long stamp = invalidationGuard.stamp();
+        Map<ID, R> results = unchecked((IdList<ID> idsToLoad) -> mapper.apply(idsToLoad, mapperContext())).apply(refreshIds);
+
+        invalidationGuard.cacheIfValid(stamp, () -> cacheAll(refreshIds, results));
+    }
+
+    private void cacheAll(IdList<ID> loadedIds, Map<ID, R> results) {
+        if (negativeCache != null) {
+            cacheSplitByPresence(loadedIds, results);
+        } else {
+            cache.putAll(results);
+        }
+    }
+
+    /**
+     * An ID with no entry in {@code results} is neither cached nor negatively cached,
+     * e.g. when the deadline of the assembly expired before the decorated mapper was invoked
+     */
+    private void cacheSplitByPresence(IdList<ID> missingIds, Map<ID, R> results) {
+        Map<ID, R> presentResults = new HashMap<>();
+        List<ID> absentIds = new ArrayList<>();
+
+        results.forEach((id, result) -> {
+            if (missingIds.contains(id) && Objects.equals(result, mapper.defaultResult(id))) {
+                absentIds.add(id);
+            } else {
+                presentResults.put(id, result);
+            }
+        });
+
+        cache.putAll(presentResults);
+        negativeCache.addAll(absentIds);
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.query;
+
+import java.util.Map;
+
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+
+/**
+ * {@link Mapper} that needs to read the {@link MapperContext} of the current assembly,
+ * e.g. to size its own timeouts based on the remaining {@link Deadline}.
+ */
+@FunctionalInterface
+public interface ContextualMapper<ID, R, EX extends Throwable> extends Mapper<ID, R, EX> {
+
+    @Override
+    default Map<ID, R> apply(Iterable<ID> entityIds) throws EX {
+        return apply(entityIds, mapperContext());
+    }
+
+    @Override
+    Map<ID, R> apply(Iterable<ID> entityIds, MapperContext context) throws EX;
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.query;
+
+import java.time.Duration;
+
+import static java.lang.Math.max;
+import static java.lang.System.nanoTime;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Single time budget shared by every step of an assembly (top level fetch, sub queries and join).
+ * <p>
+ * A {@code Deadline} is an absolute point in time measured against {@link System#nanoTime()},
+ * so the remaining budget shrinks as the assembly progresses and can be read by mappers
+ * (through {@link MapperContext#deadline()}) to size their own timeouts.
+ */
+public final class Deadline {
+
+    private static final Deadline NO_DEADLINE = new Deadline(0, false);
+
+    private final long expiryNanos;
+    private final boolean bounded;
+
+    private Deadline(long expiryNanos, boolean bounded) {
+        this.expiryNanos = expiryNanos;
+        this.bounded = bounded;
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    public boolean isExpired() {
+        return bounded && expiryNanos - nanoTime() <= 0;
+    }
+
+    /**
+     * @return The remaining budget in nanoseconds, {@code 0} if expired
+     * or {@link Long#MAX_VALUE} if this deadline is not bounded
+     */
+    public long remainingNanos() {
+        return bounded ? max(expiryNanos - nanoTime(), 0) : Long.MAX_VALUE;
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(remainingNanos());
+    }
+
+    @Override
+    public String toString() {
+        return bounded ? "Deadline[remaining=" + remaining() + "]" : "Deadline[none]";
+    }
+
+    public static Deadline noDeadline() {
+        return NO_DEADLINE;
+    }
+
+    public static Deadline after(Duration timeout) {
+        requireNonNull(timeout, "timeout cannot be null");
+        return new Deadline(nanoTime() + timeout.toNanos(), true);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.query;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Learns the average number of results per ID (fan-out) of a one-to-many mapper, so that the collection
+ * of each ID can be allocated with the right capacity instead of being regrown while results are added.
+ * <p>
+ * The estimate is an exponential moving average over the successive invocations of the mapper,
+ * so it follows changes of the data distribution over time.
+ */
+public final class FanOutEstimator {
+
+    private static final int PRECISION = 16; // Fixed point average, 1/16 resolution
+    private static final int INITIAL_FAN_OUT = 10; // Default capacity of ArrayList
+
+    private final AtomicInteger averageFanOut = new AtomicInteger(INITIAL_FAN_OUT * PRECISION);
+
+    private FanOutEstimator() {
+    }
+
+    /**
+     * @return The expected number of results of an ID, rounded up
+     */
+    public int expectedFanOut() {
+        return max((averageFanOut.get() + PRECISION - 1) / PRECISION, 1);
+    }
+
+    /**
+     * @param idCount     The number of distinct IDs passed to the query
+     * @param resultCount The total number of results returned for those IDs
+     */
+    public void record(int idCount, long resultCount) {
+        if (idCount > 0) {
+            int sample = (int) min(resultCount * PRECISION / idCount, Integer.MAX_VALUE / 2);
+            averageFanOut.accumulateAndGet(sample, FanOutEstimator::movingAverage);
+        }
+    }
+
+    /**
+     * Moves by at least one unit towards the sample, otherwise the truncated quarter of a difference smaller than 4
+     * would leave the average stuck up to 3/16 away from the actual fan-out, e.g. 6 expected for 5 results per ID
+     */
+    private static int movingAverage(int average, int sample) {
+        int delta = (sample - average) / 4;
+        return average + (delta != 0 ? delta : Integer.signum(sample - average));
+    }
+
+    public static FanOutEstimator fanOutEstimator() {
+        return new FanOutEstimator();
+    }
+}
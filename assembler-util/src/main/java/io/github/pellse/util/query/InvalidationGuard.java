@@ -0,0 +1,65 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.query;
+
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Prevents a caching mapper from caching results loaded before an invalidation of the same cache, e.g. a query
+ * reading the previous version of an entity while the change event of its new version is being processed.
+ * Results are cached under the read lock so that concurrent assemblies don't contend, invalidations are exclusive.
+ */
+final class InvalidationGuard {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile long invalidationCount;
+
+    /**
+     * @return The stamp to pass to {@link #cacheIfValid(long, Runnable)}, read before loading the results
+     */
+    long stamp() {
+        return invalidationCount;
+    }
+
+    /**
+     * @return {@code true} if {@code cacheUpdate} was executed, i.e. there was no invalidation since {@code stamp} was read
+     */
+    boolean cacheIfValid(long stamp, Runnable cacheUpdate) {
+        lock.readLock().lock();
+        try {
+            if (invalidationCount != stamp) {
+                return false;
+            }
+            cacheUpdate.run();
+            return true;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    void invalidate(Runnable invalidation) {
+        lock.writeLock().lock();
+        try {
+            invalidationCount++;
+            invalidation.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -1,14 +1,99 @@
 package io.github.pellse.util.query;
 
+import io.github.pellse.util.collection.Equivalence;
+import io.github.pellse.util.collection.OpenAddressingMap;
+
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 
+import static io.github.pellse.util.collection.OpenAddressingMap.DEFAULT_LOAD_FACTOR;
+import static io.github.pellse.util.collection.OpenAddressingMap.openAddressingMap;
+
 public interface MapFactory<ID, R> extends Function<Integer, Map<ID, R>> {
 
     double MULTIPLIER = 1.34; // To be consistent with the 0.75 default load factor of HashMap
 
+    /**
+     * @return The hashing and equivalence strategy of the keys of the created maps, also used by the query to correlate
+     * its results with IDs that were copied out of the assembler's {@link io.github.pellse.util.collection.IdList}
+     * (e.g. by an {@code ArrayList::new} ID collection factory), {@code null} for {@link Object#equals(Object)}
+     */
+    default Equivalence<? super ID> idEquivalence() {
+        return null;
+    }
+
     static <ID, R> MapFactory<ID, R> defaultMapFactory() {
         return size -> new HashMap<>((int)(size * MULTIPLIER));
     }
+
+    /**
+     * @return A factory of {@link OpenAddressingMap}, a more compact alternative to {@link HashMap}
+     * with no entry object per key, for large mapper results
+     */
+    static <ID, R> MapFactory<ID, R> openAddressingMapFactory() {
+        return openAddressingMapFactory(DEFAULT_LOAD_FACTOR);
+    }
+
+    static <ID, R> MapFactory<ID, R> openAddressingMapFactory(float loadFactor) {
+        return size -> openAddressingMap(size, loadFactor);
+    }
+
+    /**
+     * @param idEquivalence The hashing and equivalence strategy of the IDs, e.g. {@link Equivalence#byteArrayEquivalence()}
+     * @return A factory of {@link OpenAddressingMap} comparing IDs with {@code idEquivalence}
+     */
+    static <ID, R> MapFactory<ID, R> openAddressingMapFactory(Equivalence<? super ID> idEquivalence) {
+        return openAddressingMapFactory(DEFAULT_LOAD_FACTOR, idEquivalence);
+    }
+
+    static <ID, R> MapFactory<ID, R> openAddressingMapFactory(float loadFactor, Equivalence<? super ID> idEquivalence) {
+        return new MapFactory<>() {
+            @Override
+            public Map<ID, R> apply(Integer size) {
+                return openAddressingMap(size, loadFactor, idEquivalence);
+            }
+
+            @Override
+            public Equivalence<? super ID> idEquivalence() {
+                return idEquivalence;
+            }
+        };
+    }
+
+    /**
+     * When passed to {@code oneToManyAsList()}, selects a {@link io.github.pellse.util.collection.CompactListMultimap}
+     * (all values in a single array with immutable {@link List} views per ID) instead of a {@code Map} of {@code ArrayList},
+     * used anywhere else it falls back to {@link #defaultMapFactory()}
+     */
+    static <ID, R> CompactListMapFactory<ID, R> compactListMapFactory() {
+        MapFactory<ID, List<R>> fallbackMapFactory = defaultMapFactory();
+        return fallbackMapFactory::apply;
+    }
+
+    /**
+     * @param idEquivalence The hashing and equivalence strategy of the IDs, e.g. {@link Equivalence#byteArrayEquivalence()},
+     *                      the fallback is then an {@link OpenAddressingMap} comparing IDs with {@code idEquivalence}
+     * @see #compactListMapFactory()
+     */
+    static <ID, R> CompactListMapFactory<ID, R> compactListMapFactory(Equivalence<? super ID> idEquivalence) {
+        MapFactory<ID, List<R>> fallbackMapFactory = openAddressingMapFactory(idEquivalence);
+
+        return new CompactListMapFactory<>() {
+            @Override
+            public Map<ID, List<R>> apply(Integer size) {
+                return fallbackMapFactory.apply(size);
+            }
+
+            @Override
+            public Equivalence<? super ID> idEquivalence() {
+                return idEquivalence;
+            }
+        };
+    }
+
+    @FunctionalInterface
+    interface CompactListMapFactory<ID, R> extends MapFactory<ID, List<R>> {
+    }
 }
@@ -22,4 +22,37 @@ import java.util.Map;
 public interface Mapper<ID, R, EX extends Throwable> {
 
     Map<ID, R> apply(Iterable<ID> entityIds) throws EX;
+
+    default Map<ID, R> apply(Iterable<ID> entityIds, MapperContext context) throws EX {
+        return apply(entityIds);
+    }
+
+    /**
+     * Reserves what this mapper needs before being invoked, e.g. the permit of a {@link RateLimitedMapper}, so that
+     * asynchronous callers can delay the invocation instead of parking a thread. Decorators reserve for the mapper
+     * they decorate.
+     *
+     * @return The delay in nanoseconds before {@link #applyReserved(Iterable, MapperContext)} can be invoked,
+     * {@code 0} if nothing needs to be reserved, or a negative value if nothing was reserved and the invocation is to
+     * be skipped, e.g. when the reservation would only be usable after the {@link Deadline} of {@code context}
+     */
+    default long reserve(MapperContext context) {
+        return 0;
+    }
+
+    /**
+     * Invokes this mapper once the delay returned by {@link #reserve(MapperContext)} has elapsed, without reserving again
+     */
+    default Map<ID, R> applyReserved(Iterable<ID> entityIds, MapperContext context) throws EX {
+        return apply(entityIds, context);
+    }
+
+    /**
+     * @param id The id for which no result was returned
+     * @return The value used by the assembler when no result is available for {@code id},
+     * e.g. when the deadline of the assembly expired before this mapper completed
+     */
+    default R defaultResult(ID id) {
+        return null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.query;
+
+import static io.github.pellse.util.query.Deadline.noDeadline;
+import static io.github.pellse.util.query.Priority.NORMAL;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Immutable context of a single assembly, passed to every {@link Mapper} invoked during that assembly
+ * through {@link Mapper#apply(Iterable, MapperContext)}.
+ */
+public final class MapperContext {
+
+    /**
+     * Tenant of assemblies not explicitly bound to a tenant
+     */
+    public static final Object DEFAULT_TENANT = "default";
+
+    private static final MapperContext EMPTY_CONTEXT = new MapperContext(noDeadline(), DEFAULT_TENANT, NORMAL);
+
+    private final Deadline deadline;
+    private final Object tenant;
+    private final Priority priority;
+
+    private MapperContext(Deadline deadline, Object tenant, Priority priority) {
+        this.deadline = requireNonNull(deadline, "deadline cannot be null");
+        this.tenant = requireNonNull(tenant, "tenant cannot be null");
+        this.priority = requireNonNull(priority, "priority cannot be null");
+    }
+
+    /**
+     * @return The time budget of the whole assembly, mappers can use {@link Deadline#remaining()}
+     * to size the timeout of their own queries
+     */
+    public Deadline deadline() {
+        return deadline;
+    }
+
+    /**
+     * @return The tenant on behalf of which the assembly is executed, used to schedule the sub queries
+     * of different tenants fairly on shared resources (see {@code FairShareExecutor})
+     */
+    public Object tenant() {
+        return tenant;
+    }
+
+    /**
+     * @return The priority class of the assembly, used to dispatch the top level and sub queries
+     * of higher priority assemblies first on shared executors (see {@code PriorityExecutor})
+     */
+    public Priority priority() {
+        return priority;
+    }
+
+    public MapperContext withDeadline(Deadline deadline) {
+        return new MapperContext(deadline, tenant, priority);
+    }
+
+    public MapperContext withTenant(Object tenant) {
+        return new MapperContext(deadline, tenant, priority);
+    }
+
+    public MapperContext withPriority(Priority priority) {
+        return new MapperContext(deadline, tenant, priority);
+    }
+
+    public static MapperContext mapperContext() {
+        return EMPTY_CONTEXT;
+    }
+
+    public static MapperContext mapperContext(Deadline deadline) {
+        return new MapperContext(deadline, DEFAULT_TENANT, NORMAL);
+    }
+}
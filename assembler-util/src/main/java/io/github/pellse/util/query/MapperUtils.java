@@ -16,17 +16,42 @@
 
 package io.github.pellse.util.query;
 
+import io.github.pellse.util.cache.Cache;
+import io.github.pellse.util.cache.NegativeCache;
+import io.github.pellse.util.cache.Timestamped;
+import io.github.pellse.util.collection.FrozenMap;
+import io.github.pellse.util.collection.IdList;
+import io.github.pellse.util.concurrent.RateLimiter;
 import io.github.pellse.util.function.checked.CheckedFunction1;
+import io.github.pellse.util.function.checked.CheckedSupplier;
 
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
-
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+import static io.github.pellse.util.collection.FrozenMap.freeze;
+import static io.github.pellse.util.collection.IdList.listView;
+import static io.github.pellse.util.collection.IdList.setView;
+import static io.github.pellse.util.collection.IdList.toIdCollection;
 import static io.github.pellse.util.function.checked.Unchecked.unchecked;
+import static io.github.pellse.util.query.FanOutEstimator.fanOutEstimator;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static io.github.pellse.util.query.PrimitiveColumn.EMPTY_DOUBLE_ARRAY;
+import static io.github.pellse.util.query.PrimitiveColumn.EMPTY_INT_ARRAY;
+import static io.github.pellse.util.query.PrimitiveColumn.EMPTY_LONG_ARRAY;
 import static io.github.pellse.util.query.QueryUtils.*;
-import static java.util.stream.Collectors.toCollection;
-import static java.util.stream.StreamSupport.stream;
+import static java.util.Objects.requireNonNull;
 
 public interface MapperUtils {
 
@@ -35,14 +60,246 @@ public interface MapperUtils {
     }
 
     static <ID, R, EX extends Throwable> Mapper<ID, R, EX> cached(Mapper<ID, R, EX> mapper, Map<Iterable<ID>, Map<ID, R>> cache) {
-        return entityIds -> cache.computeIfAbsent(entityIds, unchecked(mapper::apply));
+        return decorate(mapper, delegate -> (entityIds, context) -> cache.computeIfAbsent(entityIds, unchecked(ids -> delegate.apply(ids, context))));
+    }
+
+    /**
+     * @param mapper The mapper to decorate
+     * @param cache  Results cached per ID, e.g. {@code tieredCache(lruCache(10_000), offHeapCache(4L << 30, javaSerializer()))}
+     * @return A mapper only querying the IDs not in {@code cache}, whose entries can be invalidated
+     * from change events, see {@link CachingMapper}
+     */
+    static <ID, R, EX extends Throwable> CachingMapper<ID, R, EX> cached(Mapper<ID, R, EX> mapper, Cache<ID, R> cache) {
+        return cached(mapper, cache, null);
+    }
+
+    /**
+     * @param mapper        The mapper to decorate
+     * @param cache         Results cached per ID
+     * @param negativeCache IDs for which {@code mapper} returned its default result, e.g. customers without billing info,
+     *                      usually with a shorter time to live, e.g. {@code negativeCache(ofMinutes(5), LongIdSet::longIdSet)}
+     * @return A mapper only querying the IDs neither in {@code cache} nor in {@code negativeCache}, see {@link CachingMapper}
+     */
+    static <ID, R, EX extends Throwable> CachingMapper<ID, R, EX> cached(Mapper<ID, R, EX> mapper, Cache<ID, R> cache, NegativeCache<ID> negativeCache) {
+        return new CachingMapper<>(mapper, cache, negativeCache);
+    }
+
+    /**
+     * @param mapper          The mapper to decorate
+     * @param cache           Results cached per ID along with the time they were loaded, e.g. {@code lruCache(10_000)}
+     * @param softTtl         Age after which a cached result is still served but refreshed in the background
+     * @param hardTtl         Age after which a cached result is no longer served and is loaded again before the assembly proceeds
+     * @param refreshExecutor Executes the batched background refreshes
+     * @return A mapper with a refresh-ahead caching policy, see {@link RefreshAheadMapper}
+     */
+    static <ID, R, EX extends Throwable> RefreshAheadMapper<ID, R, EX> refreshAhead(Mapper<ID, R, EX> mapper,
+                                                                                    Cache<ID, Timestamped<R>> cache,
+                                                                                    Duration softTtl,
+                                                                                    Duration hardTtl,
+                                                                                    Executor refreshExecutor) {
+        return refreshAhead(mapper, cache, softTtl, hardTtl, refreshExecutor, e -> {});
+    }
+
+    /**
+     * @param refreshErrorHandler Receives the failures of the background refreshes, including a refresh rejected by
+     *                            {@code refreshExecutor}, e.g. to log them or count them in a metric
+     * @see #refreshAhead(Mapper, Cache, Duration, Duration, Executor)
+     */
+    static <ID, R, EX extends Throwable> RefreshAheadMapper<ID, R, EX> refreshAhead(Mapper<ID, R, EX> mapper,
+                                                                                    Cache<ID, Timestamped<R>> cache,
+                                                                                    Duration softTtl,
+                                                                                    Duration hardTtl,
+                                                                                    Executor refreshExecutor,
+                                                                                    Consumer<? super Throwable> refreshErrorHandler) {
+        return new RefreshAheadMapper<>(mapper, cache, softTtl, hardTtl, refreshExecutor, refreshErrorHandler);
+    }
+
+    /**
+     * @param mapper                    The mapper loading the IDs not in {@code cache}
+     * @param revalidationQueryFunction Receives the version of each expired cached result, and only returns
+     *                                  the results whose version changed
+     * @param idExtractor               The ID of a result returned by {@code revalidationQueryFunction}
+     * @param versionExtractor          The version of a result, e.g. {@code BillingInfo::getVersion}
+     * @param cache                     Results cached per ID along with the time they were loaded or last revalidated
+     * @param ttl                       Age after which a cached result is revalidated
+     * @return A mapper revalidating expired results instead of querying them again, see {@link VersionedMapper}
+     */
+    static <ID, R, V, RC extends Collection<R>, EX extends Throwable> VersionedMapper<ID, R, V, EX> versioned(
+            Mapper<ID, R, EX> mapper,
+            CheckedFunction1<Map<ID, V>, RC, EX> revalidationQueryFunction,
+            Function<R, ID> idExtractor,
+            Function<? super R, ? extends V> versionExtractor,
+            Cache<ID, Timestamped<R>> cache,
+            Duration ttl) {
+        return new VersionedMapper<>(mapper, revalidationQueryFunction, idExtractor, versionExtractor, cache, ttl);
+    }
+
+    /**
+     * @param queryFunction Loads the whole reference data table, e.g. all the currencies
+     * @param idExtractor   The ID of a row returned by {@code queryFunction}
+     * @return A mapper looking up an immutable snapshot of the table loaded by the first assembly, refreshed
+     * by {@link ReferenceDataMapper#refresh()} or change events, see {@link ReferenceDataMapper}
+     */
+    static <ID, R, RC extends Collection<R>, EX extends Throwable> ReferenceDataMapper<ID, R, EX> referenceData(
+            CheckedSupplier<RC, EX> queryFunction,
+            Function<R, ID> idExtractor) {
+        return referenceData(queryFunction, idExtractor, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param reloadExecutor Executes the reloads of the table triggered by invalidations, the current snapshot
+     *                       being served until the reload completes
+     * @see #referenceData(CheckedSupplier, Function)
+     */
+    static <ID, R, RC extends Collection<R>, EX extends Throwable> ReferenceDataMapper<ID, R, EX> referenceData(
+            CheckedSupplier<RC, EX> queryFunction,
+            Function<R, ID> idExtractor,
+            Executor reloadExecutor) {
+        return referenceData(queryFunction, idExtractor, reloadExecutor, e -> {});
+    }
+
+    /**
+     * @param reloadExecutor      Executes the reloads of the table triggered by invalidations
+     * @param refreshErrorHandler Receives the failures of the background reloads, including a reload rejected by
+     *                            {@code reloadExecutor}, e.g. to log them or count them in a metric
+     * @see #referenceData(CheckedSupplier, Function, Executor)
+     */
+    static <ID, R, RC extends Collection<R>, EX extends Throwable> ReferenceDataMapper<ID, R, EX> referenceData(
+            CheckedSupplier<RC, EX> queryFunction,
+            Function<R, ID> idExtractor,
+            Executor reloadExecutor,
+            Consumer<? super Throwable> refreshErrorHandler) {
+        return new ReferenceDataMapper<>(queryFunction, idExtractor, id -> null, reloadExecutor, refreshErrorHandler);
+    }
+
+    static <ID, R, RC extends Collection<R>, EX extends Throwable> ReferenceDataMapper<ID, R, EX> referenceData(
+            CheckedSupplier<RC, EX> queryFunction,
+            Function<R, ID> idExtractor,
+            Duration refreshPeriod,
+            ScheduledExecutorService scheduler) {
+        return referenceData(queryFunction, idExtractor, id -> null, refreshPeriod, scheduler);
+    }
+
+    /**
+     * @param queryFunction         Loads the whole reference data table, e.g. all the currencies
+     * @param idExtractor           The ID of a row returned by {@code queryFunction}
+     * @param defaultResultProvider The result of the IDs not in the table
+     * @param refreshPeriod         Delay between the end of a scheduled reload of the table and the start of the next one
+     * @param scheduler             Executes the scheduled reloads until {@link ReferenceDataMapper#close()}, and the
+     *                              reloads triggered by invalidations
+     * @return A mapper looking up an immutable snapshot of the table, reloaded in the background and swapped
+     * atomically, see {@link ReferenceDataMapper}
+     */
+    static <ID, R, RC extends Collection<R>, EX extends Throwable> ReferenceDataMapper<ID, R, EX> referenceData(
+            CheckedSupplier<RC, EX> queryFunction,
+            Function<R, ID> idExtractor,
+            Function<ID, R> defaultResultProvider,
+            Duration refreshPeriod,
+            ScheduledExecutorService scheduler) {
+        return referenceData(queryFunction, idExtractor, defaultResultProvider, refreshPeriod, scheduler, e -> {});
+    }
+
+    /**
+     * @param refreshErrorHandler Receives the failures of the scheduled and background reloads, including a reload
+     *                            rejected by {@code scheduler}, e.g. to log them or count them in a metric
+     * @see #referenceData(CheckedSupplier, Function, Function, Duration, ScheduledExecutorService)
+     */
+    static <ID, R, RC extends Collection<R>, EX extends Throwable> ReferenceDataMapper<ID, R, EX> referenceData(
+            CheckedSupplier<RC, EX> queryFunction,
+            Function<R, ID> idExtractor,
+            Function<ID, R> defaultResultProvider,
+            Duration refreshPeriod,
+            ScheduledExecutorService scheduler,
+            Consumer<? super Throwable> refreshErrorHandler) {
+        return new ReferenceDataMapper<>(queryFunction, idExtractor, defaultResultProvider, scheduler, refreshErrorHandler)
+                .scheduleRefresh(refreshPeriod, scheduler);
+    }
+
+    /**
+     * @param mapper The mapper to decorate
+     * @return A mapper converting the results of {@code mapper} into compact immutable maps, to be used
+     * for results retained for a long time, e.g. {@code cached(frozen(oneToManyAsList(...)))}, see {@link FrozenMap#freeze(Map)}
+     */
+    static <ID, R, EX extends Throwable> Mapper<ID, R, EX> frozen(Mapper<ID, R, EX> mapper) {
+        return decorate(mapper, delegate -> (entityIds, context) -> {
+            Map<ID, R> results = delegate.apply(entityIds, context);
+            return results instanceof PositionalResult ? results : freeze(results);
+        });
+    }
+
+    static <ID, R, EX extends Throwable> BatchBisectingMapper<ID, R, EX> batchBisecting(Mapper<ID, R, EX> mapper) {
+        return batchBisecting(mapper, e -> true);
+    }
+
+    static <ID, R, EX extends Throwable> BatchBisectingMapper<ID, R, EX> batchBisecting(Mapper<ID, R, EX> mapper, Predicate<Throwable> isBisectable) {
+        return batchBisecting(mapper, isBisectable, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param mapper       The mapper to decorate
+     * @param isBisectable Whether a failed batch should be bisected and retried, e.g. to only retry on
+     *                     "payload too large" errors, any other error is propagated to the caller
+     * @param maxBatchSize The initial maximum number of IDs passed to {@code mapper} in a single invocation,
+     *                     this maximum will then be lowered as batches fail because of their size
+     * @return A mapper that bisects failing batches of IDs, see {@link BatchBisectingMapper}
+     */
+    static <ID, R, EX extends Throwable> BatchBisectingMapper<ID, R, EX> batchBisecting(Mapper<ID, R, EX> mapper,
+                                                                                        Predicate<Throwable> isBisectable,
+                                                                                        int maxBatchSize) {
+        return new BatchBisectingMapper<>(mapper, isBisectable, maxBatchSize);
+    }
+
+    /**
+     * @param mapper      The mapper to decorate
+     * @param rateLimiter Shared by all mappers querying the same datasource, e.g. {@code rateLimiter(100)} for 100 requests per second
+     * @return A mapper acquiring a permit from {@code rateLimiter} before each invocation of {@code mapper}, see {@link RateLimitedMapper}
+     */
+    static <ID, R, EX extends Throwable> RateLimitedMapper<ID, R, EX> rateLimited(Mapper<ID, R, EX> mapper, RateLimiter rateLimiter) {
+        return new RateLimitedMapper<>(mapper, rateLimiter);
+    }
+
+    /**
+     * Allows the query of a mapper to depend on the {@link MapperContext} of the current assembly, e.g.
+     * <pre>
+     * {@code withContext(context -> oneToOne(ids -> getBillingInfos(ids, context.deadline().remaining()), BillingInfo::getCustomerId))}
+     * </pre>
+     *
+     * @param mapperFactory Creates the mapper to invoke for a given {@link MapperContext}, invoked with the context of
+     *                      each assembly (to {@link Mapper#reserve(MapperContext) reserve} and then to query), and with
+     *                      the empty context for the default results
+     * @return A mapper delegating to the mapper created by {@code mapperFactory} for each invocation
+     */
+    static <ID, R, EX extends Throwable> Mapper<ID, R, EX> withContext(Function<MapperContext, Mapper<ID, R, EX>> mapperFactory) {
+        requireNonNull(mapperFactory, "mapperFactory cannot be null");
+
+        return new ContextualMapper<>() {
+            @Override
+            public Map<ID, R> apply(Iterable<ID> entityIds, MapperContext context) throws EX {
+                return mapperFactory.apply(context).apply(entityIds, context);
+            }
+
+            @Override
+            public long reserve(MapperContext context) {
+                return mapperFactory.apply(context).reserve(context);
+            }
+
+            @Override
+            public Map<ID, R> applyReserved(Iterable<ID> entityIds, MapperContext context) throws EX {
+                return mapperFactory.apply(context).applyReserved(entityIds, context);
+            }
+
+            @Override
+            public R defaultResult(ID id) {
+                return mapperFactory.apply(mapperContext()).defaultResult(id);
+            }
+        };
     }
 
     static <ID, R, RC extends Collection<R>, EX extends Throwable> Mapper<ID, R, EX> oneToOne(
             CheckedFunction1<List<ID>, RC, EX> queryFunction,
             Function<R, ID> idExtractorFromQueryResults) {
 
-        return oneToOne(queryFunction, idExtractorFromQueryResults, id -> null, ArrayList::new, null);
+        return oneToOne(queryFunction, idExtractorFromQueryResults, id -> null, listView(), null);
     }
 
 //    static <ID, R, RC extends Collection<R>, EX extends Throwable> Mapper<ID, R, EX> oneToOne(
@@ -66,7 +323,7 @@ public interface MapperUtils {
             Function<R, ID> idExtractorFromQueryResults,
             Function<ID, R> defaultResultProvider) {
 
-        return oneToOne(queryFunction, idExtractorFromQueryResults, defaultResultProvider, ArrayList::new, null);
+        return oneToOne(queryFunction, idExtractorFromQueryResults, defaultResultProvider, listView(), null);
     }
 
     static <ID, R, RC extends Collection<R>, EX extends Throwable> Mapper<ID, R, EX> oneToOne(
@@ -75,7 +332,7 @@ public interface MapperUtils {
             Function<ID, R> defaultResultProvider,
             MapFactory<ID, R> mapFactory) {
 
-        return oneToOne(queryFunction, idExtractorFromQueryResults, defaultResultProvider, ArrayList::new, mapFactory);
+        return oneToOne(queryFunction, idExtractorFromQueryResults, defaultResultProvider, listView(), mapFactory);
     }
 
     static <ID, IDC extends Collection<ID>, R, RC extends Collection<R>, EX extends Throwable> Mapper<ID, R, EX> oneToOne(
@@ -96,14 +353,14 @@ public interface MapperUtils {
             MapFactory<ID, R> mapFactory) {
 
         return convertIdTypeMapperDelegate(entityIds ->
-                queryOneToOne((IDC) entityIds, queryFunction, idExtractorFromQueryResults, defaultResultProvider, mapFactory), idCollectionFactory);
+                queryOneToOne((IDC) entityIds, queryFunction, idExtractorFromQueryResults, defaultResultProvider, mapFactory), idCollectionFactory, defaultResultProvider);
     }
 
     static <ID, R, EX extends Throwable> Mapper<ID, List<R>, EX> oneToManyAsList(
             CheckedFunction1<List<ID>, List<R>, EX> queryFunction,
             Function<R, ID> idExtractorFromQueryResults) {
 
-        return oneToManyAsList(queryFunction, idExtractorFromQueryResults, ArrayList::new, null);
+        return oneToManyAsList(queryFunction, idExtractorFromQueryResults, listView(), null);
     }
 
     static <ID, R, EX extends Throwable> Mapper<ID, List<R>, EX> oneToManyAsList(
@@ -111,7 +368,7 @@ public interface MapperUtils {
             Function<R, ID> idExtractorFromQueryResults,
             MapFactory<ID, List<R>> mapFactory) {
 
-        return oneToManyAsList(queryFunction, idExtractorFromQueryResults, ArrayList::new, mapFactory);
+        return oneToManyAsList(queryFunction, idExtractorFromQueryResults, listView(), mapFactory);
     }
 
     static <ID, IDC extends Collection<ID>, R, EX extends Throwable> Mapper<ID, List<R>, EX> oneToManyAsList(
@@ -119,23 +376,32 @@ public interface MapperUtils {
             Function<R, ID> idExtractorFromQueryResults,
             Supplier<IDC> idCollectionFactory) {
 
-        return oneToMany(queryFunction, idExtractorFromQueryResults, ArrayList::new, idCollectionFactory);
+        return oneToManyAsList(queryFunction, idExtractorFromQueryResults, idCollectionFactory, null);
     }
 
+    /**
+     * @param mapFactory e.g. {@link MapFactory#compactListMapFactory()} to store all the results in a single array
+     */
+    @SuppressWarnings("unchecked")
     static <ID, IDC extends Collection<ID>, R, EX extends Throwable> Mapper<ID, List<R>, EX> oneToManyAsList(
             CheckedFunction1<IDC, List<R>, EX> queryFunction,
             Function<R, ID> idExtractorFromQueryResults,
             Supplier<IDC> idCollectionFactory,
             MapFactory<ID, List<R>> mapFactory) {
 
-        return oneToMany(queryFunction, idExtractorFromQueryResults, ArrayList::new, idCollectionFactory, mapFactory);
+        // The average number of results per ID is learned across invocations to pre-size the list of each ID
+        FanOutEstimator fanOutEstimator = fanOutEstimator();
+
+        return convertIdTypeMapperDelegate(entityIds ->
+                        queryOneToManyAsList((IDC) entityIds, queryFunction, idExtractorFromQueryResults, mapFactory, fanOutEstimator),
+                idCollectionFactory, id -> new ArrayList<>());
     }
 
     static <ID, R, EX extends Throwable> Mapper<ID, Set<R>, EX> oneToManyAsSet(
             CheckedFunction1<Set<ID>, Set<R>, EX> queryFunction,
             Function<R, ID> idExtractorFromQueryResults) {
 
-        return oneToManyAsSet(queryFunction, idExtractorFromQueryResults, HashSet::new, null);
+        return oneToManyAsSet(queryFunction, idExtractorFromQueryResults, setView(), null);
     }
 
     static <ID, R, EX extends Throwable> Mapper<ID, Set<R>, EX> oneToManyAsSet(
@@ -143,7 +409,7 @@ public interface MapperUtils {
             Function<R, ID> idExtractorFromQueryResults,
             MapFactory<ID, Set<R>> mapFactory) {
 
-        return oneToManyAsSet(queryFunction, idExtractorFromQueryResults, HashSet::new, mapFactory);
+        return oneToManyAsSet(queryFunction, idExtractorFromQueryResults, setView(), mapFactory);
     }
 
     static <ID, IDC extends Collection<ID>, R, EX extends Throwable> Mapper<ID, Set<R>, EX> oneToManyAsSet(
@@ -151,16 +417,21 @@ public interface MapperUtils {
             Function<R, ID> idExtractorFromQueryResults,
             Supplier<IDC> idCollectionFactory) {
 
-        return oneToMany(queryFunction, idExtractorFromQueryResults, HashSet::new, idCollectionFactory);
+        return oneToManyAsSet(queryFunction, idExtractorFromQueryResults, idCollectionFactory, null);
     }
 
+    @SuppressWarnings("unchecked")
     static <ID, IDC extends Collection<ID>, R, EX extends Throwable> Mapper<ID, Set<R>, EX> oneToManyAsSet(
             CheckedFunction1<IDC, Set<R>, EX> queryFunction,
             Function<R, ID> idExtractorFromQueryResults,
             Supplier<IDC> idCollectionFactory,
             MapFactory<ID, Set<R>> mapFactory) {
 
-        return oneToMany(queryFunction, idExtractorFromQueryResults, HashSet::new, idCollectionFactory, mapFactory);
+        FanOutEstimator fanOutEstimator = fanOutEstimator();
+
+        return convertIdTypeMapperDelegate(entityIds ->
+                        queryOneToManyAsSet((IDC) entityIds, queryFunction, idExtractorFromQueryResults, mapFactory, fanOutEstimator),
+                idCollectionFactory, id -> new HashSet<>());
     }
 
     static <ID, R, RC extends Collection<R>, EX extends Throwable> Mapper<ID, RC, EX> oneToMany(
@@ -168,7 +439,7 @@ public interface MapperUtils {
             Function<R, ID> idExtractorFromQueryResults,
             Supplier<RC> collectionFactory) {
 
-        return oneToMany(queryFunction, idExtractorFromQueryResults, collectionFactory, ArrayList::new);
+        return oneToMany(queryFunction, idExtractorFromQueryResults, collectionFactory, listView());
     }
 
     static <ID, IDC extends Collection<ID>, R, RC extends Collection<R>, EX extends Throwable> Mapper<ID, RC, EX> oneToMany(
@@ -189,18 +460,248 @@ public interface MapperUtils {
             MapFactory<ID, RC> mapFactory) {
 
         return convertIdTypeMapperDelegate(entityIds ->
-                queryOneToMany((IDC) entityIds, queryFunction, idExtractorFromQueryResults, collectionFactory, mapFactory), idCollectionFactory);
+                queryOneToMany((IDC) entityIds, queryFunction, idExtractorFromQueryResults, collectionFactory, mapFactory), idCollectionFactory, id -> collectionFactory.get());
+    }
+
+    static <ID, R, RC extends Collection<R>, EX extends Throwable> Mapper<ID, double[], EX> oneToManyAsDoubleArray(
+            CheckedFunction1<List<ID>, RC, EX> queryFunction,
+            Function<R, ID> idExtractorFromQueryResults,
+            ToDoubleFunction<? super R> valueExtractor) {
+
+        return oneToManyAsDoubleArray(queryFunction, idExtractorFromQueryResults, valueExtractor, listView(), null);
+    }
+
+    /**
+     * One-to-many mapper keeping only a numeric attribute of each result, e.g. the prices of the order items of each customer:
+     * <pre>
+     * {@code oneToManyAsDoubleArray(this::getAllOrders, OrderItem::getCustomerId, OrderItem::getPrice)}
+     * </pre>
+     * the values are extracted while streaming the results into a {@code double[]} per ID, no {@code List<Double>}
+     * nor boxed value is ever created, IDs without results are mapped to an empty array.
+     *
+     * @param valueExtractor Extracts the value to keep from each result
+     */
+    @SuppressWarnings("unchecked")
+    static <ID, IDC extends Collection<ID>, R, RC extends Collection<R>, EX extends Throwable> Mapper<ID, double[], EX> oneToManyAsDoubleArray(
+            CheckedFunction1<IDC, RC, EX> queryFunction,
+            Function<R, ID> idExtractorFromQueryResults,
+            ToDoubleFunction<? super R> valueExtractor,
+            Supplier<IDC> idCollectionFactory,
+            MapFactory<ID, double[]> mapFactory) {
+
+        return convertIdTypeMapperDelegate(entityIds ->
+                        queryOneToManyAsDoubleArray((IDC) entityIds, queryFunction, idExtractorFromQueryResults, valueExtractor, mapFactory),
+                idCollectionFactory, id -> EMPTY_DOUBLE_ARRAY);
+    }
+
+    static <ID, R, RC extends Collection<R>, EX extends Throwable> Mapper<ID, long[], EX> oneToManyAsLongArray(
+            CheckedFunction1<List<ID>, RC, EX> queryFunction,
+            Function<R, ID> idExtractorFromQueryResults,
+            ToLongFunction<? super R> valueExtractor) {
+
+        return oneToManyAsLongArray(queryFunction, idExtractorFromQueryResults, valueExtractor, listView(), null);
+    }
+
+    /**
+     * @see #oneToManyAsDoubleArray(CheckedFunction1, Function, ToDoubleFunction, Supplier, MapFactory)
+     */
+    @SuppressWarnings("unchecked")
+    static <ID, IDC extends Collection<ID>, R, RC extends Collection<R>, EX extends Throwable> Mapper<ID, long[], EX> oneToManyAsLongArray(
+            CheckedFunction1<IDC, RC, EX> queryFunction,
+            Function<R, ID> idExtractorFromQueryResults,
+            ToLongFunction<? super R> valueExtractor,
+            Supplier<IDC> idCollectionFactory,
+            MapFactory<ID, long[]> mapFactory) {
+
+        return convertIdTypeMapperDelegate(entityIds ->
+                        queryOneToManyAsLongArray((IDC) entityIds, queryFunction, idExtractorFromQueryResults, valueExtractor, mapFactory),
+                idCollectionFactory, id -> EMPTY_LONG_ARRAY);
+    }
+
+    static <ID, R, RC extends Collection<R>, EX extends Throwable> Mapper<ID, int[], EX> oneToManyAsIntArray(
+            CheckedFunction1<List<ID>, RC, EX> queryFunction,
+            Function<R, ID> idExtractorFromQueryResults,
+            ToIntFunction<? super R> valueExtractor) {
+
+        return oneToManyAsIntArray(queryFunction, idExtractorFromQueryResults, valueExtractor, listView(), null);
+    }
+
+    /**
+     * @see #oneToManyAsDoubleArray(CheckedFunction1, Function, ToDoubleFunction, Supplier, MapFactory)
+     */
+    @SuppressWarnings("unchecked")
+    static <ID, IDC extends Collection<ID>, R, RC extends Collection<R>, EX extends Throwable> Mapper<ID, int[], EX> oneToManyAsIntArray(
+            CheckedFunction1<IDC, RC, EX> queryFunction,
+            Function<R, ID> idExtractorFromQueryResults,
+            ToIntFunction<? super R> valueExtractor,
+            Supplier<IDC> idCollectionFactory,
+            MapFactory<ID, int[]> mapFactory) {
+
+        return convertIdTypeMapperDelegate(entityIds ->
+                        queryOneToManyAsIntArray((IDC) entityIds, queryFunction, idExtractorFromQueryResults, valueExtractor, mapFactory),
+                idCollectionFactory, id -> EMPTY_INT_ARRAY);
+    }
+
+    static <ID, R, RC extends Collection<R>, EX extends Throwable> PositionalMapper<ID, R, EX> positionalOneToOne(
+            CheckedFunction1<List<ID>, RC, EX> queryFunction,
+            Function<R, ID> idExtractorFromQueryResults) {
+
+        return positionalOneToOne(queryFunction, idExtractorFromQueryResults, id -> null);
+    }
+
+    /**
+     * Same as {@link #oneToOne(CheckedFunction1, Function, Function)} but returning a {@link PositionalMapper},
+     * the results are joined by position with the top level entities instead of through a {@code Map}
+     */
+    static <ID, R, RC extends Collection<R>, EX extends Throwable> PositionalMapper<ID, R, EX> positionalOneToOne(
+            CheckedFunction1<List<ID>, RC, EX> queryFunction,
+            Function<R, ID> idExtractorFromQueryResults,
+            Function<ID, R> defaultResultProvider) {
+
+        return positionalDelegate((entityIds, results, context) ->
+                queryOneToOnePositional(entityIds, results, queryFunction, idExtractorFromQueryResults, defaultResultProvider), defaultResultProvider);
+    }
+
+    /**
+     * Same as {@link #oneToManyAsList(CheckedFunction1, Function)} but returning a {@link PositionalMapper},
+     * the results are joined by position with the top level entities instead of through a {@code Map}
+     */
+    static <ID, R, EX extends Throwable> PositionalMapper<ID, List<R>, EX> positionalOneToManyAsList(
+            CheckedFunction1<List<ID>, List<R>, EX> queryFunction,
+            Function<R, ID> idExtractorFromQueryResults) {
+
+        FanOutEstimator fanOutEstimator = fanOutEstimator();
+
+        return positionalDelegate((entityIds, results, context) ->
+                queryOneToManyPositional(entityIds, results, queryFunction, idExtractorFromQueryResults, ArrayList::new, fanOutEstimator), id -> new ArrayList<>());
+    }
+
+    static <ID, R, RI extends Iterable<R>, EX extends Throwable> PositionalMapper<ID, R, EX> sortMergeOneToOne(
+            CheckedFunction1<List<ID>, RI, EX> queryFunction,
+            Function<R, ID> idExtractorFromQueryResults,
+            Comparator<? super ID> idComparator) {
+
+        return sortMergeOneToOne(queryFunction, idExtractorFromQueryResults, idComparator, id -> null);
+    }
+
+    /**
+     * Sort-merge join for query functions returning their results ordered by ID, e.g. {@code ORDER BY customer_id}:
+     * the query function receives the IDs sorted by {@code idComparator}, and its results are merged in order
+     * with those IDs without building any {@code Map<ID, R>}, results can then be streamed from the datasource
+     * (e.g. {@code ids -> closing(repository.streamByCustomerIds(ids))}), the results being closed once merged when they
+     * are {@link AutoCloseable}
+     *
+     * @param idComparator The order of the IDs in the results of {@code queryFunction}, e.g. {@code Comparator.naturalOrder()},
+     *                     the sort of the IDs is shared by all mappers of an assembly using the same comparator instance
+     */
+    static <ID, R, RI extends Iterable<R>, EX extends Throwable> PositionalMapper<ID, R, EX> sortMergeOneToOne(
+            CheckedFunction1<List<ID>, RI, EX> queryFunction,
+            Function<R, ID> idExtractorFromQueryResults,
+            Comparator<? super ID> idComparator,
+            Function<ID, R> defaultResultProvider) {
+
+        requireNonNull(idComparator, "idComparator cannot be null");
+
+        return positionalDelegate((entityIds, results, context) ->
+                queryOneToOneSortMerge(entityIds, results, queryFunction, idExtractorFromQueryResults, idComparator, defaultResultProvider), defaultResultProvider);
+    }
+
+    /**
+     * One-to-many counterpart of {@link #sortMergeOneToOne(CheckedFunction1, Function, Comparator, Function)}
+     */
+    static <ID, R, RI extends Iterable<R>, EX extends Throwable> PositionalMapper<ID, List<R>, EX> sortMergeOneToManyAsList(
+            CheckedFunction1<List<ID>, RI, EX> queryFunction,
+            Function<R, ID> idExtractorFromQueryResults,
+            Comparator<? super ID> idComparator) {
+
+        requireNonNull(idComparator, "idComparator cannot be null");
+        FanOutEstimator fanOutEstimator = fanOutEstimator();
+
+        return positionalDelegate((entityIds, results, context) ->
+                queryOneToManySortMerge(entityIds, results, queryFunction, idExtractorFromQueryResults, idComparator, ArrayList::new, fanOutEstimator), id -> new ArrayList<>());
+    }
+
+    /**
+     * @param results Results ordered by ID streamed from the datasource, e.g. {@code repository.streamByCustomerIdIn(ids)}
+     * @return The results to return from the query function of a sort-merge mapper, the stream being closed once merged,
+     * see {@link #sortMergeOneToOne(CheckedFunction1, Function, Comparator, Function)}
+     */
+    static <R> Iterable<R> closing(Stream<R> results) {
+        return new StreamResults<>(results);
     }
 
     private static <ID, IDC extends Collection<ID>, R, EX extends Throwable> Mapper<ID, R, EX> convertIdTypeMapperDelegate(
-            Mapper<ID, R, EX> mapper, Supplier<IDC> idCollectionFactory) {
+            Mapper<ID, R, EX> mapper, Supplier<IDC> idCollectionFactory, Function<ID, R> defaultResultProvider) {
+
+        return new Mapper<>() {
+            @Override
+            public Map<ID, R> apply(Iterable<ID> entityIds) throws EX {
+                return mapper.apply(refineEntityIDType(entityIds, idCollectionFactory));
+            }
+
+            @Override
+            public R defaultResult(ID id) {
+                return defaultResultProvider != null ? defaultResultProvider.apply(id) : null;
+            }
+        };
+    }
+
+    private static <ID, R, EX extends Throwable> PositionalMapper<ID, R, EX> positionalDelegate(
+            PositionalMapper<ID, R, EX> mapper, Function<ID, R> defaultResultProvider) {
+
+        return new PositionalMapper<>() {
+            @Override
+            public void apply(IdList<ID> entityIds, Object[] results, MapperContext context) throws EX {
+                mapper.apply(entityIds, results, context);
+            }
+
+            @Override
+            public R defaultResult(ID id) {
+                return defaultResultProvider != null ? defaultResultProvider.apply(id) : null;
+            }
+        };
+    }
 
-        return entityIds -> mapper.apply(refineEntityIDType(entityIds, idCollectionFactory));
+    /**
+     * @param mapper     The mapper being decorated
+     * @param decoration Creates the decorated implementation, receiving the {@link MapperContext} of the current assembly,
+     *                   from the invocation of {@code mapper} to decorate, either {@link Mapper#apply(Iterable, MapperContext)}
+     *                   or {@link Mapper#applyReserved(Iterable, MapperContext)}
+     * @return A mapper invoking the decorated implementation while still exposing the reservation and the default results of {@code mapper}
+     */
+    private static <ID, R, EX extends Throwable> Mapper<ID, R, EX> decorate(Mapper<ID, R, EX> mapper,
+                                                                           Function<ContextualMapper<ID, R, EX>, ContextualMapper<ID, R, EX>> decoration) {
+        ContextualMapper<ID, R, EX> decorator = decoration.apply(mapper::apply);
+        ContextualMapper<ID, R, EX> reservedDecorator = decoration.apply(mapper::applyReserved);
+
+        return new ContextualMapper<>() {
+            @Override
+            public Map<ID, R> apply(Iterable<ID> entityIds, MapperContext context) throws EX {
+                return decorator.apply(entityIds, context);
+            }
+
+            @Override
+            public long reserve(MapperContext context) {
+                return mapper.reserve(context);
+            }
+
+            @Override
+            public Map<ID, R> applyReserved(Iterable<ID> entityIds, MapperContext context) throws EX {
+                return reservedDecorator.apply(entityIds, context);
+            }
+
+            @Override
+            public R defaultResult(ID id) {
+                return mapper.defaultResult(id);
+            }
+        };
     }
 
     private static <ID, IDC extends Collection<ID>> IDC refineEntityIDType(Iterable<ID> entityIds, Supplier<IDC> idCollectionFactory) {
 
-        return stream(entityIds.spliterator(), false)
-                .collect(toCollection(idCollectionFactory));
+        // Zero copy when the IDs are the IdList shared by all mappers of an assembly
+        // and the query function accepts any List or Set, a copy doesn't keep the equivalence of the IdList,
+        // the query then correlates the results with the equivalence of its MapFactory instead
+        return toIdCollection(entityIds, idCollectionFactory);
     }
 }
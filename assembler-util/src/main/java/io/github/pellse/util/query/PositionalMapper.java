@@ -0,0 +1,54 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.query;
+
+import io.github.pellse.util.collection.IdList;
+
+import static io.github.pellse.util.collection.IdList.idList;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static io.github.pellse.util.query.PositionalResult.positionalResult;
+
+/**
+ * {@link Mapper} writing its results in an array aligned to the positions of the distinct IDs it receives,
+ * instead of building a {@code Map<ID, R>}. The assembler then joins each top level entity with its results
+ * by position (an array walk) rather than by a hash lookup per mapper, which pays off for large batches.
+ */
+@FunctionalInterface
+public interface PositionalMapper<ID, R, EX extends Throwable> extends Mapper<ID, R, EX> {
+
+    /**
+     * @param entityIds The distinct IDs to map, the position of each ID in that list is its slot in {@code results}
+     * @param results   The array to fill, of size {@code entityIds.size()}: {@code results[i]} is the result
+     *                  for {@code entityIds.get(i)}, including the default result of IDs with no result
+     * @param context   The context of the current assembly
+     */
+    void apply(IdList<ID> entityIds, Object[] results, MapperContext context) throws EX;
+
+    @Override
+    default PositionalResult<ID, R> apply(Iterable<ID> entityIds) throws EX {
+        return apply(entityIds, mapperContext());
+    }
+
+    @Override
+    default PositionalResult<ID, R> apply(Iterable<ID> entityIds, MapperContext context) throws EX {
+        IdList<ID> ids = idList(entityIds);
+        Object[] results = new Object[ids.size()];
+
+        apply(ids, results, context);
+        return positionalResult(ids, results);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.query;
+
+import io.github.pellse.util.collection.IdList;
+
+import java.util.*;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Immutable results of a {@link PositionalMapper}, stored in an array aligned to the positions of the IDs
+ * of an {@link IdList}, i.e. {@code resultAt(i)} is the result associated with {@code ids().get(i)}.
+ * <p>
+ * Exposed as a {@link Map} so that it can flow through the existing mapper decorators and assembler adapters,
+ * while the assembler can read {@link #resultAt(int)} directly from the position of each top level entity
+ * instead of performing a hash lookup.
+ *
+ * @param <ID> Type of the ids
+ * @param <R>  Type of the results
+ */
+public final class PositionalResult<ID, R> extends AbstractMap<ID, R> {
+
+    private final IdList<ID> ids;
+    private final Object[] results;
+
+    private Set<Entry<ID, R>> entrySet;
+
+    private PositionalResult(IdList<ID> ids, Object[] results) {
+        this.ids = requireNonNull(ids, "ids cannot be null");
+        this.results = requireNonNull(results, "results cannot be null");
+
+        if (results.length != ids.size()) {
+            throw new IllegalArgumentException("results length (" + results.length + ") must match the number of ids (" + ids.size() + ")");
+        }
+    }
+
+    public IdList<ID> ids() {
+        return ids;
+    }
+
+    @SuppressWarnings("unchecked")
+    public R resultAt(int position) {
+        return (R) results[position];
+    }
+
+    @Override
+    public int size() {
+        return results.length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return ids.contains(key);
+    }
+
+    @Override
+    public R get(Object key) {
+        int position = ids.indexOf(key);
+        return position >= 0 ? resultAt(position) : null;
+    }
+
+    @Override
+    public Set<Entry<ID, R>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<ID, R>> iterator() {
+                    return new Iterator<>() {
+                        private int position;
+
+                        @Override
+                        public boolean hasNext() {
+                            return position < results.length;
+                        }
+
+                        @Override
+                        public Entry<ID, R> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            int i = position++;
+                            return new SimpleImmutableEntry<>(ids.get(i), resultAt(i));
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return results.length;
+                }
+            };
+        }
+        return entrySet;
+    }
+
+    /**
+     * @param ids     The distinct IDs passed to a {@link PositionalMapper}
+     * @param results The results aligned to the positions of {@code ids}, not copied
+     */
+    public static <ID, R> PositionalResult<ID, R> positionalResult(IdList<ID> ids, Object[] results) {
+        return new PositionalResult<>(ids, results);
+    }
+}
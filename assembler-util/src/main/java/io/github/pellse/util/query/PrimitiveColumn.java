@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.query;
+
+import java.util.Arrays;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Growable column of primitive values extracted from query results, so that one-to-many numeric results
+ * can be collected into a {@code double[]}, {@code long[]} or {@code int[]} per ID without boxing.
+ *
+ * @param <R> Type of the query results
+ * @param <A> Type of the primitive array, e.g. {@code double[]}
+ */
+abstract class PrimitiveColumn<R, A> {
+
+    static final double[] EMPTY_DOUBLE_ARRAY = new double[0];
+    static final long[] EMPTY_LONG_ARRAY = new long[0];
+    static final int[] EMPTY_INT_ARRAY = new int[0];
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    int size;
+
+    abstract void add(R result);
+
+    /**
+     * @return A new array of the values at {@code indexes[from]} to {@code indexes[to - 1]}
+     */
+    abstract A gather(int[] indexes, int from, int to);
+
+    abstract A empty();
+
+    static <R> PrimitiveColumn<R, double[]> doubleColumn(ToDoubleFunction<? super R> valueExtractor) {
+        requireNonNull(valueExtractor, "valueExtractor cannot be null");
+
+        return new PrimitiveColumn<>() {
+            private double[] values = new double[INITIAL_CAPACITY];
+
+            @Override
+            void add(R result) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size << 1);
+                }
+                values[size++] = valueExtractor.applyAsDouble(result);
+            }
+
+            @Override
+            double[] gather(int[] indexes, int from, int to) {
+                double[] array = new double[to - from];
+                for (int i = from; i < to; i++) {
+                    array[i - from] = values[indexes[i]];
+                }
+                return array;
+            }
+
+            @Override
+            double[] empty() {
+                return EMPTY_DOUBLE_ARRAY;
+            }
+        };
+    }
+
+    static <R> PrimitiveColumn<R, long[]> longColumn(ToLongFunction<? super R> valueExtractor) {
+        requireNonNull(valueExtractor, "valueExtractor cannot be null");
+
+        return new PrimitiveColumn<>() {
+            private long[] values = new long[INITIAL_CAPACITY];
+
+            @Override
+            void add(R result) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size << 1);
+                }
+                values[size++] = valueExtractor.applyAsLong(result);
+            }
+
+            @Override
+            long[] gather(int[] indexes, int from, int to) {
+                long[] array = new long[to - from];
+                for (int i = from; i < to; i++) {
+                    array[i - from] = values[indexes[i]];
+                }
+                return array;
+            }
+
+            @Override
+            long[] empty() {
+                return EMPTY_LONG_ARRAY;
+            }
+        };
+    }
+
+    static <R> PrimitiveColumn<R, int[]> intColumn(ToIntFunction<? super R> valueExtractor) {
+        requireNonNull(valueExtractor, "valueExtractor cannot be null");
+
+        return new PrimitiveColumn<>() {
+            private int[] values = new int[INITIAL_CAPACITY];
+
+            @Override
+            void add(R result) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size << 1);
+                }
+                values[size++] = valueExtractor.applyAsInt(result);
+            }
+
+            @Override
+            int[] gather(int[] indexes, int from, int to) {
+                int[] array = new int[to - from];
+                for (int i = from; i < to; i++) {
+                    array[i - from] = values[indexes[i]];
+                }
+                return array;
+            }
+
+            @Override
+            int[] empty() {
+                return EMPTY_INT_ARRAY;
+            }
+        };
+    }
+}
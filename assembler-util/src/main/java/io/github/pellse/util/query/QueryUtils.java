@@ -16,19 +16,41 @@
 
 package io.github.pellse.util.query;
 
+import io.github.pellse.util.collection.Equivalence;
+import io.github.pellse.util.collection.IdList;
+import io.github.pellse.util.collection.IdList.SortedView;
+import io.github.pellse.util.collection.KeyIndex;
+import io.github.pellse.util.collection.LongIdSet;
 import io.github.pellse.util.function.checked.CheckedFunction1;
+import io.github.pellse.util.query.MapFactory.CompactListMapFactory;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
 import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collector;
 import java.util.stream.Stream;
 
+import static io.github.pellse.util.ExceptionUtils.sneakyThrow;
 import static io.github.pellse.util.ObjectUtils.isSafeEqual;
+import static io.github.pellse.util.collection.CompactListMultimap.toCompactListMultimap;
+import static io.github.pellse.util.collection.IdList.idList;
+import static io.github.pellse.util.collection.KeyIndex.keyIndex;
 import static io.github.pellse.util.function.checked.CheckedPredicate1.not;
 import static io.github.pellse.util.function.checked.Unchecked.unchecked;
+import static io.github.pellse.util.query.FanOutEstimator.fanOutEstimator;
+import static io.github.pellse.util.query.MapFactory.MULTIPLIER;
 import static io.github.pellse.util.query.MapFactory.defaultMapFactory;
+import static io.github.pellse.util.query.PrimitiveColumn.doubleColumn;
+import static io.github.pellse.util.query.PrimitiveColumn.intColumn;
+import static io.github.pellse.util.query.PrimitiveColumn.longColumn;
+import static java.util.Collections.emptyIterator;
+import static java.util.Collections.emptyList;
 import static java.util.Objects.requireNonNull;
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.*;
@@ -68,7 +90,7 @@ public interface QueryUtils {
                              Function<ID, R> defaultResultProvider,
                              MapFactory<ID, R> mapFactory) throws EX {
 
-        return query(ids, queryFunction, defaultResultProvider, toMap(idExtractorFromQueryResults, identity(), (u1, u2) -> u1, toSupplier(ids, mapFactory)));
+        return queryFused(ids, queryFunction, idExtractorFromQueryResults, defaultResultProvider, mapFactory, identity(), null);
     }
 
     static <ID, R, IDC extends Collection<ID>, EX extends Throwable>
@@ -85,7 +107,20 @@ public interface QueryUtils {
                                           Function<R, ID> idExtractorFromQueryResults,
                                           MapFactory<ID, List<R>> mapFactory) throws EX {
 
-        return queryOneToMany(ids, queryFunction, idExtractorFromQueryResults, ArrayList::new, mapFactory);
+        return queryOneToManyAsList(ids, queryFunction, idExtractorFromQueryResults, mapFactory, fanOutEstimator());
+    }
+
+    static <ID, R, IDC extends Collection<ID>, EX extends Throwable>
+    Map<ID, List<R>> queryOneToManyAsList(IDC ids,
+                                          CheckedFunction1<IDC, List<R>, EX> queryFunction,
+                                          Function<R, ID> idExtractorFromQueryResults,
+                                          MapFactory<ID, List<R>> mapFactory,
+                                          FanOutEstimator fanOutEstimator) throws EX {
+
+        if (mapFactory instanceof CompactListMapFactory) {
+            return query(ids, queryFunction, id -> emptyList(), toCompactListMultimap(ids, idExtractorFromQueryResults, mapFactory.idEquivalence()));
+        }
+        return queryOneToMany(ids, queryFunction, idExtractorFromQueryResults, ArrayList::new, fanOutEstimator, mapFactory);
     }
 
     static <ID, R, IDC extends Collection<ID>, EX extends Throwable>
@@ -102,7 +137,18 @@ public interface QueryUtils {
                                         Function<R, ID> idExtractorFromQueryResults,
                                         MapFactory<ID, Set<R>> mapFactory) throws EX {
 
-        return queryOneToMany(ids, queryFunction, idExtractorFromQueryResults, HashSet::new, mapFactory);
+        return queryOneToManyAsSet(ids, queryFunction, idExtractorFromQueryResults, mapFactory, fanOutEstimator());
+    }
+
+    static <ID, R, IDC extends Collection<ID>, EX extends Throwable>
+    Map<ID, Set<R>> queryOneToManyAsSet(IDC ids,
+                                        CheckedFunction1<IDC, Set<R>, EX> queryFunction,
+                                        Function<R, ID> idExtractorFromQueryResults,
+                                        MapFactory<ID, Set<R>> mapFactory,
+                                        FanOutEstimator fanOutEstimator) throws EX {
+
+        return queryOneToMany(ids, queryFunction, idExtractorFromQueryResults,
+                size -> new HashSet<>((int) (size * MULTIPLIER) + 1), fanOutEstimator, mapFactory);
     }
 
     static <ID, R, IDC extends Collection<ID>, RC extends Collection<R>, EX extends Throwable>
@@ -121,8 +167,147 @@ public interface QueryUtils {
                                Supplier<RC> collectionFactory,
                                MapFactory<ID, RC> mapFactory) throws EX {
 
-        return query(ids, queryFunction, id -> collectionFactory.get(),
-                groupingBy(idExtractorFromQueryResults, toSupplier(ids, mapFactory), toCollection(collectionFactory)));
+        return queryOneToMany(ids, queryFunction, idExtractorFromQueryResults, size -> collectionFactory.get(), null, mapFactory);
+    }
+
+    /**
+     * @param collectionFactory Creates the collection of results of an ID, given its expected size
+     * @param fanOutEstimator   Learns the average number of results per ID, used to pre-size the collection of each ID,
+     *                          can be {@code null}
+     */
+    static <ID, R, IDC extends Collection<ID>, RC extends Collection<R>, EX extends Throwable>
+    Map<ID, RC> queryOneToMany(IDC ids,
+                               CheckedFunction1<IDC, RC, EX> queryFunction,
+                               Function<R, ID> idExtractorFromQueryResults,
+                               IntFunction<RC> collectionFactory,
+                               FanOutEstimator fanOutEstimator,
+                               MapFactory<ID, RC> mapFactory) throws EX {
+
+        int expectedFanOut = fanOutEstimator != null ? fanOutEstimator.expectedFanOut() : 0;
+        long[] resultCount = new long[1];
+
+        Map<ID, RC> resultMap = queryFused(ids, queryFunction, idExtractorFromQueryResults, id -> collectionFactory.apply(0), mapFactory,
+                result -> {
+                    resultCount[0]++;
+                    RC collection = collectionFactory.apply(expectedFanOut);
+                    collection.add(result);
+                    return collection;
+                },
+                (collection, result) -> {
+                    resultCount[0]++;
+                    collection.add(result);
+                });
+
+        if (fanOutEstimator != null) {
+            fanOutEstimator.record(resultMap.size(), resultCount[0]);
+        }
+        return resultMap;
+    }
+
+    /**
+     * @param valueExtractor Extracts the numeric value of each result while streaming the results, e.g. {@code OrderItem::getPrice},
+     *                       no boxed value nor intermediate collection is created per result
+     * @return A map of each ID to the values of its results in encounter order, an empty array for an ID without results
+     */
+    static <ID, R, IDC extends Collection<ID>, RC extends Collection<R>, EX extends Throwable>
+    Map<ID, double[]> queryOneToManyAsDoubleArray(IDC ids,
+                                                  CheckedFunction1<IDC, RC, EX> queryFunction,
+                                                  Function<R, ID> idExtractorFromQueryResults,
+                                                  ToDoubleFunction<? super R> valueExtractor,
+                                                  MapFactory<ID, double[]> mapFactory) throws EX {
+
+        return queryOneToManyAsArray(ids, queryFunction, idExtractorFromQueryResults, doubleColumn(valueExtractor), mapFactory);
+    }
+
+    /**
+     * @see #queryOneToManyAsDoubleArray(Collection, CheckedFunction1, Function, ToDoubleFunction, MapFactory)
+     */
+    static <ID, R, IDC extends Collection<ID>, RC extends Collection<R>, EX extends Throwable>
+    Map<ID, long[]> queryOneToManyAsLongArray(IDC ids,
+                                              CheckedFunction1<IDC, RC, EX> queryFunction,
+                                              Function<R, ID> idExtractorFromQueryResults,
+                                              ToLongFunction<? super R> valueExtractor,
+                                              MapFactory<ID, long[]> mapFactory) throws EX {
+
+        return queryOneToManyAsArray(ids, queryFunction, idExtractorFromQueryResults, longColumn(valueExtractor), mapFactory);
+    }
+
+    /**
+     * @see #queryOneToManyAsDoubleArray(Collection, CheckedFunction1, Function, ToDoubleFunction, MapFactory)
+     */
+    static <ID, R, IDC extends Collection<ID>, RC extends Collection<R>, EX extends Throwable>
+    Map<ID, int[]> queryOneToManyAsIntArray(IDC ids,
+                                            CheckedFunction1<IDC, RC, EX> queryFunction,
+                                            Function<R, ID> idExtractorFromQueryResults,
+                                            ToIntFunction<? super R> valueExtractor,
+                                            MapFactory<ID, int[]> mapFactory) throws EX {
+
+        return queryOneToManyAsArray(ids, queryFunction, idExtractorFromQueryResults, intColumn(valueExtractor), mapFactory);
+    }
+
+    /**
+     * The values are appended to a single primitive column along with the position of the ID of each result,
+     * a counting sort of those positions then gives the range of values of each ID, copied into an exactly sized array
+     */
+    private static <A, ID, R, IDC extends Collection<ID>, RC extends Collection<R>, EX extends Throwable>
+    Map<ID, A> queryOneToManyAsArray(IDC ids,
+                                     CheckedFunction1<IDC, RC, EX> queryFunction,
+                                     Function<R, ID> idExtractorFromQueryResults,
+                                     PrimitiveColumn<R, A> column,
+                                     MapFactory<ID, A> mapFactory) throws EX {
+
+        Equivalence<? super ID> idEquivalence = idEquivalenceOf(mapFactory);
+        List<ID> idPositions = idPositionsOf(ids, idEquivalence);
+        int idCount = idPositions.size();
+
+        KeyIndex<ID> unqueriedIds = null; // Results for IDs that were not queried, unusual but supported
+        int[] resultPositions = new int[16];
+
+        for (Iterator<? extends R> it = safeApply(ids, queryFunction).iterator(); it.hasNext(); ) {
+            R result = it.next();
+            ID id = idExtractorFromQueryResults.apply(result);
+
+            int position = idPositions.indexOf(id);
+            if (position < 0) {
+                unqueriedIds = unqueriedIds != null ? unqueriedIds : keyIndex(4, idEquivalence);
+                position = idCount + unqueriedIds.add(id);
+            }
+
+            if (column.size == resultPositions.length) {
+                resultPositions = Arrays.copyOf(resultPositions, column.size << 1);
+            }
+            resultPositions[column.size] = position;
+            column.add(result);
+        }
+
+        int positionCount = idCount + (unqueriedIds != null ? unqueriedIds.size() : 0);
+        int resultCount = column.size;
+
+        // Counting sort of the results by position, stable so the values of each ID stay in encounter order
+        int[] offsets = new int[positionCount + 1];
+        for (int i = 0; i < resultCount; i++) {
+            offsets[resultPositions[i] + 1]++;
+        }
+        for (int i = 0; i < positionCount; i++) {
+            offsets[i + 1] += offsets[i];
+        }
+
+        int[] sortedResults = new int[resultCount];
+        int[] next = Arrays.copyOf(offsets, positionCount);
+        for (int i = 0; i < resultCount; i++) {
+            sortedResults[next[resultPositions[i]]++] = i;
+        }
+
+        Map<ID, A> resultMap = toSupplier(ids, mapFactory).get();
+        Iterator<ID> idIterator = idPositions.iterator();
+        for (int position = 0; position < positionCount; position++) {
+            ID id = position < idCount ? idIterator.next() : unqueriedIds.keyAt(position - idCount);
+            int from = offsets[position], to = offsets[position + 1];
+
+            resultMap.put(id, from == to ? column.empty() : column.gather(sortedResults, from, to));
+        }
+
+        return resultMap;
     }
 
     /**
@@ -173,6 +358,322 @@ public interface QueryUtils {
         return resultMap;
     }
 
+    /**
+     * Single pass alternative to {@link #query(Collection, CheckedFunction1, Function, Collector)}: each distinct ID
+     * is given a position, results are accumulated in an array indexed by the position of their ID while a bitmap
+     * over those positions tracks the IDs already seen. A last pass over the positions then inserts each ID
+     * in the pre-sized result map exactly once, either with its accumulated value or its default result,
+     * without another lookup to find out which IDs are missing.
+     *
+     * @param valueFactory     Creates the value of an ID from its first result
+     * @param valueAccumulator Adds any subsequent result of an ID to its value, if {@code null} only the first result is kept
+     */
+    @SuppressWarnings("unchecked")
+    private static <V, ID, R, IDC extends Collection<ID>, RC extends Collection<R>, EX extends Throwable>
+    Map<ID, V> queryFused(IDC ids,
+                          CheckedFunction1<IDC, RC, EX> queryFunction,
+                          Function<R, ID> idExtractorFromQueryResults,
+                          Function<ID, V> defaultResultProvider,
+                          MapFactory<ID, V> mapFactory,
+                          Function<R, V> valueFactory,
+                          BiConsumer<V, R> valueAccumulator) throws EX {
+
+        List<ID> idPositions = idPositionsOf(ids, idEquivalenceOf(mapFactory));
+        Object[] values = new Object[idPositions.size()];
+        Map<ID, V> resultMap = toSupplier(ids, mapFactory).get();
+
+        queryByPosition(ids, idPositions, values, queryFunction, idExtractorFromQueryResults, defaultResultProvider, valueFactory, valueAccumulator,
+                (id, result) -> { // Result for an ID that was not queried, unusual but supported
+                    V value = resultMap.get(id);
+                    if (value == null && !resultMap.containsKey(id)) {
+                        resultMap.put(id, valueFactory.apply(result));
+                    } else if (valueAccumulator != null) {
+                        valueAccumulator.accept(value, result);
+                    }
+                });
+
+        // defaultResultProvider can provide a null value, which is still explicitly stored for that ID
+        Iterator<ID> idIterator = idPositions.iterator();
+        for (int position = 0; position < values.length; position++) {
+            resultMap.put(idIterator.next(), (V) values[position]);
+        }
+
+        return resultMap;
+    }
+
+    /**
+     * Positional variant of {@link #queryOneToOne(Collection, CheckedFunction1, Function, Function, MapFactory)}
+     * for a {@link PositionalMapper}, no {@code Map} is built: the result of each ID is written in {@code results}
+     * at the position of that ID, results for IDs that were not queried are ignored.
+     *
+     * @param results The array to fill, aligned to the positions of {@code ids}
+     */
+    static <ID, R, RC extends Collection<R>, EX extends Throwable>
+    void queryOneToOnePositional(IdList<ID> ids,
+                                 Object[] results,
+                                 CheckedFunction1<List<ID>, RC, EX> queryFunction,
+                                 Function<R, ID> idExtractorFromQueryResults,
+                                 Function<ID, R> defaultResultProvider) throws EX {
+
+        queryByPosition(ids, ids, results, queryFunction, idExtractorFromQueryResults, defaultResultProvider, identity(), null, null);
+    }
+
+    /**
+     * Positional variant of {@link #queryOneToMany(Collection, CheckedFunction1, Function, IntFunction, FanOutEstimator, MapFactory)}
+     * for a {@link PositionalMapper}, no {@code Map} is built: the collection of results of each ID is written
+     * in {@code results} at the position of that ID, results for IDs that were not queried are ignored.
+     *
+     * @param results The array to fill, aligned to the positions of {@code ids}
+     */
+    static <ID, R, RC extends Collection<R>, EX extends Throwable>
+    void queryOneToManyPositional(IdList<ID> ids,
+                                  Object[] results,
+                                  CheckedFunction1<List<ID>, RC, EX> queryFunction,
+                                  Function<R, ID> idExtractorFromQueryResults,
+                                  IntFunction<RC> collectionFactory,
+                                  FanOutEstimator fanOutEstimator) throws EX {
+
+        int expectedFanOut = fanOutEstimator != null ? fanOutEstimator.expectedFanOut() : 0;
+        long[] resultCount = new long[1];
+
+        queryByPosition(ids, ids, results, queryFunction, idExtractorFromQueryResults, id -> collectionFactory.apply(0),
+                result -> {
+                    resultCount[0]++;
+                    RC collection = collectionFactory.apply(expectedFanOut);
+                    collection.add(result);
+                    return collection;
+                },
+                (collection, result) -> {
+                    resultCount[0]++;
+                    collection.add(result);
+                },
+                null);
+
+        if (fanOutEstimator != null) {
+            fanOutEstimator.record(ids.size(), resultCount[0]);
+        }
+    }
+
+    /**
+     * Sort-merge variant of {@link #queryOneToOnePositional(IdList, Object[], CheckedFunction1, Function, Function)}
+     * for query functions returning their results ordered by ID (e.g. {@code ORDER BY customer_id}):
+     * the {@code queryFunction} receives the IDs sorted by {@code idComparator}, and its results are consumed
+     * as an ordered sequence merged with those sorted IDs, without any hash lookup or intermediate {@code Map}.
+     * Results (or their iterator) holding resources, e.g. {@link MapperUtils#closing(Stream)}, are closed once merged,
+     * including when the merge stops before the end of the results or fails.
+     *
+     * @param idComparator The order of the results returned by {@code queryFunction}
+     * @throws IllegalStateException If the results returned by {@code queryFunction} are not ordered by {@code idComparator}
+     */
+    static <ID, R, RI extends Iterable<R>, EX extends Throwable>
+    void queryOneToOneSortMerge(IdList<ID> ids,
+                                Object[] results,
+                                CheckedFunction1<List<ID>, RI, EX> queryFunction,
+                                Function<R, ID> idExtractorFromQueryResults,
+                                Comparator<? super ID> idComparator,
+                                Function<ID, R> defaultResultProvider) throws EX {
+
+        querySortMerge(ids, results, queryFunction, idExtractorFromQueryResults, idComparator, defaultResultProvider, identity(), null);
+    }
+
+    /**
+     * Sort-merge variant of {@link #queryOneToManyPositional(IdList, Object[], CheckedFunction1, Function, IntFunction, FanOutEstimator)},
+     * see {@link #queryOneToOneSortMerge(IdList, Object[], CheckedFunction1, Function, Comparator, Function)}
+     */
+    static <ID, R, RI extends Iterable<R>, RC extends Collection<R>, EX extends Throwable>
+    void queryOneToManySortMerge(IdList<ID> ids,
+                                 Object[] results,
+                                 CheckedFunction1<List<ID>, RI, EX> queryFunction,
+                                 Function<R, ID> idExtractorFromQueryResults,
+                                 Comparator<? super ID> idComparator,
+                                 IntFunction<RC> collectionFactory,
+                                 FanOutEstimator fanOutEstimator) throws EX {
+
+        int expectedFanOut = fanOutEstimator != null ? fanOutEstimator.expectedFanOut() : 0;
+        long resultCount = querySortMerge(ids, results, queryFunction, idExtractorFromQueryResults, idComparator, id -> collectionFactory.apply(0),
+                result -> {
+                    RC collection = collectionFactory.apply(expectedFanOut);
+                    collection.add(result);
+                    return collection;
+                },
+                Collection::add);
+
+        if (fanOutEstimator != null) {
+            fanOutEstimator.record(ids.size(), resultCount);
+        }
+    }
+
+    /**
+     * @return The number of results consumed, results for IDs that were not queried are skipped
+     */
+    private static <V, ID, R, RI extends Iterable<R>, EX extends Throwable>
+    long querySortMerge(IdList<ID> ids,
+                        Object[] values,
+                        CheckedFunction1<List<ID>, RI, EX> queryFunction,
+                        Function<R, ID> idExtractorFromQueryResults,
+                        Comparator<? super ID> idComparator,
+                        Function<ID, V> defaultResultProvider,
+                        Function<R, V> valueFactory,
+                        BiConsumer<V, R> valueAccumulator) throws EX {
+
+        requireNonNull(queryFunction, "queryFunction cannot be null");
+
+        SortedView<ID> sortedIds = ids.sortedBy(idComparator);
+        Function<ID, V> resultProvider = defaultResultProvider != null ? defaultResultProvider : id -> null;
+
+        RI queryResults = sortedIds.size() > 0 ? queryFunction.checkedApply(sortedIds) : null;
+        if (queryResults == null) {
+            return mergeSorted(sortedIds, values, emptyIterator(), idExtractorFromQueryResults, idComparator, resultProvider, valueFactory, valueAccumulator);
+        }
+
+        Iterator<R> resultIterator = null;
+        Throwable failure = null;
+        try {
+            resultIterator = queryResults.iterator();
+            return mergeSorted(sortedIds, values, resultIterator, idExtractorFromQueryResults, idComparator, resultProvider, valueFactory, valueAccumulator);
+        } catch (Throwable e) {
+            failure = e;
+            throw e;
+        } finally {
+            closeResults(queryResults, resultIterator, failure);
+        }
+    }
+
+    /**
+     * Merges the IDs with the results in a single pass over {@code resultIterator}, only the current result being held
+     */
+    @SuppressWarnings("unchecked")
+    private static <V, ID, R> long mergeSorted(SortedView<ID> sortedIds,
+                                               Object[] values,
+                                               Iterator<R> resultIterator,
+                                               Function<R, ID> idExtractorFromQueryResults,
+                                               Comparator<? super ID> idComparator,
+                                               Function<ID, V> resultProvider,
+                                               Function<R, V> valueFactory,
+                                               BiConsumer<V, R> valueAccumulator) {
+        int idCount = sortedIds.size();
+        int index = 0;
+        boolean matched = false;
+        long resultCount = 0;
+        ID previousResultId = null;
+
+        while (resultIterator.hasNext() && index < idCount) {
+            R result = resultIterator.next();
+            if (result == null) {
+                continue;
+            }
+
+            ID resultId = idExtractorFromQueryResults.apply(result);
+            if (resultCount++ > 0 && idComparator.compare(previousResultId, resultId) > 0) {
+                throw new IllegalStateException("Results must be ordered by ID, " + resultId + " returned after " + previousResultId);
+            }
+            previousResultId = resultId;
+
+            int cmp;
+            while ((cmp = idComparator.compare(sortedIds.get(index), resultId)) < 0) {
+                if (!matched) {
+                    values[sortedIds.positionAt(index)] = resultProvider.apply(sortedIds.get(index));
+                }
+                matched = false;
+                if (++index == idCount) {
+                    return resultCount;
+                }
+            }
+
+            if (cmp == 0) {
+                int position = sortedIds.positionAt(index);
+                if (!matched) {
+                    values[position] = valueFactory.apply(result);
+                    matched = true;
+                } else if (valueAccumulator != null) {
+                    valueAccumulator.accept((V) values[position], result);
+                }
+            }
+        }
+
+        for (; index < idCount; index++, matched = false) {
+            if (!matched) {
+                values[sortedIds.positionAt(index)] = resultProvider.apply(sortedIds.get(index));
+            }
+        }
+        return resultCount;
+    }
+
+    /**
+     * Closes the results of a query function and their iterator when they hold resources, e.g. a database cursor,
+     * a failure to close being added as suppressed to the {@code failure} of the merge, if any
+     */
+    private static void closeResults(Iterable<?> queryResults, Iterator<?> resultIterator, Throwable failure) {
+        Throwable closeFailure = close(resultIterator, failure);
+        if (queryResults != resultIterator) {
+            closeFailure = close(queryResults, closeFailure);
+        }
+
+        if (failure == null && closeFailure != null) {
+            sneakyThrow(closeFailure);
+        }
+    }
+
+    private static Throwable close(Object source, Throwable failure) {
+        if (!(source instanceof AutoCloseable)) {
+            return failure;
+        }
+
+        try {
+            ((AutoCloseable) source).close();
+        } catch (Exception e) {
+            if (failure == null) {
+                return e;
+            }
+            failure.addSuppressed(e);
+        }
+        return failure;
+    }
+
+    /**
+     * Fills {@code values} with the value of each ID at its position in {@code idPositions}, the default result
+     * of an ID being used when the {@code queryFunction} returned no result for that ID
+     *
+     * @param unqueriedResultConsumer Receives the results for IDs not in {@code idPositions}, can be {@code null}
+     */
+    @SuppressWarnings("unchecked")
+    private static <V, ID, R, IDC extends Collection<ID>, RC extends Collection<R>, EX extends Throwable>
+    void queryByPosition(IDC ids,
+                         List<ID> idPositions,
+                         Object[] values,
+                         CheckedFunction1<IDC, RC, EX> queryFunction,
+                         Function<R, ID> idExtractorFromQueryResults,
+                         Function<ID, V> defaultResultProvider,
+                         Function<R, V> valueFactory,
+                         BiConsumer<V, R> valueAccumulator,
+                         BiConsumer<ID, R> unqueriedResultConsumer) throws EX {
+
+        int idCount = idPositions.size();
+        BitSet seenIds = new BitSet(idCount);
+
+        safeApply(ids, queryFunction).forEach(result -> {
+            ID id = idExtractorFromQueryResults.apply(result);
+            int position = idPositions.indexOf(id);
+
+            if (position < 0) {
+                if (unqueriedResultConsumer != null) {
+                    unqueriedResultConsumer.accept(id, result);
+                }
+            } else if (!seenIds.get(position)) {
+                seenIds.set(position);
+                values[position] = valueFactory.apply(result);
+            } else if (valueAccumulator != null) {
+                valueAccumulator.accept((V) values[position], result);
+            }
+        });
+
+        Function<ID, V> resultProvider = defaultResultProvider != null ? defaultResultProvider : id -> null;
+
+        for (int position = seenIds.nextClearBit(0); position < idCount; position = seenIds.nextClearBit(position + 1)) {
+            values[position] = resultProvider.apply(idPositions.get(position));
+        }
+    }
+
     /**
      * @param coll          The list of arguments to pass to the queryFunction
      *                      e.g. {@code List<Long>} for passing a list of IDs to query a database
@@ -197,6 +698,21 @@ public interface QueryUtils {
                 .filter(Objects::nonNull);
     }
 
+    /**
+     * Reuses the positions of the IDs when {@code ids} is already an {@link IdList}, e.g. provided by the assembler,
+     * or a {@link LongIdSet} where the position of an ID is its rank, so no hash index of the IDs is built.
+     * Otherwise, e.g. IDs copied by an {@code ArrayList::new} ID collection factory, the positions are indexed with
+     * {@code idEquivalence} so that results keep being correlated with IDs like {@code byte[]}
+     */
+    @SuppressWarnings("unchecked")
+    private static <ID> List<ID> idPositionsOf(Collection<ID> ids, Equivalence<? super ID> idEquivalence) {
+        return ids instanceof LongIdSet ? (List<ID>) ((LongIdSet) ids).asList() : idList(ids, idEquivalence);
+    }
+
+    private static <ID> Equivalence<? super ID> idEquivalenceOf(MapFactory<ID, ?> mapFactory) {
+        return mapFactory != null ? mapFactory.idEquivalence() : null;
+    }
+
     private static <ID, R, IDC extends Collection<ID>>
     Supplier<Map<ID, R>> toSupplier(IDC ids, MapFactory<ID, R> mapFactory) {
         MapFactory<ID, R> mapSupplier = mapFactory != null ? mapFactory : defaultMapFactory();
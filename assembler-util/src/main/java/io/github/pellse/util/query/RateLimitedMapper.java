@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package io.github.pellse.util.query;
+
+import io.github.pellse.util.concurrent.RateLimiter;
+
+import java.util.Map;
+
+import static io.github.pellse.util.concurrent.RateLimiter.awaitNanos;
+import static java.util.Collections.emptyMap;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * {@link Mapper} decorator acquiring a permit from a {@link RateLimiter} before each invocation
+ * of the decorated mapper, the same {@link RateLimiter} can be shared by all mappers querying the same datasource.
+ * <p>
+ * When invoked directly, {@link #apply(Iterable, MapperContext)} parks the calling thread until the permit
+ * can be used. The assembler instead {@link #reserve(MapperContext) reserves} the permit when the sub query is subscribed
+ * and lets the {@code AssemblerAdapter} delay the execution of the sub query, so that asynchronous adapters delay the
+ * subscription instead of parking a thread. In both cases, when the permit would only become available
+ * after the {@link Deadline} of the assembly, no permit is reserved, the sub query is skipped and an empty result returned.
+ *
+ * @param <ID> Type of the ids
+ * @param <R>  Type of the results
+ * @param <EX> Type of the exception that can be thrown by the decorated mapper
+ */
+public final class RateLimitedMapper<ID, R, EX extends Throwable> implements ContextualMapper<ID, R, EX> {
+
+    private final Mapper<ID, R, EX> mapper;
+    private final RateLimiter rateLimiter;
+
+    RateLimitedMapper(Mapper<ID, R, EX> mapper, RateLimiter rateLimiter) {
+        this.mapper = requireNonNull(mapper, "mapper cannot be null");
+        this.rateLimiter = requireNonNull(rateLimiter, "rateLimiter cannot be null");
+    }
+
+    @Override
+    public Map<ID, R> apply(Iterable<ID> entityIds, MapperContext context) throws EX {
+        long delayNanos = reserve(context);
+        if (delayNanos < 0) {
+            return emptyMap();
+        }
+
+        awaitNanos(delayNanos);
+        return applyReserved(entityIds, context);
+    }
+
+    @Override
+    public R defaultResult(ID id) {
+        return mapper.defaultResult(id);
+    }
+
+    /**
+     * Reserves the permit for a subsequent call to {@link #applyReserved(Iterable, MapperContext)}, only if it
+     * can be used before the {@link Deadline} of {@code context}
+     *
+     * @return The delay in nanoseconds before {@link #applyReserved(Iterable, MapperContext)} can be invoked,
+     * or {@code -1} if no permit was reserved and the sub query is to be skipped
+     */
+    @Override
+    public long reserve(MapperContext context) {
+        return rateLimiter.tryReserve(context.deadline().remainingNanos());
+    }
+
+    /**
+     * Invokes the decorated mapper without acquiring a permit, the caller is responsible
+     * for having previously called {@link #reserve(MapperContext)} and waited for the returned delay
+     */
+    @Override
+    public Map<ID, R> applyReserved(Iterable<ID> entityIds, MapperContext context) throws EX {
+        return mapper.apply(entityIds, context);
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.query;
+
+import io.github.pellse.util.cache.Invalidatable;
+import io.github.pellse.util.function.checked.CheckedSupplier;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static io.github.pellse.util.collection.FrozenMap.freeze;
+import static io.github.pellse.util.function.checked.Unchecked.unchecked;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * {@link Mapper} of small and slowly changing reference data (e.g. currencies, regions, product categories),
+ * loading the whole table at once into an immutable snapshot instead of querying it for each batch of IDs.
+ * Assemblies look up the current snapshot without locking and without any I/O, the snapshot being reloaded
+ * on a schedule, by {@link #refresh()} and/or by invalidations, and swapped atomically once fully loaded.
+ * <p>
+ * The snapshot is loaded by the first assembly, or by a prior {@link #refresh()} to load it eagerly. Invalidating
+ * any ID never makes an assembly reload the table: the current snapshot keeps being served, stale, until a background
+ * reload of the whole table on the reload executor (the scheduler of the scheduled refreshes if any) swaps it, the
+ * invalidations made before that reload starts sharing it. Refreshing any ID reloads the whole table right away,
+ * e.g. from the change events of the table, see {@link Invalidatable}. A failed scheduled or background reload keeps
+ * the current snapshot and is passed to the refresh error handler.
+ *
+ * @param <ID> Type of the ids
+ * @param <R>  Type of the results
+ * @param <EX> Type of the exception that can be thrown by the query function
+ */
+public final class ReferenceDataMapper<ID, R, EX extends Throwable> implements ContextualMapper<ID, R, EX>, Invalidatable<ID>, AutoCloseable {
+
+    private final CheckedSupplier<? extends Collection<R>, EX> queryFunction;
+    private final Function<R, ID> idExtractor;
+    private final Function<ID, R> defaultResultProvider;
+    private final Executor reloadExecutor;
+    private final Consumer<? super Throwable> refreshErrorHandler;
+
+    private final InvalidationGuard invalidationGuard = new InvalidationGuard();
+    private final AtomicBoolean reloadScheduled = new AtomicBoolean();
+
+    private volatile Map<ID, R> snapshot;
+    private volatile ScheduledFuture<?> scheduledRefresh;
+
+    ReferenceDataMapper(CheckedSupplier<? extends Collection<R>, EX> queryFunction,
+                        Function<R, ID> idExtractor,
+                        Function<ID, R> defaultResultProvider,
+                        Executor reloadExecutor,
+                        Consumer<? super Throwable> refreshErrorHandler) {
+        this.queryFunction = requireNonNull(queryFunction, "queryFunction cannot be null");
+        this.idExtractor = requireNonNull(idExtractor, "idExtractor cannot be null");
+        this.defaultResultProvider = requireNonNull(defaultResultProvider, "defaultResultProvider cannot be null");
+        this.reloadExecutor = requireNonNull(reloadExecutor, "reloadExecutor cannot be null");
+        this.refreshErrorHandler = requireNonNull(refreshErrorHandler, "refreshErrorHandler cannot be null");
+    }
+
+    /**
+     * Reloads the snapshot every {@code refreshPeriod} until {@link #close()}, the first scheduled refresh
+     * happening after {@code refreshPeriod}
+     */
+    ReferenceDataMapper<ID, R, EX> scheduleRefresh(Duration refreshPeriod, ScheduledExecutorService scheduler) {
+        long refreshPeriodMillis = requireNonNull(refreshPeriod, "refreshPeriod cannot be null").toMillis();
+        requireNonNull(scheduler, "scheduler cannot be null");
+        if (refreshPeriodMillis <= 0) {
+            throw new IllegalArgumentException("refreshPeriod must be greater than 0, was " + refreshPeriod);
+        }
+
+        scheduledRefresh = scheduler.scheduleWithFixedDelay(this::tryRefreshSnapshot, refreshPeriodMillis, refreshPeriodMillis, MILLISECONDS);
+        return this;
+    }
+
+    @Override
+    public Map<ID, R> apply(Iterable<ID> entityIds, MapperContext context) throws EX {
+        Map<ID, R> currentSnapshot = snapshot;
+        if (currentSnapshot == null) {
+            currentSnapshot = loadSnapshot();
+        }
+
+        Map<ID, R> results = new HashMap<>();
+        for (ID id : entityIds) {
+            R result = currentSnapshot.get(id);
+            results.put(id, result != null ? result : defaultResultProvider.apply(id));
+        }
+        return results;
+    }
+
+    @Override
+    public R defaultResult(ID id) {
+        return defaultResultProvider.apply(id);
+    }
+
+    /**
+     * Reloads the whole table and swaps the snapshot, the exceptions of the query function are propagated
+     * and the current snapshot kept
+     */
+    public void refresh() throws EX {
+        refreshSnapshot();
+    }
+
+    /**
+     * @return The current snapshot, or {@code null} if not loaded yet
+     */
+    public Map<ID, R> snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * The current snapshot keeps being served until the background reload swaps it
+     */
+    @Override
+    public void invalidateAll(Iterable<? extends ID> ids) {
+        invalidationGuard.invalidate(() -> {});
+        scheduleReload();
+    }
+
+    /**
+     * The current snapshot keeps being served until the background reload swaps it
+     */
+    @Override
+    public void invalidateIf(Predicate<? super ID> predicate) {
+        invalidationGuard.invalidate(() -> {});
+        scheduleReload();
+    }
+
+    @Override
+    public void refreshAll(Iterable<? extends ID> ids) {
+        invalidationGuard.invalidate(() -> {});
+        unchecked(this::refreshSnapshot).get();
+    }
+
+    /**
+     * Cancels the scheduled refreshes, the current snapshot can still be used
+     */
+    @Override
+    public void close() {
+        ScheduledFuture<?> refresh = scheduledRefresh;
+        if (refresh != null) {
+            refresh.cancel(false);
+        }
+    }
+
+    private synchronized Map<ID, R> loadSnapshot() throws EX {
+        Map<ID, R> currentSnapshot = snapshot;
+        return currentSnapshot != null ? currentSnapshot : refreshSnapshot();
+    }
+
+    private Map<ID, R> refreshSnapshot() throws EX {
+        long stamp = invalidationGuard.stamp();
+
+        Collection<R> rows = queryFunction.checkedGet();
+        Map<ID, R> results = new HashMap<>(rows.size() * 4 / 3 + 1);
+        for (R row : rows) {
+            results.put(idExtractor.apply(row), row);
+        }
+
+        Map<ID, R> newSnapshot = freeze(results);
+        invalidationGuard.cacheIfValid(stamp, () -> snapshot = newSnapshot);
+        return newSnapshot;
+    }
+
+    private void scheduleReload() {
+        // Not loaded yet, the next assembly loads it
+        if (snapshot == null) {
+            return;
+        }
+
+        if (reloadScheduled.compareAndSet(false, true)) {
+            try {
+                reloadExecutor.execute(this::reload);
+            } catch (RejectedExecutionException e) {
+                // The current snapshot is kept until the next invalidation or scheduled refresh
+                reloadScheduled.set(false);
+                refreshErrorHandler.accept(e);
+            }
+        }
+    }
+
+    private void reload() {
+        // Cleared before the reload reads its stamp, so an invalidation while reloading schedules another reload
+        reloadScheduled.set(false);
+        tryRefreshSnapshot();
+    }
+
+    private void tryRefreshSnapshot() {
+        try {
+            refreshSnapshot();
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // The current snapshot is kept until the next invalidation or scheduled refresh
+            refreshErrorHandler.accept(e);
+        }
+    }
+}
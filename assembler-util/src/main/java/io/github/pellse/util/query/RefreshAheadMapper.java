@@ -0,0 +1,203 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.query;
+
+import io.github.pellse.util.cache.Cache;
+import io.github.pellse.util.cache.Invalidatable;
+import io.github.pellse.util.cache.Timestamped;
+import io.github.pellse.util.collection.IdList;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static io.github.pellse.util.cache.Timestamped.timestamped;
+import static io.github.pellse.util.collection.IdList.idList;
+import static io.github.pellse.util.function.checked.Unchecked.unchecked;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Caching {@link Mapper} decorator with a refresh-ahead (stale-while-revalidate) policy, so that hot IDs don't pay
+ * for a full query when their cached result expires:
+ * <ul>
+ * <li>a result younger than the soft time to live is served from the cache</li>
+ * <li>a result older than the soft time to live but younger than the hard time to live is still served from the cache,
+ * and its ID is queued to be refreshed in the background</li>
+ * <li>an absent result or a result older than the hard time to live is loaded by the decorated mapper before
+ * the assembly proceeds, as any cache miss</li>
+ * </ul>
+ * The IDs queued for refresh by all assemblies are coalesced, a single refresh task at a time drains the queue
+ * and reloads all its IDs with one invocation of the decorated mapper. A failed refresh, or a refresh rejected by
+ * the refresh executor, leaves the stale results in the cache, they keep being served and are queued for refresh again
+ * until they reach the hard time to live. Such failures never reach the assemblies, they are reported to the refresh
+ * error handler instead.
+ * <p>
+ * Entries can also be invalidated or refreshed when the source of truth changes, see {@link Invalidatable}.
+ *
+ * @param <ID> Type of the ids
+ * @param <R>  Type of the results
+ * @param <EX> Type of the exception that can be thrown by the decorated mapper
+ */
+public final class RefreshAheadMapper<ID, R, EX extends Throwable> implements ContextualMapper<ID, R, EX>, Invalidatable<ID> {
+
+    private final Mapper<ID, R, EX> mapper;
+    private final Cache<ID, Timestamped<R>> cache;
+    private final long softTtlMillis;
+    private final long hardTtlMillis;
+    private final Executor refreshExecutor;
+    private final Consumer<? super Throwable> refreshErrorHandler;
+
+    private final Set<ID> pendingRefreshIds = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+
+    private final InvalidationGuard invalidationGuard = new InvalidationGuard();
+
+    RefreshAheadMapper(Mapper<ID, R, EX> mapper,
+                       Cache<ID, Timestamped<R>> cache,
+                       Duration softTtl,
+                       Duration hardTtl,
+                       Executor refreshExecutor,
+                       Consumer<? super Throwable> refreshErrorHandler) {
+        this.mapper = requireNonNull(mapper, "mapper cannot be null");
+        this.cache = requireNonNull(cache, "cache cannot be null");
+        this.softTtlMillis = requireNonNull(softTtl, "softTtl cannot be null").toMillis();
+        this.hardTtlMillis = requireNonNull(hardTtl, "hardTtl cannot be null").toMillis();
+        this.refreshExecutor = requireNonNull(refreshExecutor, "refreshExecutor cannot be null");
+        this.refreshErrorHandler = requireNonNull(refreshErrorHandler, "refreshErrorHandler cannot be null");
+
+        if (softTtl.isNegative() || softTtl.compareTo(hardTtl) > 0) {
+            throw new IllegalArgumentException("softTtl must be between 0 and hardTtl, was " + softTtl + " with hardTtl " + hardTtl);
+        }
+    }
+
+    @Override
+    public Map<ID, R> apply(Iterable<ID> entityIds, MapperContext context) throws EX {
+        long now = System.currentTimeMillis();
+        Map<ID, Timestamped<R>> cachedResults = cache.getAll(entityIds);
+
+        Map<ID, R> results = new HashMap<>();
+        List<ID> missingIds = new ArrayList<>();
+        List<ID> staleIds = new ArrayList<>();
+
+        for (ID id : entityIds) {
+            Timestamped<R> cachedResult = cachedResults.get(id);
+            long age = cachedResult != null ? now - cachedResult.timestampMillis() : Long.MAX_VALUE;
+
+            if (age >= hardTtlMillis) {
+                missingIds.add(id);
+            } else {
+                results.put(id, cachedResult.value());
+                if (age >= softTtlMillis) {
+                    staleIds.add(id);
+                }
+            }
+        }
+
+        if (!missingIds.isEmpty()) {
+            long stamp = invalidationGuard.stamp();
+            Map<ID, R> loadedResults = mapper.apply(idList(missingIds), context);
+            invalidationGuard.cacheIfValid(stamp, () -> cache.putAll(timestampedAll(loadedResults, now)));
+            results.putAll(loadedResults);
+        }
+
+        if (!staleIds.isEmpty()) {
+            scheduleRefresh(staleIds);
+        }
+
+        return results;
+    }
+
+    @Override
+    public R defaultResult(ID id) {
+        return mapper.defaultResult(id);
+    }
+
+    @Override
+    public void invalidateAll(Iterable<? extends ID> ids) {
+        invalidationGuard.invalidate(() -> cache.removeAll(ids));
+    }
+
+    @Override
+    public void invalidateIf(Predicate<? super ID> predicate) {
+        invalidationGuard.invalidate(() -> cache.removeIf(predicate));
+    }
+
+    @Override
+    public void refreshAll(Iterable<? extends ID> ids) {
+        IdList<ID> refreshIds = idList(ids);
+        invalidateAll(refreshIds);
+
+        long stamp = invalidationGuard.stamp();
+        long now = System.currentTimeMillis();
+        Map<ID, R> refreshedResults = unchecked((IdList<ID> idsToLoad) -> mapper.apply(idsToLoad, mapperContext())).apply(refreshIds);
+
+        invalidationGuard.cacheIfValid(stamp, () -> cache.putAll(timestampedAll(refreshedResults, now)));
+    }
+
+    private void scheduleRefresh(List<ID> staleIds) {
+        pendingRefreshIds.addAll(staleIds);
+        scheduleRefresh();
+    }
+
+    private void scheduleRefresh() {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            try {
+                refreshExecutor.execute(this::refresh);
+            } catch (RejectedExecutionException e) {
+                // The pending IDs are kept, the next assembly serving a stale result schedules the refresh again
+                refreshScheduled.set(false);
+                refreshErrorHandler.accept(e);
+            }
+        }
+    }
+
+    private void refresh() {
+        try {
+            List<ID> refreshIds = new ArrayList<>(pendingRefreshIds);
+            pendingRefreshIds.removeAll(refreshIds);
+
+            long stamp = invalidationGuard.stamp();
+            long now = System.currentTimeMillis();
+            Map<ID, R> refreshedResults = mapper.apply(idList(refreshIds), mapperContext());
+            invalidationGuard.cacheIfValid(stamp, () -> cache.putAll(timestampedAll(refreshedResults, now)));
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            // The stale results are kept until they reach the hard time to live
+            refreshErrorHandler.accept(e);
+        } finally {
+            refreshScheduled.set(false);
+
+            // IDs queued while this refresh was running
+            if (!pendingRefreshIds.isEmpty()) {
+                scheduleRefresh();
+            }
+        }
+    }
+
+    private static <ID, R> Map<ID, Timestamped<R>> timestampedAll(Map<ID, R> results, long timestampMillis) {
+        Map<ID, Timestamped<R>> timestampedResults = new HashMap<>(results.size() * 4 / 3 + 1);
+        results.forEach((id, result) -> timestampedResults.put(id, timestamped(result, timestampMillis)));
+        return timestampedResults;
+    }
+}
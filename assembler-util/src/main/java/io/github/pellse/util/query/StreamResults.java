@@ -0,0 +1,47 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.query;
+
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Results of a query function streamed from the datasource, closing the {@link Stream} when closed
+ * by the sort-merge join, see {@link MapperUtils#closing(Stream)}
+ *
+ * @param <R> Type of the results
+ */
+final class StreamResults<R> implements Iterable<R>, AutoCloseable {
+
+    private final Stream<R> results;
+
+    StreamResults(Stream<R> results) {
+        this.results = requireNonNull(results, "results cannot be null");
+    }
+
+    @Override
+    public Iterator<R> iterator() {
+        return results.iterator();
+    }
+
+    @Override
+    public void close() {
+        results.close();
+    }
+}
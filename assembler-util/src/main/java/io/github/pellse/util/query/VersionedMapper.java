@@ -0,0 +1,180 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.query;
+
+import io.github.pellse.util.cache.Cache;
+import io.github.pellse.util.cache.Invalidatable;
+import io.github.pellse.util.cache.Timestamped;
+import io.github.pellse.util.collection.IdList;
+import io.github.pellse.util.function.checked.CheckedFunction1;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static io.github.pellse.util.cache.Timestamped.timestamped;
+import static io.github.pellse.util.collection.IdList.idList;
+import static io.github.pellse.util.function.checked.Unchecked.unchecked;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Caching {@link Mapper} decorator revalidating expired results with a conditional query instead of querying them again,
+ * much like HTTP entity tags: the version of each cached result is read with a version extractor, and once a result
+ * is older than the time to live, the versions of all the expired results of an assembly are sent at once to
+ * a revalidation query function, which only returns the results whose version changed, e.g.
+ * {@code SELECT * FROM billing_info WHERE (customer_id, version) NOT IN (...)} restricted to the given IDs.
+ * <p>
+ * The changed results replace the cached ones, the other expired results are considered unchanged and are cached
+ * again for a time to live. The IDs not in the cache are loaded by the decorated mapper. The revalidation query function
+ * doesn't report deleted entities, they can be removed with {@link #invalidate(Object)}.
+ *
+ * @param <ID> Type of the ids
+ * @param <R>  Type of the results
+ * @param <V>  Type of the versions, e.g. {@code Long} or an entity tag {@code String}
+ * @param <EX> Type of the exception that can be thrown by the decorated mapper and the revalidation query function
+ */
+public final class VersionedMapper<ID, R, V, EX extends Throwable> implements ContextualMapper<ID, R, EX>, Invalidatable<ID> {
+
+    private final Mapper<ID, R, EX> mapper;
+    private final CheckedFunction1<Map<ID, V>, ? extends Collection<R>, EX> revalidationQueryFunction;
+    private final Function<R, ID> idExtractor;
+    private final Function<? super R, ? extends V> versionExtractor;
+    private final Cache<ID, Timestamped<R>> cache;
+    private final long ttlMillis;
+
+    private final InvalidationGuard invalidationGuard = new InvalidationGuard();
+
+    VersionedMapper(Mapper<ID, R, EX> mapper,
+                    CheckedFunction1<Map<ID, V>, ? extends Collection<R>, EX> revalidationQueryFunction,
+                    Function<R, ID> idExtractor,
+                    Function<? super R, ? extends V> versionExtractor,
+                    Cache<ID, Timestamped<R>> cache,
+                    Duration ttl) {
+        this.mapper = requireNonNull(mapper, "mapper cannot be null");
+        this.revalidationQueryFunction = requireNonNull(revalidationQueryFunction, "revalidationQueryFunction cannot be null");
+        this.idExtractor = requireNonNull(idExtractor, "idExtractor cannot be null");
+        this.versionExtractor = requireNonNull(versionExtractor, "versionExtractor cannot be null");
+        this.cache = requireNonNull(cache, "cache cannot be null");
+        this.ttlMillis = requireNonNull(ttl, "ttl cannot be null").toMillis();
+
+        if (ttl.isNegative()) {
+            throw new IllegalArgumentException("ttl cannot be negative, was " + ttl);
+        }
+    }
+
+    @Override
+    public Map<ID, R> apply(Iterable<ID> entityIds, MapperContext context) throws EX {
+        long now = System.currentTimeMillis();
+        Map<ID, Timestamped<R>> cachedResults = cache.getAll(entityIds);
+
+        Map<ID, R> results = new HashMap<>();
+        Map<ID, R> expiredResults = new HashMap<>();
+        List<ID> missingIds = new ArrayList<>();
+
+        for (ID id : entityIds) {
+            Timestamped<R> cachedResult = cachedResults.get(id);
+            if (cachedResult == null) {
+                missingIds.add(id);
+            } else if (now - cachedResult.timestampMillis() < ttlMillis) {
+                results.put(id, cachedResult.value());
+            } else {
+                expiredResults.put(id, cachedResult.value());
+            }
+        }
+
+        if (!missingIds.isEmpty() || !expiredResults.isEmpty()) {
+            results.putAll(reload(expiredResults, missingIds, context, now));
+        }
+        return results;
+    }
+
+    @Override
+    public R defaultResult(ID id) {
+        return mapper.defaultResult(id);
+    }
+
+    @Override
+    public void invalidateAll(Iterable<? extends ID> ids) {
+        invalidationGuard.invalidate(() -> cache.removeAll(ids));
+    }
+
+    @Override
+    public void invalidateIf(Predicate<? super ID> predicate) {
+        invalidationGuard.invalidate(() -> cache.removeIf(predicate));
+    }
+
+    /**
+     * The cached results of {@code ids} are revalidated whatever their age, the others are loaded by the decorated mapper
+     */
+    @Override
+    public void refreshAll(Iterable<? extends ID> ids) {
+        IdList<ID> refreshIds = idList(ids);
+        Map<ID, Timestamped<R>> cachedResults = cache.getAll(refreshIds);
+        invalidateAll(refreshIds);
+
+        Map<ID, R> expiredResults = new HashMap<>();
+        List<ID> missingIds = new ArrayList<>();
+        for (ID id : refreshIds) {
+            Timestamped<R> cachedResult = cachedResults.get(id);
+            if (cachedResult != null) {
+                expiredResults.put(id, cachedResult.value());
+            } else {
+                missingIds.add(id);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        unchecked(() -> reload(expiredResults, missingIds, mapperContext(), now)).get();
+    }
+
+    /**
+     * @return The loaded and revalidated results, which are also cached unless an invalidation happened in the meantime
+     */
+    private Map<ID, R> reload(Map<ID, R> expiredResults, List<ID> missingIds, MapperContext context, long now) throws EX {
+        long stamp = invalidationGuard.stamp();
+        Map<ID, R> reloadedResults = new HashMap<>();
+
+        if (!missingIds.isEmpty()) {
+            reloadedResults.putAll(mapper.apply(idList(missingIds), context));
+        }
+        if (!expiredResults.isEmpty()) {
+            reloadedResults.putAll(revalidate(expiredResults));
+        }
+
+        Map<ID, Timestamped<R>> timestampedResults = new HashMap<>(reloadedResults.size() * 4 / 3 + 1);
+        reloadedResults.forEach((id, result) -> timestampedResults.put(id, timestamped(result, now)));
+        invalidationGuard.cacheIfValid(stamp, () -> cache.putAll(timestampedResults));
+
+        return reloadedResults;
+    }
+
+    private Map<ID, R> revalidate(Map<ID, R> expiredResults) throws EX {
+        Map<ID, V> versions = new HashMap<>(expiredResults.size() * 4 / 3 + 1);
+        expiredResults.forEach((id, result) -> versions.put(id, result != null ? versionExtractor.apply(result) : null));
+
+        Map<ID, R> revalidatedResults = new HashMap<>(expiredResults);
+        for (R changedResult : revalidationQueryFunction.checkedApply(versions)) {
+            ID id = idExtractor.apply(changedResult);
+            if (versions.containsKey(id)) {
+                revalidatedResults.put(id, changedResult);
+            }
+        }
+        return revalidatedResults;
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import io.github.pellse.util.concurrent.MemoryBudget;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static io.github.pellse.util.cache.Cache.lruCache;
+import static io.github.pellse.util.concurrent.MemoryBudget.memoryBudget;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class BudgetedLruCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedResultsEvictedWhenBudgetRunsShort() {
+
+        MemoryBudget budget = memoryBudget(100);
+        Cache<Long, String> cache = lruCache(budget, result -> 40);
+
+        cache.putAll(Map.of(1L, "a"));
+        cache.putAll(Map.of(2L, "b"));
+        cache.getAll(List.of(1L));
+
+        cache.putAll(Map.of(3L, "c"));
+
+        assertThat(cache.getAll(List.of(1L, 2L, 3L)), equalTo(Map.of(1L, "a", 3L, "c")));
+        assertThat(budget.usedBytes(), equalTo(80L));
+    }
+
+    @Test
+    public void testPreviousResultRemovedWhenNewerResultNotAdmitted() {
+
+        MemoryBudget budget = memoryBudget(100);
+        Cache<Long, String> cache = lruCache(budget, result -> result.equals("large") ? 1_000 : result.length());
+
+        cache.putAll(Map.of(1L, "v1", 2L, "v1"));
+        assertThat(budget.usedBytes(), equalTo(4L));
+
+        // Larger than the whole budget, the stale result of 1 must not keep being served
+        cache.putAll(Map.of(1L, "large"));
+
+        assertThat(cache.getAll(List.of(1L, 2L)), equalTo(Map.of(2L, "v1")));
+        assertThat(budget.usedBytes(), equalTo(2L));
+    }
+
+    @Test
+    public void testRemovedResultsReleaseTheirWeight() {
+
+        MemoryBudget budget = memoryBudget(100);
+        Cache<Long, String> cache = lruCache(budget, String::length);
+
+        cache.putAll(Map.of(1L, "a", 2L, "bb", 3L, "ccc"));
+        cache.removeAll(List.of(1L));
+        cache.removeIf(id -> id == 3L);
+
+        assertThat(cache.getAll(List.of(1L, 2L, 3L)), equalTo(Map.of(2L, "bb")));
+        assertThat(budget.usedBytes(), equalTo(2L));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static io.github.pellse.util.cache.Codec.deflateCodec;
+import static io.github.pellse.util.cache.Serializer.serializer;
+import static io.github.pellse.util.cache.Serializer.stringSerializer;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class CompressedCacheTest {
+
+    private final Map<String, Integer> decodeCounts = new HashMap<>();
+
+    private final Serializer<String> countingSerializer = serializer(stringSerializer()::serialize, buffer -> {
+        String value = stringSerializer().deserialize(buffer);
+        decodeCounts.merge(value, 1, Integer::sum);
+        return value;
+    });
+
+    @Test
+    public void testResultKeptDecodedFromThreshold() {
+
+        CompressedCache<Long, String> cache = new CompressedCache<>(2, countingSerializer, deflateCodec(), 3);
+        cache.putAll(Map.of(1L, "a"));
+
+        get(cache, 1L, 5);
+
+        // Decoded on the first 3 hits, the third one reaching the threshold
+        assertThat(decodeCounts.get("a"), equalTo(3));
+
+        // Replacing the result keeps its access count but not the decoded form of the previous result
+        cache.putAll(Map.of(1L, "b"));
+        get(cache, 1L, 2);
+
+        assertThat(decodeCounts.get("b"), equalTo(1));
+    }
+
+    @Test
+    public void testDecodedResultDroppedOnceAccessCountDecays() {
+
+        // Access counts halved every 2 * 10 accesses
+        CompressedCache<Long, String> cache = new CompressedCache<>(2, countingSerializer, deflateCodec(), 4);
+        cache.putAll(Map.of(1L, "a", 2L, "b"));
+
+        get(cache, 1L, 4);
+        assertThat(decodeCounts.get("a"), equalTo(4));
+
+        // The 20th access halves the access count of 1 from 4 to 2
+        get(cache, 2L, 16);
+        get(cache, 1L, 1);
+        assertThat(decodeCounts.get("a"), equalTo(5));
+
+        // Back to the threshold, decoded one last time
+        get(cache, 1L, 3);
+        assertThat(decodeCounts.get("a"), equalTo(6));
+    }
+
+    @Test
+    public void testNullResultsAndEviction() {
+
+        CompressedCache<Long, String> cache = new CompressedCache<>(2, countingSerializer, deflateCodec(), 1);
+
+        Map<Long, String> results = new HashMap<>();
+        results.put(1L, null);
+        results.put(2L, "b");
+        cache.putAll(results);
+
+        // 2 is now the least recently used result
+        assertThat(cache.getAll(List.of(1L)).containsKey(1L), equalTo(true));
+        cache.putAll(Map.of(3L, "c"));
+
+        Map<Long, String> expectedResults = new HashMap<>();
+        expectedResults.put(1L, null);
+        expectedResults.put(3L, "c");
+        assertThat(cache.getAll(List.of(1L, 2L, 3L)), equalTo(expectedResults));
+    }
+
+    private static void get(Cache<Long, String> cache, Long id, int times) {
+        for (int i = 0; i < times; i++) {
+            assertThat(cache.getAll(List.of(id)).size(), equalTo(1));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import static io.github.pellse.util.cache.MappedFileCache.mappedFileCache;
+import static io.github.pellse.util.cache.Serializer.longSerializer;
+import static io.github.pellse.util.cache.Serializer.stringSerializer;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class MappedFileCacheTest {
+
+    private static final int CAPACITY = 1024;
+
+    // File header of 24 bytes, then records of 12 bytes of header + 8 bytes of key + 1 byte of value
+    private static final int END_OFFSET = 16;
+    private static final int RECORD_SIZE = 21;
+    private static final int FIRST_RECORD = 24;
+
+    @Test
+    public void testLogTruncatedAtCorruptedRecordOnRecovery() throws IOException {
+        Path file = Files.createTempFile("mapped-file-cache", ".cache");
+        try {
+            try (MappedFileCache<Long, String> cache = newCache(file)) {
+                cache.putAll(Map.of(1L, "a"));
+                cache.putAll(Map.of(2L, "b"));
+                cache.putAll(Map.of(3L, "c"));
+            }
+
+            // Flips the value of the third record, its checksum no longer matches
+            write(file, FIRST_RECORD + 2 * RECORD_SIZE + 12 + 8, (byte) 'z');
+
+            try (MappedFileCache<Long, String> cache = newCache(file)) {
+                assertThat(cache.getAll(List.of(1L, 2L, 3L)), equalTo(Map.of(1L, "a", 2L, "b")));
+
+                // Appended in place of the corrupted record
+                cache.putAll(Map.of(4L, "d"));
+            }
+
+            try (MappedFileCache<Long, String> cache = newCache(file)) {
+                assertThat(cache.getAll(List.of(1L, 2L, 3L, 4L)), equalTo(Map.of(1L, "a", 2L, "b", 4L, "d")));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testLogTruncatedAtPartiallyWrittenRecordOnRecovery() throws IOException {
+        Path file = Files.createTempFile("mapped-file-cache", ".cache");
+        try {
+            try (MappedFileCache<Long, String> cache = newCache(file)) {
+                cache.putAll(Map.of(1L, "a"));
+            }
+
+            // The end was committed but the record never reached the disk
+            write(file, END_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(0, FIRST_RECORD + 2 * RECORD_SIZE));
+
+            try (MappedFileCache<Long, String> cache = newCache(file)) {
+                assertThat(cache.size(), equalTo(1));
+                assertThat(cache.getAll(List.of(1L)), equalTo(Map.of(1L, "a")));
+
+                cache.putAll(Map.of(2L, "b"));
+            }
+
+            try (MappedFileCache<Long, String> cache = newCache(file)) {
+                assertThat(cache.getAll(List.of(1L, 2L)), equalTo(Map.of(1L, "a", 2L, "b")));
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testInstancesCatchUpWithEachOther() throws IOException {
+        Path file = Files.createTempFile("mapped-file-cache", ".cache");
+        try (MappedFileCache<Long, String> cache1 = newCache(file);
+             MappedFileCache<Long, String> cache2 = newCache(file)) {
+
+            cache1.putAll(Map.of(1L, "a"));
+            cache1.putAll(Map.of(2L, "b"));
+            assertThat(cache2.getAll(List.of(1L, 2L)), equalTo(Map.of(1L, "a", 2L, "b")));
+
+            // Appended after the records of the first instance, not seen yet by this instance
+            cache2.putAll(Map.of(2L, "c"));
+            cache2.removeAll(List.of(1L));
+
+            assertThat(cache1.getAll(List.of(1L, 2L)), equalTo(Map.of(2L, "c")));
+            assertThat(cache1.size(), equalTo(1));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static MappedFileCache<Long, String> newCache(Path file) {
+        return mappedFileCache(file, CAPACITY, longSerializer(), stringSerializer());
+    }
+
+    private static void write(Path file, long position, byte value) throws IOException {
+        write(file, position, ByteBuffer.wrap(new byte[]{value}));
+    }
+
+    private static void write(Path file, long position, ByteBuffer bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, READ, WRITE)) {
+            channel.write(bytes, position);
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+import static io.github.pellse.util.cache.OffHeapCache.offHeapCache;
+import static io.github.pellse.util.cache.Serializer.stringSerializer;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class OffHeapCacheTest {
+
+    // 4 bytes of length + 20 bytes of value, so 2 results per 64 bytes segment
+    private static final String VALUE = "01234567890123456789";
+
+    @Test
+    public void testOldestSegmentEvictedWhenAllSegmentsAreFull() {
+
+        OffHeapCache<Long, String> cache = offHeapCache(3 * 64, 64, stringSerializer());
+
+        for (long id = 1; id <= 6; id++) {
+            cache.putAll(Map.of(id, VALUE));
+        }
+        assertThat(cache.getAll(ids(1, 6)).keySet(), equalTo(new HashSet<>(ids(1, 6))));
+
+        // The first segment is reused, evicting both its results
+        cache.putAll(Map.of(7L, VALUE));
+
+        assertThat(cache.getAll(ids(1, 7)).keySet(), equalTo(new HashSet<>(ids(3, 7))));
+        assertThat(cache.size(), equalTo(5));
+    }
+
+    @Test
+    public void testReplacedResultNotEvictedWithItsPreviousSegment() {
+
+        OffHeapCache<Long, String> cache = offHeapCache(3 * 64, 64, stringSerializer());
+
+        for (long id = 1; id <= 7; id++) {
+            cache.putAll(Map.of(id, VALUE));
+        }
+
+        // 3 moves from the second segment to the first one, the current segment, which is now full
+        cache.putAll(Map.of(3L, "98765432109876543210"));
+
+        // The second segment is reused, only 4 is still stored there
+        cache.putAll(Map.of(8L, VALUE));
+
+        Map<Long, String> cachedResults = cache.getAll(ids(1, 8));
+        assertThat(cachedResults.keySet(), equalTo(Set.of(3L, 5L, 6L, 7L, 8L)));
+        assertThat(cachedResults.get(3L), equalTo("98765432109876543210"));
+    }
+
+    @Test
+    public void testNullAndOversizedResults() {
+
+        OffHeapCache<Long, String> cache = offHeapCache(3 * 64, 64, stringSerializer());
+
+        Map<Long, String> results = new HashMap<>();
+        results.put(1L, null);
+        results.put(2L, VALUE);
+        cache.putAll(results);
+
+        // Larger than a segment, not cached and the previous result of the ID is removed
+        cache.putAll(Map.of(2L, VALUE + VALUE + VALUE + VALUE));
+
+        Map<Long, String> cachedResults = cache.getAll(ids(1, 2));
+        assertThat(cachedResults.containsKey(1L), equalTo(true));
+        assertThat(cachedResults.get(1L), equalTo(null));
+        assertThat(cachedResults.containsKey(2L), equalTo(false));
+    }
+
+    @Test
+    public void testRemove() {
+
+        OffHeapCache<Long, String> cache = offHeapCache(3 * 64, 64, stringSerializer());
+        for (long id = 1; id <= 4; id++) {
+            cache.putAll(Map.of(id, VALUE));
+        }
+
+        cache.removeAll(List.of(1L));
+        cache.removeIf(id -> id % 2 == 0);
+
+        assertThat(cache.getAll(ids(1, 4)).keySet(), equalTo(Set.of(3L)));
+    }
+
+    private static List<Long> ids(long first, long last) {
+        return LongStream.rangeClosed(first, last).boxed().collect(toList());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static io.github.pellse.util.collection.LongIdSet.longIdSet;
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class LongIdSetTest {
+
+    @Test
+    public void testArrayContainerConvertedToBitmapAndBack() {
+
+        LongIdSet ids = longIdSet();
+        TreeSet<Long> expected = new TreeSet<>();
+
+        // Every other ID of a single partition, well past the 4096 IDs of an array container
+        for (long id = 0; id < 20_000; id += 2) {
+            ids.add(id);
+            expected.add(id);
+        }
+        assertSameIds(ids, expected);
+
+        // Back under half the array container capacity
+        for (long id = 0; id < 18_000; id += 2) {
+            ids.remove(id);
+            expected.remove(id);
+        }
+        assertSameIds(ids, expected);
+
+        for (long id = 18_000; id < 20_000; id += 2) {
+            ids.remove(id);
+        }
+        assertThat(ids.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void testRankAndSelectAcrossPartitions() {
+
+        LongIdSet ids = longIdSet(-70_000, -1, 0, 5, 65_535, 65_536, 1L << 40, Long.MAX_VALUE);
+
+        assertThat(ids.first(), equalTo(-70_000L));
+        assertThat(ids.last(), equalTo(Long.MAX_VALUE));
+        assertThat(ids.indexOf(65_536), equalTo(5));
+        assertThat(ids.indexOf(6), equalTo(-1));
+        assertThat(ids.get(6), equalTo(1L << 40));
+        assertThat(ids.asList(), equalTo(List.of(-70_000L, -1L, 0L, 5L, 65_535L, 65_536L, 1L << 40, Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testForEachRange() {
+
+        LongIdSet ids = longIdSet(1, 2, 3, 7, 9, 10, 65_534, 65_535, 65_536, 65_537);
+
+        // Dense IDs in a bitmap container
+        for (long id = 200_000; id < 210_000; id++) {
+            ids.add(id);
+        }
+
+        List<String> ranges = new ArrayList<>();
+        ids.forEachRange((first, last) -> ranges.add(first + "-" + last));
+
+        assertThat(ranges, equalTo(List.of("1-3", "7-7", "9-10", "65534-65537", "200000-209999")));
+    }
+
+    @Test
+    public void testRandomOperationsMatchTreeSet() {
+
+        Random random = new Random(42);
+        LongIdSet ids = longIdSet();
+        TreeSet<Long> expected = new TreeSet<>();
+
+        for (int i = 0; i < 200_000; i++) {
+            // A few partitions, each crossing the array / bitmap container threshold back and forth
+            long id = (random.nextInt(4) - 2) * 65_536L + random.nextInt(12_000);
+            if (random.nextInt(3) == 0) {
+                assertThat(ids.remove(id), equalTo(expected.remove(id)));
+            } else {
+                assertThat(ids.add(id), equalTo(expected.add(id)));
+            }
+        }
+        assertSameIds(ids, expected);
+    }
+
+    private static void assertSameIds(LongIdSet ids, TreeSet<Long> expected) {
+        assertThat(ids.size(), equalTo(expected.size()));
+        assertThat(ids.longStream().boxed().collect(toList()), equalTo(new ArrayList<>(expected)));
+
+        int index = 0;
+        for (long id : expected) {
+            assertThat(ids.contains(id), equalTo(true));
+            assertThat(ids.indexOf(id), equalTo(index));
+            assertThat(ids.get(index), equalTo(id));
+            index++;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.collection;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static io.github.pellse.util.collection.OpenAddressingMap.openAddressingMap;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class OpenAddressingMapTest {
+
+    @Test
+    public void testRemoveFromTheMiddleOfACluster() {
+
+        // All the keys of a tens share the same home slot, so they form a single probe sequence
+        Equivalence<Integer> sameTens = Equivalence.of(Integer::equals, key -> key / 10);
+        OpenAddressingMap<Integer, String> map = openAddressingMap(64, 0.7f, sameTens);
+
+        for (int key = 0; key < 30; key++) {
+            map.put(key, "v" + key);
+        }
+
+        map.remove(3);
+        map.remove(15);
+        map.remove(0);
+        map.remove(29);
+
+        assertThat(map.size(), equalTo(26));
+        for (int key = 0; key < 30; key++) {
+            boolean removed = key == 3 || key == 15 || key == 0 || key == 29;
+            assertThat(map.get(key), equalTo(removed ? null : "v" + key));
+            assertThat(map.containsKey(key), equalTo(!removed));
+        }
+    }
+
+    @Test
+    public void testNullKeyAndNullValue() {
+
+        OpenAddressingMap<String, String> map = openAddressingMap();
+        map.put(null, "null key");
+        map.put("null value", null);
+
+        assertThat(map.get(null), equalTo("null key"));
+        assertThat(map.containsKey("null value"), equalTo(true));
+        assertThat(map.get("null value"), equalTo(null));
+        assertThat(map.remove(null), equalTo("null key"));
+        assertThat(map.containsKey(null), equalTo(false));
+        assertThat(map.size(), equalTo(1));
+    }
+
+    @Test
+    public void testRandomOperationsMatchHashMap() {
+
+        Random random = new Random(42);
+        Map<Integer, Integer> expected = new HashMap<>();
+
+        // A small key range and expected size, so that clusters wrap around the end of the table and rehashes happen
+        OpenAddressingMap<Integer, Integer> map = openAddressingMap(4);
+
+        for (int i = 0; i < 100_000; i++) {
+            Integer key = random.nextInt(200) - 100;
+            if (random.nextInt(3) == 0) {
+                assertThat(map.remove(key), equalTo(expected.remove(key)));
+            } else {
+                assertThat(map.put(key, i), equalTo(expected.put(key, i)));
+            }
+        }
+
+        assertThat(map.size(), equalTo(expected.size()));
+        assertThat(map, equalTo(expected));
+        assertThat(new HashMap<>(map), equalTo(expected));
+    }
+
+    @Test
+    public void testByteArrayKeys() {
+
+        OpenAddressingMap<byte[], String> map = openAddressingMap(16, 0.7f, Equivalence.byteArrayEquivalence());
+        map.put(new byte[]{1, 2, 3}, "a");
+        map.put(new byte[]{1, 2, 3}, "b");
+
+        assertThat(map.size(), equalTo(1));
+        assertThat(map.get(new byte[]{1, 2, 3}), equalTo("b"));
+        assertThat(map.remove(new byte[]{1, 2, 3}), equalTo("b"));
+        assertThat(map.isEmpty(), equalTo(true));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static io.github.pellse.util.concurrent.DelayedSupplier.delayNanos;
+import static io.github.pellse.util.concurrent.DelayedSupplier.reserving;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class DelayedSupplierTest {
+
+    @Test
+    public void testReservationDeferredUntilFirstUse() {
+
+        AtomicInteger reservationCount = new AtomicInteger();
+
+        Supplier<String> supplier = reserving(() -> {
+            reservationCount.incrementAndGet();
+            return 0;
+        }, () -> "value", () -> "fallback");
+
+        assertThat(reservationCount.get(), equalTo(0));
+        assertThat(delayNanos(supplier), equalTo(0L));
+        assertThat(supplier.get(), equalTo("value"));
+        assertThat(reservationCount.get(), equalTo(1));
+    }
+
+    @Test
+    public void testReservedDelayReadOnSubscription() {
+
+        RateLimiter rateLimiter = RateLimiter.rateLimiter(1);
+        Supplier<String> first = reserving(rateLimiter::reserve, () -> "first", () -> "fallback");
+        Supplier<String> second = reserving(rateLimiter::reserve, () -> "second", () -> "fallback");
+
+        // The second supplier is subscribed first, so it gets the permit available right away
+        assertThat(delayNanos(second), equalTo(0L));
+        assertThat(delayNanos(first) > SECONDS.toNanos(1) / 2, equalTo(true));
+    }
+
+    @Test
+    public void testFallbackWhenReservationRefused() {
+
+        RateLimiter rateLimiter = RateLimiter.rateLimiter(1);
+        rateLimiter.reserve(); // Next permit only available in 1 second
+
+        Supplier<String> supplier = reserving(() -> rateLimiter.tryReserve(SECONDS.toNanos(1) / 2), () -> "value", () -> "fallback");
+
+        assertThat(delayNanos(supplier), equalTo(0L));
+        assertThat(supplier.get(), equalTo("fallback"));
+
+        // The refused reservation didn't push back the next free permit
+        assertThat(rateLimiter.tryReserve(SECONDS.toNanos(2)) <= SECONDS.toNanos(1), equalTo(true));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static io.github.pellse.util.concurrent.FairShareExecutor.fairShareExecutor;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class FairShareExecutorTest {
+
+    @Test
+    public void testTasksDispatchedByVirtualTime() {
+
+        ManualExecutor delegate = new ManualExecutor();
+        FairShareExecutor executor = fairShareExecutor(delegate, 1);
+        List<String> executed = new ArrayList<>();
+
+        executor.execute("heavy", () -> executed.add("heavy-1"));
+        executor.execute("heavy", () -> executed.add("heavy-2"));
+        executor.execute("heavy", () -> executed.add("heavy-3"));
+        executor.execute("light", () -> executed.add("light-1"));
+
+        delegate.runAll();
+
+        assertThat(executed, equalTo(List.of("heavy-1", "light-1", "heavy-2", "heavy-3")));
+    }
+
+    @Test
+    public void testRejectedTaskOfAnotherCallerStaysQueued() {
+
+        ManualExecutor delegate = new ManualExecutor();
+        FairShareExecutor executor = fairShareExecutor(delegate, 1);
+        List<String> executed = new ArrayList<>();
+
+        executor.execute("a", () -> executed.add("a"));
+        executor.execute("b", () -> executed.add("b"));
+
+        // The task of b is rejected when dispatched by the worker completing the task of a, it is not thrown there
+        delegate.rejecting = true;
+        delegate.runAll();
+        assertThat(executor.queuedTasks("b"), equalTo(1));
+
+        // Only the caller whose own task is rejected gets the exception
+        assertThrows(RejectedExecutionException.class, () -> executor.execute("c", () -> executed.add("c")));
+        assertThat(executor.queuedTasks("c"), equalTo(0));
+        assertThat(executor.queuedTasks("b"), equalTo(1));
+
+        delegate.rejecting = false;
+        executor.execute("d", () -> executed.add("d"));
+        delegate.runAll();
+
+        assertThat(executed, equalTo(List.of("a", "b", "d")));
+    }
+
+    private static class ManualExecutor implements Executor {
+
+        private final List<Runnable> tasks = new ArrayList<>();
+        private boolean rejecting;
+
+        @Override
+        public void execute(Runnable task) {
+            if (rejecting) {
+                throw new RejectedExecutionException("Rejected");
+            }
+            tasks.add(task);
+        }
+
+        private void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+}
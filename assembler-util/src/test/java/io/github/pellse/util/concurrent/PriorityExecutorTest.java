@@ -0,0 +1,97 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.concurrent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import static io.github.pellse.util.concurrent.PriorityExecutor.priorityExecutor;
+import static io.github.pellse.util.query.Priority.HIGH;
+import static io.github.pellse.util.query.Priority.LOW;
+import static io.github.pellse.util.query.Priority.NORMAL;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class PriorityExecutorTest {
+
+    @Test
+    public void testTasksDispatchedByPriorityThenAge() {
+
+        ManualExecutor delegate = new ManualExecutor();
+        PriorityExecutor executor = priorityExecutor(delegate, 1);
+        List<String> executed = new ArrayList<>();
+
+        executor.execute(LOW, () -> executed.add("low-1"));
+        executor.execute(LOW, () -> executed.add("low-2"));
+        executor.execute(NORMAL, () -> executed.add("normal"));
+        executor.execute(HIGH, () -> executed.add("high-1"));
+        executor.execute(HIGH, () -> executed.add("high-2"));
+
+        delegate.runAll();
+
+        assertThat(executed, equalTo(List.of("low-1", "high-1", "high-2", "normal", "low-2")));
+    }
+
+    @Test
+    public void testRejectedTaskOfAnotherCallerStaysQueued() {
+
+        ManualExecutor delegate = new ManualExecutor();
+        PriorityExecutor executor = priorityExecutor(delegate, 1);
+        List<String> executed = new ArrayList<>();
+
+        executor.execute(NORMAL, () -> executed.add("first"));
+        executor.execute(HIGH, () -> executed.add("queued"));
+
+        delegate.rejecting = true;
+        delegate.runAll();
+        assertThat(executor.queuedTasks(), equalTo(1));
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(LOW, () -> executed.add("rejected")));
+        assertThat(executor.queuedTasks(), equalTo(1));
+
+        delegate.rejecting = false;
+        executor.execute(LOW, () -> executed.add("last"));
+        delegate.runAll();
+
+        assertThat(executed, equalTo(List.of("first", "queued", "last")));
+    }
+
+    private static class ManualExecutor implements Executor {
+
+        private final List<Runnable> tasks = new ArrayList<>();
+        private boolean rejecting;
+
+        @Override
+        public void execute(Runnable task) {
+            if (rejecting) {
+                throw new RejectedExecutionException("Rejected");
+            }
+            tasks.add(task);
+        }
+
+        private void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.concurrent;
+
+import io.github.pellse.util.query.Mapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.github.pellse.util.concurrent.RateLimiter.rateLimiter;
+import static io.github.pellse.util.query.Deadline.after;
+import static io.github.pellse.util.query.MapperContext.mapperContext;
+import static io.github.pellse.util.query.MapperUtils.rateLimited;
+import static java.time.Duration.ofMillis;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class RateLimiterTest {
+
+    @Test
+    public void testRefusedReservationsDoNotDelayLaterReservations() {
+
+        RateLimiter rateLimiter = rateLimiter(1);
+        assertThat(rateLimiter.reserve(), equalTo(0L)); // Next permit only available in 1 second
+
+        for (int i = 0; i < 10; i++) {
+            assertThat(rateLimiter.tryReserve(SECONDS.toNanos(1) / 2), equalTo(-1L));
+        }
+
+        long delayNanos = rateLimiter.tryReserve(SECONDS.toNanos(2));
+        assertThat(delayNanos > 0 && delayNanos <= SECONDS.toNanos(1), equalTo(true));
+    }
+
+    @Test
+    public void testSkippedMapperCallsDoNotDelayLaterCallWithinDeadline() {
+
+        AtomicInteger queryCount = new AtomicInteger();
+        Mapper<Long, String, RuntimeException> mapper = rateLimited(ids -> {
+            queryCount.incrementAndGet();
+            Map<Long, String> results = new HashMap<>();
+            ids.forEach(id -> results.put(id, "value" + id));
+            return results;
+        }, rateLimiter(5)); // One permit every 200ms
+
+        assertThat(mapper.apply(List.of(1L), mapperContext(after(ofMillis(100)))), equalTo(Map.of(1L, "value1")));
+
+        // Past their deadline, these calls are skipped without using up the next permits
+        for (int i = 0; i < 10; i++) {
+            assertThat(mapper.apply(List.of(1L), mapperContext(after(ofMillis(100)))), equalTo(Map.of()));
+        }
+
+        assertThat(mapper.apply(List.of(2L), mapperContext(after(ofMillis(500)))), equalTo(Map.of(2L, "value2")));
+        assertThat(queryCount.get(), equalTo(2));
+    }
+}
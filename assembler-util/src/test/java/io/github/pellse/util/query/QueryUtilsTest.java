@@ -0,0 +1,209 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static io.github.pellse.util.collection.Equivalence.byteArrayEquivalence;
+import static io.github.pellse.util.collection.IdList.idList;
+import static io.github.pellse.util.query.FanOutEstimator.fanOutEstimator;
+import static io.github.pellse.util.query.MapFactory.compactListMapFactory;
+import static io.github.pellse.util.query.MapFactory.defaultMapFactory;
+import static io.github.pellse.util.query.MapFactory.openAddressingMapFactory;
+import static io.github.pellse.util.query.MapperUtils.closing;
+import static io.github.pellse.util.query.QueryUtils.queryOneToManyAsList;
+import static io.github.pellse.util.query.QueryUtils.queryOneToOne;
+import static io.github.pellse.util.query.QueryUtils.queryOneToOneSortMerge;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class QueryUtilsTest {
+
+    private static final class Item {
+        private final Long id;
+
+        private Item(Long id) {
+            this.id = id;
+        }
+
+        private Long getId() {
+            return id;
+        }
+    }
+
+    private final Item item1 = new Item(1L);
+    private final Item item2a = new Item(2L);
+    private final Item item2b = new Item(2L);
+    private final Item item3 = new Item(3L);
+
+    @Test
+    public void testQueryOneToOneWithDuplicateIds() {
+
+        List<List<Long>> queriedIds = new ArrayList<>();
+        Map<Long, Item> results = queryOneToOne(List.of(1L, 2L, 1L, 2L), ids -> {
+            queriedIds.add(ids);
+            return List.of(item1, item2a);
+        }, Item::getId);
+
+        assertThat(results, equalTo(Map.of(1L, item1, 2L, item2a)));
+        assertThat(queriedIds, equalTo(List.of(List.of(1L, 2L, 1L, 2L))));
+    }
+
+    @Test
+    public void testQueryOneToOneKeepsFirstResultOfId() {
+
+        Map<Long, Item> results = queryOneToOne(List.of(1L, 2L), ids -> List.of(item2a, item1, item2b), Item::getId);
+
+        assertThat(results, equalTo(Map.of(1L, item1, 2L, item2a)));
+    }
+
+    @Test
+    public void testQueryOneToOneWithNullDefaultResults() {
+
+        Map<Long, Item> expectedResults = new HashMap<>();
+        expectedResults.put(1L, item1);
+        expectedResults.put(4L, null);
+        expectedResults.put(5L, null);
+
+        assertThat(queryOneToOne(List.of(1L, 4L, 5L), ids -> List.of(item1), Item::getId), equalTo(expectedResults));
+        assertThat(queryOneToOne(List.of(1L, 4L, 5L), ids -> List.of(item1), Item::getId, id -> null, defaultMapFactory()), equalTo(expectedResults));
+
+        Map<Long, Item> defaultResults = queryOneToOne(List.of(1L, 4L), ids -> List.of(item1), Item::getId, Item::new, defaultMapFactory());
+        assertThat(defaultResults.get(4L).getId(), equalTo(4L));
+    }
+
+    @Test
+    public void testQueryOneToOneWithResultsForUnqueriedIds() {
+
+        Map<Long, Item> results = queryOneToOne(List.of(1L), ids -> List.of(item1, item2a, item3, item2b), Item::getId);
+
+        assertThat(results, equalTo(Map.of(1L, item1, 2L, item2a, 3L, item3)));
+    }
+
+    @Test
+    public void testQueryOneToManyWithDuplicateAndUnqueriedIds() {
+
+        Map<Long, List<Item>> results = queryOneToManyAsList(List.of(1L, 4L, 1L), ids -> List.of(item2a, item1, item2b), Item::getId);
+
+        assertThat(results, equalTo(Map.of(
+                1L, List.of(item1),
+                2L, List.of(item2a, item2b),
+                4L, List.of())));
+    }
+
+    @Test
+    public void testQueryWithByteArrayIdsCorrelatedByMapFactoryEquivalence() {
+
+        List<byte[]> ids = new ArrayList<>(List.of(new byte[]{1}, new byte[]{2}));
+        byte[] result1 = {1};
+
+        // The results hold other instances of the same IDs
+        Map<byte[], byte[]> results = queryOneToOne(ids, queryIds -> List.of(result1), result -> result.clone(),
+                id -> null, openAddressingMapFactory(byteArrayEquivalence()));
+
+        assertThat(results.size(), equalTo(2));
+        assertThat(results.get(new byte[]{1}), equalTo(result1));
+        assertThat(results.containsKey(new byte[]{2}), equalTo(true));
+        assertThat(results.get(new byte[]{2}), equalTo(null));
+
+        Map<byte[], List<byte[]>> compactResults = queryOneToManyAsList(ids, queryIds -> List.of(result1, result1), result -> result.clone(),
+                compactListMapFactory(byteArrayEquivalence()));
+
+        assertThat(compactResults.size(), equalTo(2));
+        assertThat(compactResults.get(new byte[]{1}), equalTo(List.of(result1, result1)));
+        assertThat(compactResults.get(new byte[]{2}), equalTo(List.of()));
+    }
+
+    @Test
+    public void testFanOutEstimatorConvergesToAverageFanOut() {
+
+        FanOutEstimator fanOutEstimator = fanOutEstimator();
+        assertThat(fanOutEstimator.expectedFanOut(), equalTo(10));
+
+        for (int i = 0; i < 50; i++) {
+            fanOutEstimator.record(10, 50);
+        }
+        assertThat(fanOutEstimator.expectedFanOut(), equalTo(5));
+
+        for (int i = 0; i < 50; i++) {
+            fanOutEstimator.record(4, 10);
+        }
+        assertThat(fanOutEstimator.expectedFanOut(), equalTo(3)); // 2.5 rounded up
+
+        for (int i = 0; i < 50; i++) {
+            fanOutEstimator.record(2, 0);
+        }
+        assertThat(fanOutEstimator.expectedFanOut(), equalTo(1));
+
+        // No ID, no sample
+        fanOutEstimator.record(0, 0);
+        assertThat(fanOutEstimator.expectedFanOut(), equalTo(1));
+    }
+
+    @Test
+    public void testFanOutEstimatorLearnsFromQueries() {
+
+        FanOutEstimator fanOutEstimator = fanOutEstimator();
+        List<Item> queryResults = List.of(item1, item1, item1, item2a, item2a, item2a);
+
+        for (int i = 0; i < 50; i++) {
+            Map<Long, List<Item>> results = queryOneToManyAsList(List.of(1L, 2L), ids -> queryResults, Item::getId, defaultMapFactory(), fanOutEstimator);
+            assertThat(results.get(1L).size(), equalTo(3));
+        }
+        assertThat(fanOutEstimator.expectedFanOut(), equalTo(3));
+    }
+
+    @Test
+    public void testSortMergeClosesStreamedResultsWhenStoppingEarly() {
+
+        AtomicInteger consumedCount = new AtomicInteger();
+        AtomicBoolean closed = new AtomicBoolean();
+
+        Object[] results = new Object[2];
+        queryOneToOneSortMerge(idList(List.of(2L, 1L)), results,
+                ids -> closing(Stream.of(item1, item2a, item3, new Item(4L))
+                        .peek(item -> consumedCount.incrementAndGet())
+                        .onClose(() -> closed.set(true))),
+                Item::getId, Comparator.<Long>naturalOrder(), id -> null);
+
+        assertThat(results, equalTo(new Object[]{item2a, item1}));
+        assertThat(consumedCount.get(), equalTo(3)); // Stops at the first result past the last ID
+        assertThat(closed.get(), equalTo(true));
+    }
+
+    @Test
+    public void testSortMergeClosesStreamedResultsWhenOutOfOrder() {
+
+        AtomicBoolean closed = new AtomicBoolean();
+
+        assertThrows(IllegalStateException.class, () -> queryOneToOneSortMerge(idList(List.of(1L, 2L, 3L)), new Object[3],
+                ids -> closing(Stream.of(item1, item3, item2a).onClose(() -> closed.set(true))),
+                Item::getId, Comparator.<Long>naturalOrder(), id -> null));
+
+        assertThat(closed.get(), equalTo(true));
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.github.pellse.util.query.MapperUtils.referenceData;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class ReferenceDataMapperTest {
+
+    private final AtomicInteger version = new AtomicInteger();
+    private final AtomicInteger queryCount = new AtomicInteger();
+    private final List<Throwable> refreshErrors = new ArrayList<>();
+
+    private Collection<String> queryAll() {
+        queryCount.incrementAndGet();
+        return List.of("a" + version.get(), "b" + version.get());
+    }
+
+    @Test
+    public void testInvalidationKeepsServingSnapshotUntilBackgroundReload() {
+
+        ManualExecutor reloadExecutor = new ManualExecutor();
+        ReferenceDataMapper<Character, String, RuntimeException> mapper =
+                referenceData(this::queryAll, row -> row.charAt(0), reloadExecutor, refreshErrors::add);
+
+        assertThat(mapper.apply(List.of('a')), equalTo(Map.of('a', "a0")));
+
+        version.set(1);
+        mapper.invalidateAll(List.of('a'));
+        mapper.invalidateIf(id -> id == 'b');
+
+        // Served from the current snapshot without reloading on the assembly path, both invalidations reload once
+        assertThat(mapper.apply(List.of('a', 'b')), equalTo(Map.of('a', "a0", 'b', "b0")));
+        assertThat(queryCount.get(), equalTo(1));
+        assertThat(reloadExecutor.tasks.size(), equalTo(1));
+
+        reloadExecutor.runAll();
+
+        assertThat(mapper.apply(List.of('a', 'b')), equalTo(Map.of('a', "a1", 'b', "b1")));
+        assertThat(queryCount.get(), equalTo(2));
+        assertThat(refreshErrors.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void testFailedAndRejectedReloadsReportedAndSnapshotKept() {
+
+        ManualExecutor reloadExecutor = new ManualExecutor();
+        ReferenceDataMapper<Character, String, RuntimeException> mapper = referenceData(() -> {
+            if (queryCount.get() > 0) {
+                throw new IllegalStateException("Reload failed");
+            }
+            return queryAll();
+        }, row -> row.charAt(0), reloadExecutor, refreshErrors::add);
+
+        assertThat(mapper.apply(List.of('a')), equalTo(Map.of('a', "a0")));
+
+        mapper.invalidateAll(List.of('a'));
+        reloadExecutor.runAll();
+
+        assertThat(refreshErrors.size(), equalTo(1));
+        assertThat(refreshErrors.get(0).getMessage(), equalTo("Reload failed"));
+        assertThat(mapper.apply(List.of('a')), equalTo(Map.of('a', "a0")));
+
+        reloadExecutor.rejecting = true;
+        mapper.invalidateAll(List.of('a'));
+
+        assertThat(refreshErrors.size(), equalTo(2));
+        assertThat(refreshErrors.get(1) instanceof RejectedExecutionException, equalTo(true));
+
+        // No reload is left marked as scheduled
+        reloadExecutor.rejecting = false;
+        mapper.invalidateAll(List.of('a'));
+        assertThat(reloadExecutor.tasks.size(), equalTo(1));
+    }
+
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<>();
+        private boolean rejecting;
+
+        @Override
+        public void execute(Runnable task) {
+            if (rejecting) {
+                throw new RejectedExecutionException("Rejected");
+            }
+            tasks.add(task);
+        }
+
+        private void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2018 Sebastien Pelletier
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package io.github.pellse.util.query;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.github.pellse.util.cache.Cache.lruCache;
+import static io.github.pellse.util.query.MapperUtils.refreshAhead;
+import static java.time.Duration.ZERO;
+import static java.time.Duration.ofMinutes;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsEqual.equalTo;
+
+public class RefreshAheadMapperTest {
+
+    private final AtomicInteger version = new AtomicInteger();
+    private final List<Throwable> refreshErrors = new ArrayList<>();
+
+    private final Mapper<Long, String, RuntimeException> mapper = ids -> {
+        Map<Long, String> results = new HashMap<>();
+        ids.forEach(id -> results.put(id, "v" + version.get()));
+        return results;
+    };
+
+    @Test
+    public void testRejectedRefreshServesStaleResultsAndIsScheduledAgain() {
+
+        ManualExecutor refreshExecutor = new ManualExecutor();
+        RefreshAheadMapper<Long, String, RuntimeException> refreshAheadMapper =
+                refreshAhead(mapper, lruCache(10), ZERO, ofMinutes(1), refreshExecutor, refreshErrors::add);
+
+        assertThat(refreshAheadMapper.apply(List.of(1L)), equalTo(Map.of(1L, "v0")));
+
+        version.set(1);
+        refreshExecutor.rejecting = true;
+
+        // Stale, the rejected refresh is reported but doesn't fail the assembly
+        assertThat(refreshAheadMapper.apply(List.of(1L)), equalTo(Map.of(1L, "v0")));
+        assertThat(refreshErrors.size(), equalTo(1));
+        assertThat(refreshErrors.get(0) instanceof RejectedExecutionException, equalTo(true));
+
+        // No refresh is left marked as scheduled
+        refreshExecutor.rejecting = false;
+        assertThat(refreshAheadMapper.apply(List.of(1L)), equalTo(Map.of(1L, "v0")));
+        refreshExecutor.runAll();
+
+        assertThat(refreshAheadMapper.apply(List.of(1L)), equalTo(Map.of(1L, "v1")));
+    }
+
+    @Test
+    public void testFailedRefreshReportedAndStaleResultsKept() {
+
+        AtomicInteger queryCount = new AtomicInteger();
+        Mapper<Long, String, RuntimeException> failingRefreshMapper = ids -> {
+            if (queryCount.incrementAndGet() > 1) {
+                throw new IllegalStateException("Refresh failed");
+            }
+            return mapper.apply(ids);
+        };
+
+        ManualExecutor refreshExecutor = new ManualExecutor();
+        RefreshAheadMapper<Long, String, RuntimeException> refreshAheadMapper =
+                refreshAhead(failingRefreshMapper, lruCache(10), ZERO, ofMinutes(1), refreshExecutor, refreshErrors::add);
+
+        refreshAheadMapper.apply(List.of(1L));
+        refreshAheadMapper.apply(List.of(1L));
+        refreshExecutor.runAll();
+
+        assertThat(refreshErrors.size(), equalTo(1));
+        assertThat(refreshErrors.get(0).getMessage(), equalTo("Refresh failed"));
+        assertThat(refreshAheadMapper.apply(List.of(1L)), equalTo(Map.of(1L, "v0")));
+    }
+
+    private static class ManualExecutor implements Executor {
+        private final List<Runnable> tasks = new ArrayList<>();
+        private boolean rejecting;
+
+        @Override
+        public void execute(Runnable task) {
+            if (rejecting) {
+                throw new RejectedExecutionException("Rejected");
+            }
+            tasks.add(task);
+        }
+
+        private void runAll() {
+            while (!tasks.isEmpty()) {
+                tasks.remove(0).run();
+            }
+        }
+    }
+}